@@ -0,0 +1,1019 @@
+package ca.bcit.comp2522.code;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro-benchmark harness for the catalog hot paths: {@link Shelf} min/max,
+ * {@link Library.LibraryStats}, {@link Library#addBook(Book)} and the
+ * page count sort from Task 8 of {@link Main}.
+ * Every case runs against each catalog size and data distribution, after a
+ * warm-up phase, and reports throughput, mean and p99 latency per operation
+ * and bytes allocated per operation (the equivalent of JMH's {@code -prof gc}).
+ * <p>
+ * Usage: {@code java [-Dbench.filter=text] ca.bcit.comp2522.code.CatalogBenchmark [size ...]};
+ * the default sizes are 1K and 1M. Pass {@code 10000000} for the 10M run,
+ * which needs a heap of several gigabytes. When {@code bench.filter} is set,
+ * only benchmarks whose name contains it are run.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class CatalogBenchmark
+{
+    /** Catalog sizes used when none are given on the command line. */
+    private static final int[] DEFAULT_SIZES = {1_000, 1_000_000};
+
+    /** Fixed seed so every run generates the same catalogs. */
+    private static final long SEED = 2522L;
+
+    /** Wall-clock time spent warming up each case, in nanoseconds. */
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+
+    /** Wall-clock time spent measuring each case, in nanoseconds. */
+    private static final long MEASURE_NANOS = 2_000_000_000L;
+
+    /** Minimum number of measured samples, however slow the case. */
+    private static final int MIN_INVOCATIONS = 5;
+
+    /** Shortest time a sample should take, so the clock reads do not dominate it. */
+    private static final long TARGET_SAMPLE_NANOS = 20_000L;
+
+    /** Most samples kept per case; the array is allocated before measuring starts. */
+    private static final int MAX_SAMPLES = 1 << 18;
+
+    /** Percentile reported alongside the mean latency. */
+    private static final double TAIL_PERCENTILE = 0.99;
+
+    /** Largest page count generated for a book. */
+    private static final int MAX_PAGES = 2_000;
+
+    /** Earliest year generated for a book. */
+    private static final int FIRST_YEAR = 1900;
+
+    /** Number of distinct years generated. */
+    private static final int YEAR_SPAN = 125;
+
+    /** Nanoseconds per microsecond, for reporting. */
+    private static final double NANOS_PER_MICRO = 1_000.0;
+
+    /** Nanoseconds per second, for reporting. */
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /** Genres assigned round-robin to generated books. */
+    private static final String[] GENRES = {
+            Book.GENRE_FICTION,
+            Book.GENRE_NONFICTION,
+            Book.GENRE_REFERENCE
+    };
+
+    /** Query benchmark: keep books published after this year. */
+    private static final int QUERY_AFTER_YEAR = 1950;
+
+    /** Query benchmark: keep books with more pages than this. */
+    private static final int QUERY_MIN_PAGES = 300;
+
+    /** Query benchmark: number of rows returned. */
+    private static final int QUERY_LIMIT = 20;
+
+    /** Title search benchmark: the partial title typed by the user. */
+    private static final String TITLE_PREFIX = "title 1234";
+
+    /** Number of branch libraries the federation benchmarks split the catalog into. */
+    private static final int BRANCH_COUNT = 8;
+
+    /** Prefix of the temporary directories holding benchmark journals. */
+    private static final String JOURNAL_DIRECTORY_PREFIX = "catalog-journal-bench";
+
+    /** System property selecting benchmarks by a substring of their name. */
+    private static final String FILTER_PROPERTY = "bench.filter";
+
+    /** Name of the title deduplication footprint report, matched by the filter. */
+    private static final String FOOTPRINT_NAME = "TitlePool footprint";
+
+    /** Name the off-heap footprint report is filtered by. */
+    private static final String OFF_HEAP_FOOTPRINT_NAME = "OffHeapCatalog footprint";
+
+    /** Books generated per distinct title in the footprint report. */
+    private static final int EDITIONS_PER_WORK = 10;
+
+    /** Collections requested before reading heap usage. */
+    private static final int GC_PASSES = 3;
+
+    /** Receives every case result so the JIT cannot discard the work. */
+    private static volatile long sink;
+
+    private CatalogBenchmark() { }
+
+    /**
+     * The order in which page counts appear in a generated catalog.
+     */
+    enum Distribution
+    {
+        SORTED,
+        REVERSED,
+        RANDOM
+    }
+
+    /**
+     * One benchmarked operation over a prepared catalog.
+     */
+    interface Case
+    {
+        /**
+         * Runs the operation once.
+         *
+         * @return a value derived from the result, fed to the sink
+         */
+        long run();
+    }
+
+    /**
+     * Creates a fresh {@link Case} for one catalog; setup work done here is
+     * not measured.
+     */
+    interface CaseFactory
+    {
+        /**
+         * Prepares the case.
+         *
+         * @param books the generated catalog
+         * @return the operation to measure
+         */
+        Case prepare(List<Book> books);
+    }
+
+    /**
+     * A named benchmark and the number of logical operations per invocation.
+     */
+    static final class Benchmark
+    {
+        private final String      name;
+        private final int         opsPerInvocation;
+        private final CaseFactory factory;
+
+        Benchmark(final String      name,
+                  final int         opsPerInvocation,
+                  final CaseFactory factory)
+        {
+            this.name = name;
+            this.opsPerInvocation = opsPerInvocation;
+            this.factory = factory;
+        }
+    }
+
+    /**
+     * Runs every benchmark at every requested size and distribution.
+     *
+     * @param args catalog sizes to run; defaults to 1K and 1M
+     */
+    public static void main(final String[] args)
+    {
+        final int[]           sizes;
+        final String          filter;
+        final List<Benchmark> benchmarks;
+
+        sizes = parseSizes(args);
+        filter = System.getProperty(FILTER_PROPERTY, "");
+        benchmarks = benchmarks();
+        benchmarks.removeIf(benchmark -> !benchmark.name.contains(filter));
+
+        System.out.printf("%-36s %10s %-9s %14s %12s %12s %12s%n",
+                          "benchmark", "size", "data", "ops/s", "avg us/op", "p99 us/op", "alloc B/op");
+
+        for(final int size : sizes)
+        {
+            for(final Distribution distribution : Distribution.values())
+            {
+                final List<Book> books;
+                books = generate(size, distribution);
+
+                for(final Benchmark benchmark : benchmarks)
+                {
+                    measure(benchmark, books, distribution);
+                }
+            }
+
+            if(FOOTPRINT_NAME.contains(filter))
+            {
+                reportTitleFootprint(size);
+            }
+
+            if(OFF_HEAP_FOOTPRINT_NAME.contains(filter))
+            {
+                reportOffHeapFootprint(size);
+            }
+        }
+    }
+
+    /**
+     * Prints the retained heap per book of a catalog where every title is a
+     * separately allocated String, with and without a {@link TitlePool}.
+     * Titles are drawn from one distinct work per {@link #EDITIONS_PER_WORK}
+     * books, mimicking a catalog holding many editions of each work.
+     */
+    private static void reportTitleFootprint(final int size)
+    {
+        final long withoutPool;
+        final long withPool;
+
+        withoutPool = retainedBytes(size, null);
+        withPool = retainedBytes(size, new TitlePool());
+
+        System.out.printf("%-36s %10d %-9s %14s %12.1f %12.1f %12s%n",
+                          FOOTPRINT_NAME,
+                          size,
+                          "B/book",
+                          "no pool/pool",
+                          (double) withoutPool / size,
+                          (double) withPool / size,
+                          "");
+    }
+
+    /**
+     * Builds a catalog of freshly allocated titles and returns the heap it retains.
+     */
+    private static long retainedBytes(final int       size,
+                                      final TitlePool pool)
+    {
+        final Random     random;
+        final long       before;
+        final long       after;
+        final List<Book> books;
+        final int        works;
+
+        random = new Random(SEED);
+        works = Math.max(1, size / EDITIONS_PER_WORK);
+        before = usedHeap();
+        books = new ArrayList<>(size);
+
+        for(int i = 0; i < size; i++)
+        {
+            final String title;
+            title = "Collected Works, Volume " + random.nextInt(works);
+
+            books.add(new Book(pool == null ? title : pool.intern(title),
+                               Genre.ofOrdinal(i % Genre.count()),
+                               FIRST_YEAR + random.nextInt(YEAR_SPAN),
+                               1 + random.nextInt(MAX_PAGES)));
+        }
+
+        after = usedHeap();
+        sink += books.size();
+
+        return after - before;
+    }
+
+    /**
+     * Prints the retained heap per book of the same catalog held in an
+     * {@link ArrayList} and in an {@link OffHeapCatalog}, and the direct
+     * memory per book the latter uses instead.
+     */
+    private static void reportOffHeapFootprint(final int size)
+    {
+        final List<Book>     books;
+        final long           before;
+        final long           onHeap;
+        final long           afterCopy;
+        final OffHeapCatalog catalog;
+        final long           offHeap;
+
+        before = usedHeap();
+        books = generate(size, Distribution.RANDOM);
+        onHeap = usedHeap() - before;
+
+        afterCopy = usedHeap();
+        catalog = OffHeapCatalog.of(books);
+        offHeap = usedHeap() - afterCopy;
+        sink += books.size() + catalog.size();
+
+        System.out.printf("%-36s %10d %-9s %14s %12.1f %12.1f %12.1f%n",
+                          OFF_HEAP_FOOTPRINT_NAME,
+                          size,
+                          "B/book",
+                          "heap/off-heap",
+                          (double) onHeap / size,
+                          (double) offHeap / size,
+                          (double) catalog.offHeapBytes() / size);
+    }
+
+    /**
+     * Returns the heap in use after asking the collector to run.
+     */
+    private static long usedHeap()
+    {
+        final Runtime runtime;
+        runtime = Runtime.getRuntime();
+
+        for(int i = 0; i < GC_PASSES; i++)
+        {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns every registered benchmark.
+     */
+    private static List<Benchmark> benchmarks()
+    {
+        final List<Benchmark> benchmarks;
+        benchmarks = new ArrayList<>();
+
+        benchmarks.add(new Benchmark("Shelf.add (page counts)", 1, books ->
+        {
+            return () ->
+            {
+                final Shelf<Integer> shelf;
+                shelf = new Shelf<>();
+
+                for(final Book book : books)
+                {
+                    shelf.add(book.getPageCount());
+                }
+
+                return shelf.size();
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Shelf.getSmallest+getLargest", 1, books ->
+        {
+            final Shelf<Integer> shelf;
+            shelf = new Shelf<>();
+
+            for(final Book book : books)
+            {
+                shelf.add(book.getPageCount());
+            }
+
+            return () -> shelf.getSmallest() + shelf.getLargest();
+        }));
+
+        benchmarks.add(new Benchmark("IntShelf.add (page counts)", 1, books ->
+        {
+            return () ->
+            {
+                final IntShelf shelf;
+                shelf = new IntShelf();
+
+                for(final Book book : books)
+                {
+                    shelf.add(book.getPageCount());
+                }
+
+                return shelf.getSmallest() + shelf.getLargest();
+            };
+        }));
+
+        benchmarks.add(new Benchmark("LibraryStats.countByGenre", 1, books ->
+        {
+            final Library.LibraryStats stats;
+            stats = new Library.LibraryStats();
+
+            return () -> stats.countByGenre(books, Book.GENRE_FICTION);
+        }));
+
+        benchmarks.add(new Benchmark("LibraryStats.countByGenre (Genre)", 1, books ->
+        {
+            final Library.LibraryStats stats;
+            stats = new Library.LibraryStats();
+
+            return () -> stats.countByGenre(books, Genre.FICTION);
+        }));
+
+        benchmarks.add(new Benchmark("Library.countByGenre (index)", 1, books ->
+        {
+            final Library library;
+            library = new Library("Benchmark Library", books);
+
+            return () -> library.countByGenre(Genre.FICTION);
+        }));
+
+        benchmarks.add(new Benchmark("LibraryStats.averagePageCount", 1, books ->
+        {
+            final Library.LibraryStats stats;
+            stats = new Library.LibraryStats();
+
+            return () -> (long) stats.averagePageCount(books);
+        }));
+
+        benchmarks.add(new Benchmark("LibraryStats.averagePageCount (col)", 1, books ->
+        {
+            final Library.LibraryStats stats;
+            final ColumnarCatalog      columns;
+
+            stats = new Library.LibraryStats();
+            columns = ColumnarCatalog.of(books);
+
+            return () -> (long) stats.averagePageCount(columns);
+        }));
+
+        benchmarks.add(new Benchmark("ParallelLibraryStats.summarize", 1, books ->
+        {
+            final ParallelLibraryStats stats;
+            stats = new ParallelLibraryStats();
+
+            return () -> stats.summarize(books).size();
+        }));
+
+        benchmarks.add(new Benchmark("Federation average: serial branches", 1, books ->
+        {
+            final List<Library> branches;
+            branches = branchesOf(books);
+
+            return () ->
+            {
+                long count;
+                long pages;
+
+                count = 0;
+                pages = 0;
+
+                for(final Library branch : branches)
+                {
+                    for(final Book book : branch.getCatalog())
+                    {
+                        pages += book.getPageCount();
+                    }
+
+                    count += branch.getCatalog().size();
+                }
+
+                return pages / count;
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Federation average: ShardedCatalog", 1, books ->
+        {
+            final ShardedCatalog federation;
+            federation = ShardedCatalog.federate("Benchmark Federation",
+                                                 ShardedCatalog.Partitioning.TITLE_HASH,
+                                                 branchesOf(books));
+
+            return () -> (long) federation.averagePageCount();
+        }));
+
+        benchmarks.add(new Benchmark("Library.addBook", 1, books ->
+        {
+            return () ->
+            {
+                final Library library;
+                library = new Library("Benchmark Library", Collections.emptyList());
+
+                for(final Book book : books)
+                {
+                    library.addBook(book);
+                }
+
+                return library.getCatalog().size();
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Library.addAll", 1, books ->
+        {
+            return () ->
+            {
+                final Library library;
+                library = new Library("Benchmark Library", Collections.emptyList());
+
+                return library.addAll(books).getAddedCount();
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Shelf.addAll (page counts)", 1, books ->
+        {
+            return () ->
+            {
+                final List<Integer>  pageCounts;
+                final Shelf<Integer> shelf;
+
+                pageCounts = new ArrayList<>(books.size());
+                shelf = new Shelf<>();
+
+                for(final Book book : books)
+                {
+                    pageCounts.add(book.getPageCount());
+                }
+
+                return shelf.addAll(pageCounts).getAddedCount();
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Query: loops, one pass per stage", 1, books ->
+        {
+            return () ->
+            {
+                final List<Book> fiction;
+                final List<Book> recent;
+                final List<Book> longBooks;
+
+                fiction = new ArrayList<>();
+                recent = new ArrayList<>();
+                longBooks = new ArrayList<>();
+
+                for(final Book book : books)
+                {
+                    if(Book.GENRE_FICTION.equals(book.getGenre()))
+                    {
+                        fiction.add(book);
+                    }
+                }
+
+                for(final Book book : fiction)
+                {
+                    if(book.getYearPublished() > QUERY_AFTER_YEAR)
+                    {
+                        recent.add(book);
+                    }
+                }
+
+                for(final Book book : recent)
+                {
+                    if(book.getPageCount() > QUERY_MIN_PAGES)
+                    {
+                        longBooks.add(book);
+                    }
+                }
+
+                longBooks.sort(Book.BY_YEAR_PUBLISHED);
+
+                return longBooks.subList(0, Math.min(QUERY_LIMIT, longBooks.size())).size();
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Query: CatalogQuery fused", 1, books ->
+        {
+            final Library library;
+            library = new Library("Benchmark Library", books);
+
+            return () -> library.query()
+                                .genre(Genre.FICTION)
+                                .publishedBetween(QUERY_AFTER_YEAR + 1, Integer.MAX_VALUE)
+                                .where(book -> book.getPageCount() > QUERY_MIN_PAGES)
+                                .sortedBy(Book.BY_YEAR_PUBLISHED)
+                                .limit(QUERY_LIMIT)
+                                .toList()
+                                .size();
+        }));
+
+        benchmarks.add(new Benchmark("Title search: contains scan", 1, books ->
+        {
+            return () ->
+            {
+                final List<Book> matches;
+                matches = new ArrayList<>();
+
+                for(final Book book : books)
+                {
+                    if(matches.size() < QUERY_LIMIT && book.getTitle().toLowerCase().contains(TITLE_PREFIX))
+                    {
+                        matches.add(book);
+                    }
+                }
+
+                return matches.size();
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Title search: TitleIndex.searchPrefix", 1, books ->
+        {
+            final Library    library;
+            final TitleIndex index;
+
+            library = new Library("Benchmark Library", books);
+            index = new TitleIndex();
+            library.addListener(index);
+
+            return () -> index.searchPrefix(TITLE_PREFIX, QUERY_LIMIT).size();
+        }));
+
+        benchmarks.add(new Benchmark("Journal add+remove (every write)", 2, books ->
+        {
+            final CatalogJournal journal;
+            final Book           book;
+
+            journal = openJournal(CatalogJournal.SyncMode.EVERY_WRITE);
+            book = books.get(0);
+
+            return () ->
+            {
+                journal.getLibrary().addBook(book);
+                journal.getLibrary().removeBook(book);
+                return journal.getLibrary().getCatalog().size();
+            };
+        }));
+
+        // One writer has no one to share a force with; JournalThroughputTest runs several
+        benchmarks.add(new Benchmark("Journal add+remove (group commit)", 2, books ->
+        {
+            final CatalogJournal journal;
+            final Book           book;
+
+            journal = openJournal(CatalogJournal.SyncMode.GROUP_COMMIT);
+            book = books.get(0);
+
+            return () ->
+            {
+                journal.getLibrary().addBook(book);
+                journal.getLibrary().removeBook(book);
+                return journal.getLibrary().getCatalog().size();
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Journal add+remove (async, not durable)", 2, books ->
+        {
+            final CatalogJournal journal;
+            final Book           book;
+
+            journal = openJournal(CatalogJournal.SyncMode.ASYNC);
+            book = books.get(0);
+
+            return () ->
+            {
+                journal.getLibrary().addBook(book);
+                journal.getLibrary().removeBook(book);
+                return journal.getLibrary().getCatalog().size();
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Export CSV: println per book", 1, books ->
+        {
+            final PrintStream out;
+            out = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+
+            return () ->
+            {
+                out.println("title,genre,year,pages");
+
+                for(final Book book : books)
+                {
+                    out.println(book.getTitle() + "," + book.getGenre() + "," +
+                                book.getYearPublished() + "," + book.getPageCount());
+                }
+
+                out.flush();
+                return books.size();
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Export CSV: CatalogExporter", 1, books ->
+        {
+            final CatalogExporter     exporter;
+            final WritableByteChannel out;
+
+            exporter = new CatalogExporter(CatalogExporter.Format.CSV);
+            out = Channels.newChannel(OutputStream.nullOutputStream());
+
+            return () ->
+            {
+                try
+                {
+                    return exporter.export(books, out);
+                }
+                catch(final IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Snapshot: ArrayList copy", 1, books ->
+        {
+            return () -> new ArrayList<>(books).size();
+        }));
+
+        benchmarks.add(new Benchmark("Snapshot: PersistentCatalog.with", 1, books ->
+        {
+            final PersistentCatalog catalog;
+            final Random            random;
+
+            catalog = PersistentCatalog.of(books);
+            random = new Random(SEED);
+
+            return () ->
+            {
+                final int index;
+                index = random.nextInt(books.size());
+
+                return catalog.with(index, books.get(index)).size();
+            };
+        }));
+
+        benchmarks.add(new Benchmark("Find by title: Library", 1, books ->
+        {
+            final Library library;
+            final Random  random;
+
+            library = new Library("Benchmark Library", books);
+            random = new Random(SEED);
+
+            return () -> library.findByTitle(books.get(random.nextInt(books.size())).getTitle()).isPresent() ? 1 : 0;
+        }));
+
+        benchmarks.add(new Benchmark("Find by title: OffHeapCatalog", 1, books ->
+        {
+            final OffHeapCatalog catalog;
+            final Random         random;
+
+            catalog = OffHeapCatalog.of(books);
+            random = new Random(SEED);
+
+            return () -> catalog.findByTitle(books.get(random.nextInt(books.size())).getTitle()).isPresent() ? 1 : 0;
+        }));
+
+        benchmarks.add(new Benchmark("Collections.sort (pages desc)", 1, books ->
+        {
+            return () ->
+            {
+                final List<Book> copy;
+                copy = new ArrayList<>(books);
+
+                Collections.sort(copy, new Comparator<Book>()
+                {
+                    @Override
+                    public int compare(final Book b1, final Book b2)
+                    {
+                        return Integer.compare(b2.getPageCount(), b1.getPageCount());
+                    }
+                });
+
+                return copy.get(0).getPageCount();
+            };
+        }));
+
+        return benchmarks;
+    }
+
+    /**
+     * Deals the books round-robin into {@link #BRANCH_COUNT} branch libraries.
+     */
+    private static List<Library> branchesOf(final List<Book> books)
+    {
+        final List<List<Book>> catalogs;
+        final List<Library>    branches;
+
+        catalogs = new ArrayList<>();
+        branches = new ArrayList<>();
+
+        for(int branch = 0; branch < BRANCH_COUNT; branch++)
+        {
+            catalogs.add(new ArrayList<>());
+        }
+
+        for(int i = 0; i < books.size(); i++)
+        {
+            catalogs.get(i % BRANCH_COUNT).add(books.get(i));
+        }
+
+        for(int branch = 0; branch < BRANCH_COUNT; branch++)
+        {
+            branches.add(new Library("Branch " + branch, catalogs.get(branch)));
+        }
+
+        return branches;
+    }
+
+    /**
+     * Opens a journal over an empty library in a new temporary directory,
+     * which is closed and deleted when the JVM exits.
+     */
+    private static CatalogJournal openJournal(final CatalogJournal.SyncMode syncMode)
+    {
+        try
+        {
+            final Path           directory;
+            final CatalogJournal journal;
+
+            directory = Files.createTempDirectory(JOURNAL_DIRECTORY_PREFIX);
+            journal = CatalogJournal.open(directory, "Benchmark Library", syncMode);
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteJournal(journal, directory)));
+            return journal;
+        }
+        catch(final IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes a benchmark journal and deletes its directory.
+     */
+    private static void deleteJournal(final CatalogJournal journal,
+                                      final Path           directory)
+    {
+        try
+        {
+            journal.close();
+
+            try(final DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+            {
+                for(final Path file : files)
+                {
+                    Files.deleteIfExists(file);
+                }
+            }
+
+            Files.deleteIfExists(directory);
+        }
+        catch(final IOException e)
+        {
+            System.err.println("Could not delete " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Warms up and measures one benchmark against one catalog, then prints a row.
+     * Each sample times a batch of invocations sized from the warm-up so that
+     * it lasts at least {@link #TARGET_SAMPLE_NANOS}; the p99 column is the
+     * 99th percentile of the per-operation mean of each batch. The sample
+     * array is allocated before the allocation counter is read, so the
+     * alloc column counts only the case's own allocations.
+     */
+    private static void measure(final Benchmark    benchmark,
+                                final List<Book>   books,
+                                final Distribution distribution)
+    {
+        final Case    operation;
+        final long    warmupStart;
+        final long    warmupEnd;
+        final int     batch;
+        final long[]  samples;
+        final long[]  latencies;
+        final long    allocatedBefore;
+        final long    allocatedAfter;
+        final long    measureStart;
+        final long    measureEnd;
+        long          warmupInvocations;
+        int           sampleCount;
+
+        operation = benchmark.factory.prepare(books);
+        warmupStart = System.nanoTime();
+        warmupEnd = warmupStart + WARMUP_NANOS;
+        warmupInvocations = 0;
+
+        while(System.nanoTime() < warmupEnd)
+        {
+            sink += operation.run();
+            warmupInvocations++;
+        }
+
+        batch = (int) Math.max(1L, TARGET_SAMPLE_NANOS * warmupInvocations / (System.nanoTime() - warmupStart));
+        samples = new long[MAX_SAMPLES];
+        sampleCount = 0;
+        allocatedBefore = allocatedBytes();
+        measureStart = System.nanoTime();
+
+        while(sampleCount < MAX_SAMPLES
+              && (sampleCount < MIN_INVOCATIONS || System.nanoTime() - measureStart < MEASURE_NANOS))
+        {
+            final long start;
+            start = System.nanoTime();
+
+            for(int i = 0; i < batch; i++)
+            {
+                sink += operation.run();
+            }
+
+            samples[sampleCount] = System.nanoTime() - start;
+            sampleCount++;
+        }
+
+        measureEnd = System.nanoTime();
+        allocatedAfter = allocatedBytes();
+        latencies = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(latencies);
+
+        final long   totalOps;
+        final double elapsed;
+
+        totalOps = (long) sampleCount * batch * benchmark.opsPerInvocation;
+        elapsed = measureEnd - measureStart;
+
+        System.out.printf("%-36s %10d %-9s %14.1f %12.3f %12.3f %12.1f%n",
+                          benchmark.name,
+                          books.size(),
+                          distribution,
+                          totalOps / (elapsed / NANOS_PER_SECOND),
+                          elapsed / totalOps / NANOS_PER_MICRO,
+                          latencies[(int) Math.min(latencies.length - 1L,
+                                                   (long) Math.ceil(latencies.length * TAIL_PERCENTILE) - 1)]
+                                  / ((double) batch * benchmark.opsPerInvocation) / NANOS_PER_MICRO,
+                          (double) (allocatedAfter - allocatedBefore) / totalOps);
+    }
+
+    /**
+     * Generates a catalog whose page counts follow the given distribution.
+     *
+     * @param size         the number of books
+     * @param distribution the order of page counts
+     * @return the generated books
+     */
+    static List<Book> generate(final int          size,
+                               final Distribution distribution)
+    {
+        final Random     random;
+        final int[]      pageCounts;
+        final List<Book> books;
+
+        random = new Random(SEED);
+        pageCounts = new int[size];
+
+        for(int i = 0; i < size; i++)
+        {
+            pageCounts[i] = 1 + random.nextInt(MAX_PAGES);
+        }
+
+        if(distribution != Distribution.RANDOM)
+        {
+            Arrays.sort(pageCounts);
+        }
+
+        books = new ArrayList<>(size);
+
+        for(int i = 0; i < size; i++)
+        {
+            final int pages;
+
+            if(distribution == Distribution.REVERSED)
+            {
+                pages = pageCounts[size - 1 - i];
+            }
+            else
+            {
+                pages = pageCounts[i];
+            }
+
+            books.add(new Book("Title " + random.nextInt(size),
+                               GENRES[i % GENRES.length],
+                               FIRST_YEAR + random.nextInt(YEAR_SPAN),
+                               pages));
+        }
+
+        return books;
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or 0 if the
+     * JVM does not expose per-thread allocation counters.
+     */
+    private static long allocatedBytes()
+    {
+        if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                    .getCurrentThreadAllocatedBytes();
+        }
+
+        return 0L;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a size is not a positive integer
+     */
+    private static int[] parseSizes(final String[] args)
+    {
+        if(args.length == 0)
+        {
+            return DEFAULT_SIZES.clone();
+        }
+
+        final int[] sizes;
+        sizes = new int[args.length];
+
+        for(int i = 0; i < args.length; i++)
+        {
+            try
+            {
+                sizes[i] = Integer.parseInt(args[i].replace("_", ""));
+            }
+            catch(final NumberFormatException e)
+            {
+                throw new IllegalArgumentException("Catalog size must be an integer: " + args[i], e);
+            }
+
+            if(sizes[i] <= 0)
+            {
+                throw new IllegalArgumentException("Catalog size must be positive: " + args[i]);
+            }
+        }
+
+        return sizes;
+    }
+}
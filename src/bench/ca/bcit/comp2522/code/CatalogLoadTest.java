@@ -0,0 +1,538 @@
+package ca.bcit.comp2522.code;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test for {@link CatalogServer} over loopback.
+ * A server is started in-process on a generated catalog and client
+ * connections send it a mix of title lookups, genre counts, averages and
+ * recommendations. After a warm-up phase, the latency of every request is
+ * recorded and the run reports requests per second and latency percentiles,
+ * plus the server-side p99 from {@link LibraryMetrics#SERVER_REQUEST}, which
+ * also covers the warm-up. There are two modes:
+ * <ul>
+ *   <li>Closed loop, the default: each connection sends a pipelined batch
+ *       of requests, reads every response and sends the next batch. Latency
+ *       runs from the batch being sent, so this measures the server's
+ *       capacity but not the queueing a client would see at a fixed load.</li>
+ *   <li>Open loop, when a rate is given: the connections share a fixed
+ *       offered load, each sending its requests on a fixed schedule whatever
+ *       the responses, and reading them on a separate thread. Latency runs
+ *       from each request's scheduled send time, so time a request spends
+ *       queued behind a slow one is counted rather than omitted.</li>
+ * </ul>
+ * <p>
+ * Usage: {@code java ca.bcit.comp2522.code.CatalogLoadTest [books [connections [depth [seconds [rate]]]]]};
+ * the defaults are 100K books, 64 connections, a pipeline depth of 16, a
+ * 10 second run and closed loop. The depth is not used in open loop; the
+ * rate is in requests per second across all connections.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class CatalogLoadTest
+{
+    /** Catalog size when none is given. */
+    private static final int DEFAULT_BOOKS = 100_000;
+
+    /** Client connections when none are given. */
+    private static final int DEFAULT_CONNECTIONS = 64;
+
+    /** Requests per pipelined batch when none is given. */
+    private static final int DEFAULT_DEPTH = 16;
+
+    /** Measured run length in seconds when none is given. */
+    private static final int DEFAULT_SECONDS = 10;
+
+    /** Offered load meaning "run closed loop". */
+    private static final int CLOSED_LOOP = 0;
+
+    /** Length of the unmeasured warm-up phase. */
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+
+    /** Percent of requests that are title lookups; the rest are split below. */
+    private static final int FIND_PERCENT = 70;
+
+    /** Percent of requests, after lookups, that are genre counts. */
+    private static final int COUNT_PERCENT = 20;
+
+    /** Percent of requests, after lookups and counts, that are averages. */
+    private static final int AVERAGE_PERCENT = 5;
+
+    /** Books asked for by each recommendation request. */
+    private static final int RECOMMEND_LIMIT = 5;
+
+    /** Initial capacity of each connection's latency sample array. */
+    private static final int INITIAL_SAMPLES = 1 << 16;
+
+    /** Percentiles reported for every run. */
+    private static final double[] PERCENTILES = {0.50, 0.99, 0.999};
+
+    /** Percentile of the server-side request timer reported, including warm-up. */
+    private static final double SERVER_PERCENTILE = 99.0;
+
+    private static final long   SEED             = 2522L;
+    private static final double NANOS_PER_MICRO  = 1_000.0;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final int    PERCENT          = 100;
+
+    private CatalogLoadTest() { }
+
+    /**
+     * Runs one load test.
+     *
+     * @param args optional catalog size, connection count, pipeline depth and seconds
+     * @throws Exception if the server cannot start or a connection fails
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        final int        bookCount;
+        final int        connections;
+        final int        depth;
+        final int        seconds;
+        final int        rate;
+        final List<Book> books;
+        final Library    library;
+
+        bookCount = argument(args, 0, DEFAULT_BOOKS);
+        connections = argument(args, 1, DEFAULT_CONNECTIONS);
+        depth = argument(args, 2, DEFAULT_DEPTH);
+        seconds = argument(args, 3, DEFAULT_SECONDS);
+        rate = argument(args, 4, CLOSED_LOOP);
+        books = CatalogBenchmark.generate(bookCount, CatalogBenchmark.Distribution.RANDOM);
+        library = new Library("Load Test Library", books);
+
+        LibraryMetrics.setEnabled(true);
+
+        try(CatalogServer server = CatalogServer.start(library, 0))
+        {
+            final long         start;
+            final long         warmupEnd;
+            final long         runEnd;
+            final double       intervalNanos;
+            final List<Client> clients;
+            final long[]       latencies;
+            final long         measuredNanos;
+            long               requests;
+            int                offset;
+
+            start = System.nanoTime();
+            warmupEnd = start + WARMUP_NANOS;
+            runEnd = warmupEnd + seconds * (long) NANOS_PER_SECOND;
+            intervalNanos = rate == CLOSED_LOOP ? 0.0 : connections * NANOS_PER_SECOND / rate;
+            clients = new ArrayList<>(connections);
+
+            for(int i = 0; i < connections; i++)
+            {
+                clients.add(new Client(server.getPort(), books, depth, start, warmupEnd, runEnd, intervalNanos, SEED + i));
+            }
+
+            for(final Client client : clients)
+            {
+                client.thread.start();
+            }
+
+            requests = 0;
+
+            for(final Client client : clients)
+            {
+                client.thread.join();
+
+                if(client.failure != null)
+                {
+                    throw client.failure;
+                }
+
+                requests += client.sampleCount;
+            }
+
+            // In open loop the last responses can arrive well after the run's end
+            measuredNanos = System.nanoTime() - warmupEnd;
+
+            latencies = new long[Math.toIntExact(requests)];
+            offset = 0;
+
+            for(final Client client : clients)
+            {
+                System.arraycopy(client.samples, 0, latencies, offset, client.sampleCount);
+                offset += client.sampleCount;
+            }
+
+            Arrays.sort(latencies);
+            report(server, bookCount, connections, depth, rate, measuredNanos, latencies);
+        }
+    }
+
+    private static void report(final CatalogServer server,
+                               final int           bookCount,
+                               final int           connections,
+                               final int           depth,
+                               final int           rate,
+                               final long          measuredNanos,
+                               final long[]        latencies)
+    {
+        if(rate == CLOSED_LOOP)
+        {
+            System.out.printf("%d books, %d connections, closed loop, pipeline depth %d, %s threads%n",
+                              bookCount, connections, depth, server.usesVirtualThreads() ? "virtual" : "platform");
+        }
+        else
+        {
+            System.out.printf("%d books, %d connections, open loop, %d requests/s offered, %s threads%n",
+                              bookCount, connections, rate, server.usesVirtualThreads() ? "virtual" : "platform");
+        }
+
+        if(latencies.length == 0)
+        {
+            System.out.println("No requests completed after the warm-up.");
+            return;
+        }
+
+        System.out.printf("%-12s %12.0f%n", "requests/s", latencies.length / (measuredNanos / NANOS_PER_SECOND));
+
+        for(final double percentile : PERCENTILES)
+        {
+            System.out.printf("%-12s %12.1f us%n",
+                              "p" + percentile * PERCENT,
+                              percentileOf(latencies, percentile) / NANOS_PER_MICRO);
+        }
+
+        System.out.printf("%-12s %12.1f us%n", "max", latencies[latencies.length - 1] / NANOS_PER_MICRO);
+        System.out.printf("%-12s %12.1f us%n",
+                          "server p99",
+                          LibraryMetrics.SERVER_REQUEST.getPercentileNanos(SERVER_PERCENTILE) / NANOS_PER_MICRO);
+    }
+
+    private static long percentileOf(final long[] sorted,
+                                     final double percentile)
+    {
+        return sorted[(int) Math.max(0, (long) Math.ceil(sorted.length * percentile) - 1)];
+    }
+
+    /**
+     * Returns whether the response to a request line is a book list.
+     */
+    private static boolean returnsList(final String request)
+    {
+        return request.startsWith("FIND ") || request.startsWith("RECOMMEND ");
+    }
+
+    /**
+     * @throws IllegalArgumentException if the argument is not a positive integer
+     */
+    private static int argument(final String[] args,
+                                final int      index,
+                                final int      fallback)
+    {
+        final int value;
+
+        if(args.length <= index)
+        {
+            return fallback;
+        }
+
+        value = Integer.parseInt(args[index].replace("_", ""));
+
+        if(value <= 0)
+        {
+            throw new IllegalArgumentException("Arguments must be positive: " + args[index]);
+        }
+
+        return value;
+    }
+
+    /**
+     * One client connection, driven by its own thread, plus a sender thread
+     * in open loop.
+     */
+    private static final class Client
+    {
+        private final int        port;
+        private final List<Book> books;
+        private final int        depth;
+        private final long       start;
+        private final long       warmupEnd;
+        private final long       runEnd;
+        private final double     intervalNanos;
+        private final Random     random;
+        private final Thread     thread;
+
+        private long[]             samples;
+        private int                sampleCount;
+        private volatile Exception failure;
+
+        private Client(final int        port,
+                       final List<Book> books,
+                       final int        depth,
+                       final long       start,
+                       final long       warmupEnd,
+                       final long       runEnd,
+                       final double     intervalNanos,
+                       final long       seed)
+        {
+            this.port = port;
+            this.books = books;
+            this.depth = depth;
+            this.start = start;
+            this.warmupEnd = warmupEnd;
+            this.runEnd = runEnd;
+            this.intervalNanos = intervalNanos;
+            this.random = new Random(seed);
+            this.samples = new long[INITIAL_SAMPLES];
+            this.thread = new Thread(this::run, "catalog-load-client");
+        }
+
+        private void run()
+        {
+            try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port))
+            {
+                final BufferedReader reader;
+                final Writer         writer;
+
+                socket.setTcpNoDelay(true);
+                reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+                if(intervalNanos == 0.0)
+                {
+                    runClosedLoop(reader, writer);
+                }
+                else
+                {
+                    runOpenLoop(socket, reader, writer);
+                }
+
+                writer.write("QUIT\n");
+                writer.flush();
+                reader.readLine();
+            }
+            catch(final IOException | RuntimeException | InterruptedException e)
+            {
+                failure = e;
+            }
+        }
+
+        /**
+         * Sends pipelined batches, each after the previous one is answered.
+         */
+        private void runClosedLoop(final BufferedReader reader,
+                                   final Writer         writer) throws IOException
+        {
+            final boolean[] lists;
+            lists = new boolean[depth];
+
+            while(System.nanoTime() < runEnd)
+            {
+                final long sent;
+
+                for(int i = 0; i < depth; i++)
+                {
+                    final String request;
+                    request = nextRequest();
+
+                    writer.write(request);
+                    lists[i] = returnsList(request);
+                }
+
+                writer.flush();
+                sent = System.nanoTime();
+
+                for(int i = 0; i < depth; i++)
+                {
+                    final long received;
+
+                    readResponse(reader, lists[i]);
+                    received = System.nanoTime();
+
+                    if(sent >= warmupEnd)
+                    {
+                        record(received - sent);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sends request k at {@code start + k * intervalNanos} from a sender
+         * thread while this thread reads the responses, which come back in
+         * order, and times each from its scheduled send time. The requests
+         * are generated up front so the sender only has to write them.
+         */
+        private void runOpenLoop(final Socket         socket,
+                                 final BufferedReader reader,
+                                 final Writer         writer) throws IOException, InterruptedException
+        {
+            final int      count;
+            final String[] requests;
+            final Thread   sender;
+
+            count = (int) Math.ceil((runEnd - start) / intervalNanos);
+            requests = new String[count];
+
+            for(int i = 0; i < count; i++)
+            {
+                requests[i] = nextRequest();
+            }
+
+            sender = new Thread(() -> send(socket, writer, requests), "catalog-load-sender");
+            sender.start();
+
+            for(int i = 0; i < count && failure == null; i++)
+            {
+                final long scheduled;
+                final long received;
+
+                readResponse(reader, returnsList(requests[i]));
+                received = System.nanoTime();
+                scheduled = scheduledTime(i);
+
+                if(scheduled >= warmupEnd)
+                {
+                    record(received - scheduled);
+                }
+            }
+
+            sender.join();
+        }
+
+        /**
+         * Writes each request once its scheduled time has come, flushing
+         * once per wake-up for all requests that are due. A failure closes
+         * the socket so the reading thread stops too.
+         */
+        private void send(final Socket   socket,
+                          final Writer   writer,
+                          final String[] requests)
+        {
+            try
+            {
+                int next;
+                next = 0;
+
+                while(next < requests.length)
+                {
+                    final long wait;
+                    wait = scheduledTime(next) - System.nanoTime();
+
+                    if(wait > 0)
+                    {
+                        LockSupport.parkNanos(wait);
+                        continue;
+                    }
+
+                    while(next < requests.length && scheduledTime(next) <= System.nanoTime())
+                    {
+                        writer.write(requests[next]);
+                        next++;
+                    }
+
+                    writer.flush();
+                }
+            }
+            catch(final IOException | RuntimeException e)
+            {
+                failure = e;
+
+                try
+                {
+                    socket.close();
+                }
+                catch(final IOException closeFailure)
+                {
+                    e.addSuppressed(closeFailure);
+                }
+            }
+        }
+
+        /**
+         * Returns when open-loop request k is due to be sent.
+         */
+        private long scheduledTime(final int k)
+        {
+            return start + (long) (k * intervalNanos);
+        }
+
+        /**
+         * Returns the next request line from the mix, including its newline.
+         */
+        private String nextRequest()
+        {
+            final int roll;
+            roll = random.nextInt(PERCENT);
+
+            if(roll < FIND_PERCENT)
+            {
+                return "FIND " + books.get(random.nextInt(books.size())).getTitle() + "\n";
+            }
+
+            if(roll < FIND_PERCENT + COUNT_PERCENT)
+            {
+                return "COUNT " + books.get(random.nextInt(books.size())).getGenre() + "\n";
+            }
+
+            if(roll < FIND_PERCENT + COUNT_PERCENT + AVERAGE_PERCENT)
+            {
+                return "AVERAGE\n";
+            }
+
+            return "RECOMMEND " + RECOMMEND_LIMIT + "\n";
+        }
+
+        /**
+         * Reads one response, including the book lines of a list.
+         *
+         * @throws IllegalStateException if the server reports an error
+         */
+        private static void readResponse(final BufferedReader reader,
+                                         final boolean        list) throws IOException
+        {
+            final String status;
+            status = reader.readLine();
+
+            if(status == null)
+            {
+                throw new UncheckedIOException(new IOException("Server closed the connection."));
+            }
+
+            if(!status.startsWith("OK"))
+            {
+                throw new IllegalStateException("Server error: " + status);
+            }
+
+            if(list)
+            {
+                final int count;
+                count = Integer.parseInt(status.substring(status.indexOf(' ') + 1));
+
+                for(int i = 0; i < count; i++)
+                {
+                    reader.readLine();
+                }
+            }
+        }
+
+        private void record(final long nanos)
+        {
+            if(sampleCount == samples.length)
+            {
+                samples = Arrays.copyOf(samples, samples.length * 2);
+            }
+
+            samples[sampleCount++] = nanos;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package ca.bcit.comp2522.code;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test checking that {@link ConcurrentLibrary} is linearizable.
+ * Writer threads each add a numbered sequence of books, mostly one at a
+ * time and sometimes as an {@link ConcurrentLibrary#addAll(java.util.Collection)}
+ * batch, while reader threads repeatedly take the catalog and check that:
+ * <ul>
+ *   <li>the catalog size never shrinks;</li>
+ *   <li>a later catalog extends an earlier one without changing it;</li>
+ *   <li>each writer's books appear in the order it added them, with no gaps;</li>
+ *   <li>a genre count read before a catalog is no more, and one read after
+ *       it no less, than the count in that catalog;</li>
+ *   <li>every title in a catalog can be found, and a book found by title
+ *       is in every catalog taken afterwards;</li>
+ *   <li>a {@link ConcurrentLibrary.Recommender}'s books, overall and by
+ *       genre, are ranked best first, are in every catalog taken
+ *       afterwards, and are never worse than the best book of a catalog
+ *       taken before.</li>
+ * </ul>
+ * Any violation is printed and the test exits with status 1.
+ * <p>
+ * Usage: {@code java ca.bcit.comp2522.code.CatalogStressTest [writers [readers [books]]]};
+ * the defaults are 4 writers, 4 readers and 100K books per writer.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class CatalogStressTest
+{
+    /** Writer threads when none are given. */
+    private static final int DEFAULT_WRITERS = 4;
+
+    /** Reader threads when none are given. */
+    private static final int DEFAULT_READERS = 4;
+
+    /** Books added by each writer when none are given. */
+    private static final int DEFAULT_BOOKS = 100_000;
+
+    /** One in this many writes is a batch rather than a single book. */
+    private static final int BATCH_EVERY = 64;
+
+    /** Books in each batch write. */
+    private static final int BATCH_SIZE = 16;
+
+    /** Books asked of the recommender in each check. */
+    private static final int RECOMMEND_LIMIT = 8;
+
+    /** Violations printed before the rest are only counted. */
+    private static final int MAX_REPORTED = 10;
+
+    /** Separates the writer number from the sequence number in a title. */
+    private static final char TITLE_SEPARATOR = ':';
+
+    private static final int    YEAR             = 2000;
+    private static final int    MAX_PAGES        = 500;
+    private static final long   SEED             = 2522L;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private static final AtomicLong VIOLATIONS = new AtomicLong();
+
+    private CatalogStressTest() { }
+
+    /**
+     * Runs one stress test.
+     *
+     * @param args optional writer count, reader count and books per writer
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(final String[] args) throws InterruptedException
+    {
+        final int                           writers;
+        final int                           readers;
+        final int                           books;
+        final ConcurrentLibrary             library;
+        final ConcurrentLibrary.Recommender recommender;
+        final AtomicBoolean                 writing;
+        final List<Thread>                  writerThreads;
+        final List<Reader>                  readerTasks;
+        final List<Thread>                  readerThreads;
+        final long                          start;
+        final long                          elapsed;
+        long                                checks;
+
+        writers = argument(args, 0, DEFAULT_WRITERS);
+        readers = argument(args, 1, DEFAULT_READERS);
+        books = argument(args, 2, DEFAULT_BOOKS);
+        library = new ConcurrentLibrary("Stress Test Library", List.of());
+        recommender = library.new Recommender(Book::getPageCount);
+        writing = new AtomicBoolean(true);
+        writerThreads = new ArrayList<>(writers);
+        readerTasks = new ArrayList<>(readers);
+        readerThreads = new ArrayList<>(readers);
+
+        for(int w = 0; w < writers; w++)
+        {
+            final int writer;
+            writer = w;
+
+            writerThreads.add(new Thread(() -> write(library, writer, books), "catalog-stress-writer"));
+        }
+
+        for(int r = 0; r < readers; r++)
+        {
+            final Reader reader;
+            reader = new Reader(library, recommender, writers, writing, SEED + r);
+
+            readerTasks.add(reader);
+            readerThreads.add(new Thread(reader::run, "catalog-stress-reader"));
+        }
+
+        start = System.nanoTime();
+        readerThreads.forEach(Thread::start);
+        writerThreads.forEach(Thread::start);
+
+        for(final Thread thread : writerThreads)
+        {
+            thread.join();
+        }
+
+        writing.set(false);
+
+        for(final Thread thread : readerThreads)
+        {
+            thread.join();
+        }
+
+        elapsed = System.nanoTime() - start;
+        checks = 0;
+
+        for(final Reader reader : readerTasks)
+        {
+            checks += reader.checks;
+        }
+
+        if(library.size() != writers * books)
+        {
+            violation("final size " + library.size() + ", expected " + writers * books);
+        }
+
+        System.out.printf("%d writers x %d books, %d readers, %d catalog checks in %.1f s%n",
+                          writers, books, readers, checks, elapsed / NANOS_PER_SECOND);
+        System.out.printf("%d violations%n", VIOLATIONS.get());
+
+        if(VIOLATIONS.get() > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Adds the writer's books in sequence order.
+     */
+    private static void write(final ConcurrentLibrary library,
+                              final int               writer,
+                              final int               books)
+    {
+        int sequence;
+        sequence = 0;
+
+        while(sequence < books)
+        {
+            if(sequence % BATCH_EVERY == 0)
+            {
+                final List<Book> batch;
+                final int        end;
+
+                batch = new ArrayList<>(BATCH_SIZE);
+                end = Math.min(books, sequence + BATCH_SIZE);
+
+                while(sequence < end)
+                {
+                    batch.add(bookOf(writer, sequence++));
+                }
+
+                library.addAll(batch);
+            }
+            else
+            {
+                library.addBook(bookOf(writer, sequence++));
+            }
+        }
+    }
+
+    private static Book bookOf(final int writer,
+                               final int sequence)
+    {
+        return new Book(titleOf(writer, sequence),
+                        Genre.ofOrdinal(sequence % Genre.count()),
+                        YEAR,
+                        1 + sequence % MAX_PAGES);
+    }
+
+    private static String titleOf(final int writer,
+                                  final int sequence)
+    {
+        return writer + String.valueOf(TITLE_SEPARATOR) + sequence;
+    }
+
+    private static void violation(final String message)
+    {
+        if(VIOLATIONS.incrementAndGet() <= MAX_REPORTED)
+        {
+            System.out.println("VIOLATION: " + message);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the argument is not a positive integer
+     */
+    private static int argument(final String[] args,
+                                final int      index,
+                                final int      fallback)
+    {
+        final int value;
+
+        if(args.length <= index)
+        {
+            return fallback;
+        }
+
+        value = Integer.parseInt(args[index].replace("_", ""));
+
+        if(value <= 0)
+        {
+            throw new IllegalArgumentException("Arguments must be positive: " + args[index]);
+        }
+
+        return value;
+    }
+
+    /**
+     * One reader thread. It remembers every book it has seen, in catalog
+     * order, so each new catalog only has to be checked past the old size.
+     */
+    private static final class Reader
+    {
+        private final ConcurrentLibrary             library;
+        private final ConcurrentLibrary.Recommender recommender;
+        private final AtomicBoolean                 writing;
+        private final Random                        random;
+        private final List<Book>                    seen;
+        private final int[]                         nextSequence;
+        private final int[]                         genreCounts;
+
+        private long checks;
+        private int  pendingWriter;
+        private int  pendingSequence;
+        private int  mostPages;
+        private int  mostPagesChecked;
+
+        private Reader(final ConcurrentLibrary             library,
+                       final ConcurrentLibrary.Recommender recommender,
+                       final int                           writers,
+                       final AtomicBoolean                 writing,
+                       final long                          seed)
+        {
+            this.library = library;
+            this.recommender = recommender;
+            this.writing = writing;
+            this.random = new Random(seed);
+            this.seen = new ArrayList<>();
+            this.nextSequence = new int[writers];
+            this.genreCounts = new int[Genre.count()];
+            this.pendingSequence = -1;
+        }
+
+        private void run()
+        {
+            boolean last;
+
+            do
+            {
+                // Read before the final check so that it sees every write
+                last = !writing.get();
+                check();
+            }
+            while(!last);
+        }
+
+        /**
+         * Takes one catalog and checks it against everything seen before.
+         */
+        private void check()
+        {
+            final Genre      genre;
+            final int        countBefore;
+            final List<Book> recommended;
+            final List<Book> recommendedOfGenre;
+            final List<Book> catalog;
+            final int        countAfter;
+            final int        size;
+
+            genre = Genre.ofOrdinal(random.nextInt(Genre.count()));
+            countBefore = library.countByGenre(genre.getLabel());
+            recommended = recommender.recommend(RECOMMEND_LIMIT);
+            recommendedOfGenre = recommender.recommendByGenre(genre, RECOMMEND_LIMIT);
+            catalog = library.getCatalog();
+            countAfter = library.countByGenre(genre.getLabel());
+            size = catalog.size();
+            checks++;
+
+            if(size < seen.size())
+            {
+                violation("catalog shrank from " + seen.size() + " to " + size);
+                return;
+            }
+
+            if(!seen.isEmpty())
+            {
+                final int index;
+                index = random.nextInt(seen.size());
+
+                if(catalog.get(index) != seen.get(index))
+                {
+                    violation("book at " + index + " changed");
+                }
+            }
+
+            for(int i = seen.size(); i < size; i++)
+            {
+                accept(catalog.get(i), i);
+            }
+
+            if(countBefore > genreCounts[genre.ordinal()] || countAfter < genreCounts[genre.ordinal()])
+            {
+                violation(genre + " counts " + countBefore + " and " + countAfter
+                          + " around a catalog holding " + genreCounts[genre.ordinal()]);
+            }
+
+            if(pendingSequence >= nextSequence[pendingWriter])
+            {
+                violation("found " + titleOf(pendingWriter, pendingSequence)
+                          + " by title before it was in the catalog");
+            }
+
+            checkTitles(catalog, size);
+            checkRecommended(recommended, null);
+            checkRecommended(recommendedOfGenre, genre);
+        }
+
+        /**
+         * Checks recommendations taken before the latest catalog: they are
+         * in that catalog, of the genre asked for, ranked best first, and
+         * led by a book at least as long as any in the previous catalog.
+         */
+        private void checkRecommended(final List<Book> recommended,
+                                      final Genre      genre)
+        {
+            int previousPages;
+            previousPages = Integer.MAX_VALUE;
+
+            if(genre == null && mostPages > 0 &&
+               (recommended.isEmpty() || recommended.get(0).getPageCount() < mostPages))
+            {
+                violation("recommendation missed a book of " + mostPages + " pages already in the catalog");
+            }
+
+            for(final Book book : recommended)
+            {
+                final String title;
+                final int    separator;
+                final int    writer;
+                final int    sequence;
+
+                title = book.getTitle();
+                separator = title.indexOf(TITLE_SEPARATOR);
+                writer = Integer.parseInt(title.substring(0, separator));
+                sequence = Integer.parseInt(title.substring(separator + 1));
+
+                if(sequence >= nextSequence[writer])
+                {
+                    violation("recommended " + title + " before it was in the catalog");
+                }
+
+                if(genre != null && book.getGenreType() != genre)
+                {
+                    violation("recommended " + title + " as " + genre);
+                }
+
+                if(book.getPageCount() > previousPages)
+                {
+                    violation("recommended " + title + " after a lower-scored book");
+                }
+
+                previousPages = book.getPageCount();
+            }
+
+            if(genre == null)
+            {
+                for(int i = mostPagesChecked; i < seen.size(); i++)
+                {
+                    mostPages = Math.max(mostPages, seen.get(i).getPageCount());
+                }
+
+                mostPagesChecked = seen.size();
+            }
+        }
+
+        /**
+         * Checks that a known title is found, and looks up a writer's next
+         * book; if it is found, the next catalog must hold it.
+         */
+        private void checkTitles(final List<Book> catalog,
+                                 final int        size)
+        {
+            final int            writer;
+            final Optional<Book> next;
+
+            if(size > 0)
+            {
+                final Book           book;
+                final Optional<Book> found;
+
+                book = catalog.get(random.nextInt(size));
+                found = library.findByTitle(book.getTitle());
+
+                if(found.isEmpty() || found.get() != book)
+                {
+                    violation(book.getTitle() + " is in the catalog but was not found by title");
+                }
+            }
+
+            writer = random.nextInt(nextSequence.length);
+            next = library.findByTitle(titleOf(writer, nextSequence[writer]));
+            pendingWriter = writer;
+            pendingSequence = next.isPresent() ? nextSequence[writer] : -1;
+        }
+
+        /**
+         * Records a book newly visible at the given position.
+         */
+        private void accept(final Book book,
+                            final int  position)
+        {
+            final String title;
+            final int    separator;
+            final int    writer;
+            final int    sequence;
+
+            title = book.getTitle();
+            separator = title.indexOf(TITLE_SEPARATOR);
+            writer = Integer.parseInt(title.substring(0, separator));
+            sequence = Integer.parseInt(title.substring(separator + 1));
+
+            if(sequence != nextSequence[writer])
+            {
+                violation("writer " + writer + " book " + sequence + " at " + position
+                          + ", expected book " + nextSequence[writer]);
+            }
+
+            nextSequence[writer] = sequence + 1;
+            genreCounts[book.getGenreType().ordinal()]++;
+            seen.add(book);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package ca.bcit.comp2522.code;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures {@link CatalogJournal} throughput with several writer threads,
+ * like for like across the sync modes. Each writer adds and removes its own
+ * book through {@link CatalogJournal#addBook(Book)} and
+ * {@link CatalogJournal#removeBook(Book)} until the time is up, so every
+ * change in {@link CatalogJournal.SyncMode#EVERY_WRITE} and
+ * {@link CatalogJournal.SyncMode#GROUP_COMMIT} is durable when the call
+ * returns, while {@link CatalogJournal.SyncMode#ASYNC} is shown for
+ * reference only: its changes are not yet on disk when the call returns.
+ * <p>
+ * Usage: {@code java ca.bcit.comp2522.code.JournalThroughputTest [writers [seconds]]};
+ * the defaults are 8 writers for 3 seconds per mode. Set {@code java.io.tmpdir}
+ * to a directory on the disk to measure.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class JournalThroughputTest
+{
+    /** Writer threads when none are given. */
+    private static final int DEFAULT_WRITERS = 8;
+
+    /** Seconds each mode runs for when none are given. */
+    private static final int DEFAULT_SECONDS = 3;
+
+    /** Prefix of the temporary directories holding the journals. */
+    private static final String DIRECTORY_PREFIX = "catalog-journal-throughput";
+
+    private static final long   MILLIS_PER_SECOND = 1_000L;
+    private static final double NANOS_PER_SECOND  = 1_000_000_000.0;
+    private static final double NANOS_PER_MICRO   = 1_000.0;
+
+    private JournalThroughputTest() { }
+
+    /**
+     * Runs every sync mode in turn and prints one row per mode.
+     *
+     * @param args optional writer count and seconds per mode
+     * @throws IOException if a journal cannot be written
+     * @throws InterruptedException if interrupted while waiting for the writers
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException
+    {
+        final int writers;
+        final int seconds;
+
+        writers = argument(args, 0, DEFAULT_WRITERS);
+        seconds = argument(args, 1, DEFAULT_SECONDS);
+
+        System.out.printf("%-14s %8s %14s %12s%n", "Sync mode", "Writers", "Changes/s", "Mean us");
+
+        for(final CatalogJournal.SyncMode mode : CatalogJournal.SyncMode.values())
+        {
+            run(mode, writers, seconds);
+        }
+    }
+
+    /**
+     * Runs the writers against one journal and prints the result.
+     */
+    private static void run(final CatalogJournal.SyncMode mode,
+                            final int                     writers,
+                            final int                     seconds) throws IOException, InterruptedException
+    {
+        final Path           directory;
+        final CatalogJournal journal;
+        final AtomicBoolean  running;
+        final LongAdder      changes;
+        final List<Thread>   threads;
+        final long           start;
+        final long           elapsed;
+        final double         changesPerSecond;
+
+        directory = Files.createTempDirectory(DIRECTORY_PREFIX);
+        journal = CatalogJournal.open(directory, "Throughput Library", mode);
+        running = new AtomicBoolean(true);
+        changes = new LongAdder();
+        threads = new ArrayList<>(writers);
+
+        for(int w = 0; w < writers; w++)
+        {
+            final Book book;
+            book = new Book("Writer " + w, Genre.FICTION, 2000, 100);
+
+            threads.add(new Thread(() -> write(journal, book, running, changes), "journal-throughput-writer"));
+        }
+
+        start = System.nanoTime();
+        threads.forEach(Thread::start);
+        Thread.sleep(seconds * MILLIS_PER_SECOND);
+        running.set(false);
+
+        for(final Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        elapsed = System.nanoTime() - start;
+        changesPerSecond = changes.sum() / (elapsed / NANOS_PER_SECOND);
+
+        System.out.printf("%-14s %8d %,14.0f %12.1f%n",
+                          mode, writers, changesPerSecond,
+                          writers * NANOS_PER_SECOND / changesPerSecond / NANOS_PER_MICRO);
+
+        journal.close();
+        delete(directory);
+    }
+
+    /**
+     * Adds and removes one book until told to stop.
+     */
+    private static void write(final CatalogJournal journal,
+                              final Book           book,
+                              final AtomicBoolean  running,
+                              final LongAdder      changes)
+    {
+        while(running.get())
+        {
+            journal.addBook(book);
+            journal.removeBook(book);
+            changes.add(2);
+        }
+    }
+
+    /**
+     * Deletes a journal directory and the files in it.
+     */
+    private static void delete(final Path directory) throws IOException
+    {
+        try(final DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+        {
+            for(final Path file : files)
+            {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the argument is not a positive integer
+     */
+    private static int argument(final String[] args,
+                                final int      index,
+                                final int      fallback)
+    {
+        final int value;
+
+        if(args.length <= index)
+        {
+            return fallback;
+        }
+
+        value = Integer.parseInt(args[index].replace("_", ""));
+
+        if(value <= 0)
+        {
+            throw new IllegalArgumentException("Arguments must be positive: " + args[index]);
+        }
+
+        return value;
+    }
+}
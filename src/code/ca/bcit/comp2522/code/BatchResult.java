@@ -0,0 +1,160 @@
+package ca.bcit.comp2522.code;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a bulk add such as {@link Library#addAll(Collection)} or
+ * {@link Shelf#addAll(Collection)}.
+ * A batch is validated in one pass before anything is added; every bad row
+ * is reported here with its position in the batch instead of the first one
+ * being thrown, and all the good rows are added.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class BatchResult
+{
+    private final int             addedCount;
+    private final List<Rejection> rejections;
+
+    /**
+     * Constructs a result.
+     *
+     * @param addedCount the number of rows added
+     * @param rejections the rows that were not added
+     */
+    BatchResult(final int             addedCount,
+                final List<Rejection> rejections)
+    {
+        this.addedCount = addedCount;
+        this.rejections = Collections.unmodifiableList(rejections);
+    }
+
+    /**
+     * Returns the number of rows that were added.
+     *
+     * @return the added count
+     */
+    public int getAddedCount()
+    {
+        return addedCount;
+    }
+
+    /**
+     * Returns the rows that were not added, in batch order.
+     *
+     * @return the rejected rows
+     */
+    public List<Rejection> getRejections()
+    {
+        return rejections;
+    }
+
+    /**
+     * Returns whether every row was added.
+     *
+     * @return true if nothing was rejected
+     */
+    public boolean isComplete()
+    {
+        return rejections.isEmpty();
+    }
+
+    /**
+     * Returns a one-line summary of the batch.
+     *
+     * @return the result as text
+     */
+    @Override
+    public String toString()
+    {
+        return "Added " + addedCount + ", rejected " + rejections.size();
+    }
+
+    /**
+     * Copies the acceptable rows of a batch into accepted, in order, and
+     * returns a rejection for each null row.
+     *
+     * @param <T>      the row type
+     * @param batch    the rows to screen
+     * @param accepted receives the rows that passed
+     * @param label    names a row in rejection reasons, such as "Book"
+     * @return the rejected rows
+     */
+    static <T> List<Rejection> screen(final Collection<? extends T> batch,
+                                      final List<T>                 accepted,
+                                      final String                  label)
+    {
+        final List<Rejection> rejections;
+        int                   index;
+
+        rejections = new ArrayList<>();
+        index = 0;
+
+        for(final T row : batch)
+        {
+            if(row == null)
+            {
+                rejections.add(new Rejection(index, label + " must not be null."));
+            }
+            else
+            {
+                accepted.add(row);
+            }
+
+            index++;
+        }
+
+        return rejections;
+    }
+
+    /**
+     * One row of a batch that was not added.
+     */
+    public static final class Rejection
+    {
+        private final int    index;
+        private final String reason;
+
+        private Rejection(final int    index,
+                          final String reason)
+        {
+            this.index = index;
+            this.reason = reason;
+        }
+
+        /**
+         * Returns the row's position in the batch, starting at 0.
+         *
+         * @return the row index
+         */
+        public int getIndex()
+        {
+            return index;
+        }
+
+        /**
+         * Returns why the row was rejected.
+         *
+         * @return the reason
+         */
+        public String getReason()
+        {
+            return reason;
+        }
+
+        /**
+         * Returns the row index and reason.
+         *
+         * @return the rejection as text
+         */
+        @Override
+        public String toString()
+        {
+            return "Row " + index + ": " + reason;
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package ca.bcit.comp2522.code;
 
+import java.util.Comparator;
+
 /**
  * Represents a book in the library catalog.
+ * The genre is stored as a {@link Genre}; the {@code GENRE_*} string
+ * constants and {@link #getGenre()} remain as the string-based API.
  *
  * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
  * @version 1.0
@@ -17,8 +21,17 @@ public final class Book
     /** Accepted genre value for reference. */
     public static final String GENRE_REFERENCE  = "Reference";
 
+    /** Orders books by page count, fewest pages first. */
+    public static final Comparator<Book> BY_PAGE_COUNT = Comparator.comparingInt(Book::getPageCount);
+
+    /** Orders books by year published, oldest first. */
+    public static final Comparator<Book> BY_YEAR_PUBLISHED = Comparator.comparingInt(Book::getYearPublished);
+
+    /** Orders books alphabetically by title. */
+    public static final Comparator<Book> BY_TITLE = Comparator.comparing(Book::getTitle);
+
     private final String title;
-    private final String genre;
+    private final Genre  genre;
     private final int yearPublished;
     private final int pageCount;
 
@@ -37,6 +50,27 @@ public final class Book
                 final int pageCount)
     {
         validateTitle(title);
+
+        this.title = title;
+        this.genre = Genre.fromLabel(genre);
+        this.yearPublished = yearPublished;
+        this.pageCount = pageCount;
+    }
+
+    /**
+     * Constructs a Book with the given details and an already-resolved genre.
+     *
+     * @param title the book's title
+     * @param genre the genre
+     * @param yearPublished the year published
+     * @param pageCount the number of pages
+     */
+    public Book(final String title,
+                final Genre genre,
+                final int yearPublished,
+                final int pageCount)
+    {
+        validateTitle(title);
         validateGenre(genre);
 
         this.title = title;
@@ -76,6 +110,16 @@ public final class Book
      * @return the genre
      */
     public String getGenre()
+    {
+        return genre.getLabel();
+    }
+
+    /**
+     * Returns the genre as a {@link Genre}.
+     *
+     * @return the genre
+     */
+    public Genre getGenreType()
     {
         return genre;
     }
@@ -109,7 +153,7 @@ public final class Book
     public String toString()
     {
         return title +
-                " ["  + genre +
+                " ["  + genre.getLabel() +
                 ", "  + yearPublished +
                 ", "  + pageCount + " pages]";
     }
@@ -129,21 +173,16 @@ public final class Book
     }
 
     /**
-     * Validates that genre is one of the three accepted constants.
+     * Validates that genre is not null.
      *
      * @param genre the genre to check
-     * @throws IllegalArgumentException if genre is not recognised
+     * @throws IllegalArgumentException if genre is null
      */
-    private static void validateGenre(final String genre)
+    private static void validateGenre(final Genre genre)
     {
-        if(!GENRE_FICTION.equals(genre)    &&
-                !GENRE_NONFICTION.equals(genre) &&
-                !GENRE_REFERENCE.equals(genre))
+        if(genre == null)
         {
-            throw new IllegalArgumentException(
-                    "Genre must be " + GENRE_FICTION    + ", " +
-                            GENRE_NONFICTION + ", or "           +
-                            GENRE_REFERENCE  + ".");
+            throw new IllegalArgumentException("Genre must not be null.");
         }
     }
 
@@ -0,0 +1,444 @@
+package ca.bcit.comp2522.code;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Renders a catalog as CSV, JSON or an aligned text table.
+ * <p>
+ * Rows are formatted into one reusable {@link StringBuilder} without
+ * building a String per book, and the builder is handed to the destination
+ * only once it holds {@link #FLUSH_THRESHOLD} characters, so a catalog of
+ * millions of books reaches a {@link java.io.Writer} or stream in a few
+ * hundred large writes instead of one per line. Exporting to a
+ * {@link WritableByteChannel} encodes each full buffer to UTF-8 in one
+ * step and writes it as one {@link ByteBuffer}. A CSV title holding a line
+ * break is written as a quoted field spanning lines, as RFC 4180 allows,
+ * and {@link CatalogLoader} reads it back as one record.
+ * <p>
+ * An exporter keeps its buffers between exports and is not safe for
+ * concurrent use; create one per thread.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class CatalogExporter
+{
+    /** Characters buffered before they are written to the destination. */
+    public static final int FLUSH_THRESHOLD = 1 << 16;
+
+    /** Room left in the buffer for the row that crosses the threshold. */
+    private static final int ROW_HEADROOM = 1 << 10;
+
+    /** Widest the title column of a table grows before titles overflow it. */
+    private static final int MAX_TABLE_TITLE_WIDTH = 60;
+
+    /** Highest character that must be escaped in JSON strings. */
+    private static final char LAST_CONTROL_CHARACTER = 0x1F;
+
+    /** Hex digits of a JSON {@code \\u} escape. */
+    private static final String HEX_DIGITS = "0123456789abcdef";
+
+    /** Bits per hex digit. */
+    private static final int HEX_DIGIT_BITS = 4;
+
+    /** Base of the decimal years measured for the table's year column. */
+    private static final int DECIMAL_RADIX = 10;
+
+    /** Mask selecting one hex digit. */
+    private static final int HEX_DIGIT_MASK = 0xF;
+
+    private static final String TITLE_HEADER = "Title";
+    private static final String GENRE_HEADER = "Genre";
+    private static final String YEAR_HEADER  = "Year";
+    private static final String PAGES_HEADER = "Pages";
+
+    /**
+     * The layout of an export.
+     */
+    public enum Format
+    {
+        /** RFC 4180 CSV with a header row; titles are quoted when needed. */
+        CSV,
+
+        /** A JSON array with one object per book. */
+        JSON,
+
+        /** A text table with padded, aligned columns and a header rule. */
+        TABLE
+    }
+
+    private final Format        format;
+    private final StringBuilder buffer;
+
+    // Column widths of the table being exported, measured before its first row
+    private int titleWidth;
+    private int yearWidth;
+
+    /**
+     * Constructs an exporter for the given format.
+     *
+     * @param format the layout to write
+     */
+    public CatalogExporter(final Format format)
+    {
+        validateFormat(format);
+
+        this.format = format;
+        this.buffer = new StringBuilder(FLUSH_THRESHOLD + ROW_HEADROOM);
+    }
+
+    /**
+     * Returns the layout this exporter writes.
+     *
+     * @return the format
+     */
+    public Format getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * Writes the books to a character destination such as a
+     * {@link java.io.Writer}, {@link java.io.PrintStream} or
+     * {@link StringBuilder}. The destination is not flushed or closed.
+     *
+     * @param books the books to export, in order
+     * @param out   the destination
+     * @return the number of books written
+     * @throws IOException if the destination fails
+     */
+    public long export(final Iterable<? extends Book> books,
+                       final Appendable              out) throws IOException
+    {
+        validateBooks(books);
+        validateDestination(out);
+
+        return render(books, () -> out.append(buffer));
+    }
+
+    /**
+     * Writes the books to a byte channel as UTF-8, encoding and writing
+     * each full buffer of text at once.
+     *
+     * @param books   the books to export, in order
+     * @param channel the destination
+     * @return the number of books written
+     * @throws IOException if the channel fails
+     */
+    public long export(final Iterable<? extends Book> books,
+                       final WritableByteChannel     channel) throws IOException
+    {
+        validateBooks(books);
+        validateDestination(channel);
+
+        return render(books, () -> encodeTo(channel));
+    }
+
+    /**
+     * Formats every book into the buffer, handing it to the sink each time
+     * it fills and once at the end.
+     */
+    private long render(final Iterable<? extends Book> books,
+                        final Sink                    sink) throws IOException
+    {
+        long rows;
+
+        buffer.setLength(0);
+        rows = 0;
+
+        if(format == Format.TABLE)
+        {
+            measureColumns(books);
+        }
+
+        writeHeader();
+
+        for(final Book book : books)
+        {
+            writeRow(book, rows);
+            rows++;
+
+            if(buffer.length() >= FLUSH_THRESHOLD)
+            {
+                sink.drain();
+                buffer.setLength(0);
+            }
+        }
+
+        writeFooter(rows);
+        sink.drain();
+        buffer.setLength(0);
+        return rows;
+    }
+
+    private void writeHeader()
+    {
+        switch(format)
+        {
+            case CSV:
+                buffer.append("title,genre,year,pages\n");
+                break;
+            case JSON:
+                buffer.append('[');
+                break;
+            default:
+                pad(TITLE_HEADER, titleWidth).append(" | ");
+                pad(GENRE_HEADER, Genre.maxLabelLength()).append(" | ");
+                pad(YEAR_HEADER, yearWidth).append(" | ");
+                buffer.append(PAGES_HEADER).append('\n');
+                repeat('-', titleWidth).append("-+-");
+                repeat('-', Genre.maxLabelLength()).append("-+-");
+                repeat('-', yearWidth).append("-+-");
+                repeat('-', PAGES_HEADER.length()).append('\n');
+                break;
+        }
+    }
+
+    private void writeRow(final Book book,
+                          final long index)
+    {
+        switch(format)
+        {
+            case CSV:
+                appendCsv(book.getTitle());
+                buffer.append(',').append(book.getGenre())
+                      .append(',').append(book.getYearPublished())
+                      .append(',').append(book.getPageCount())
+                      .append('\n');
+                break;
+            case JSON:
+                buffer.append(index == 0 ? "\n  " : ",\n  ");
+                buffer.append("{\"title\":");
+                appendJson(book.getTitle());
+                buffer.append(",\"genre\":\"").append(book.getGenre())
+                      .append("\",\"year\":").append(book.getYearPublished())
+                      .append(",\"pages\":").append(book.getPageCount())
+                      .append('}');
+                break;
+            default:
+                pad(book.getTitle(), titleWidth).append(" | ");
+                pad(book.getGenre(), Genre.maxLabelLength()).append(" | ");
+                padYear(book.getYearPublished()).append(" | ")
+                      .append(book.getPageCount()).append('\n');
+                break;
+        }
+    }
+
+    private void writeFooter(final long rows)
+    {
+        if(format == Format.JSON)
+        {
+            buffer.append(rows == 0 ? "]\n" : "\n]\n");
+        }
+    }
+
+    /**
+     * Appends a CSV field, quoting it and doubling its quotes if it holds a
+     * comma, quote or line break, or starts or ends with whitespace that a
+     * reader would otherwise trim.
+     */
+    private void appendCsv(final String field)
+    {
+        boolean quote;
+        quote = !field.isEmpty()
+                && (Character.isWhitespace(field.charAt(0))
+                    || Character.isWhitespace(field.charAt(field.length() - 1)));
+
+        for(int i = 0; i < field.length() && !quote; i++)
+        {
+            final char c;
+            c = field.charAt(i);
+
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if(!quote)
+        {
+            buffer.append(field);
+            return;
+        }
+
+        buffer.append('"');
+
+        for(int i = 0; i < field.length(); i++)
+        {
+            final char c;
+            c = field.charAt(i);
+
+            if(c == '"')
+            {
+                buffer.append('"');
+            }
+
+            buffer.append(c);
+        }
+
+        buffer.append('"');
+    }
+
+    /**
+     * Appends a quoted JSON string, escaping quotes, backslashes and
+     * control characters.
+     */
+    private void appendJson(final String value)
+    {
+        buffer.append('"');
+
+        for(int i = 0; i < value.length(); i++)
+        {
+            final char c;
+            c = value.charAt(i);
+
+            if(c == '"' || c == '\\')
+            {
+                buffer.append('\\').append(c);
+            }
+            else if(c <= LAST_CONTROL_CHARACTER)
+            {
+                buffer.append("\\u00")
+                      .append(HEX_DIGITS.charAt(c >> HEX_DIGIT_BITS))
+                      .append(HEX_DIGITS.charAt(c & HEX_DIGIT_MASK));
+            }
+            else
+            {
+                buffer.append(c);
+            }
+        }
+
+        buffer.append('"');
+    }
+
+    private StringBuilder pad(final String value,
+                              final int    width)
+    {
+        buffer.append(value);
+        return repeat(' ', width - value.length());
+    }
+
+    /**
+     * Appends a year padded to the year column, without creating a String.
+     */
+    private StringBuilder padYear(final int year)
+    {
+        final int start;
+        start = buffer.length();
+
+        buffer.append(year);
+        return repeat(' ', yearWidth - (buffer.length() - start));
+    }
+
+    private StringBuilder repeat(final char c,
+                                 final int  count)
+    {
+        for(int i = 0; i < count; i++)
+        {
+            buffer.append(c);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Encodes the buffer as UTF-8 and writes it to the channel. Going
+     * through a String lets the JDK use its intrinsic Latin-1 fast path,
+     * which is faster than running a CharsetEncoder over the builder.
+     */
+    private void encodeTo(final WritableByteChannel channel) throws IOException
+    {
+        final ByteBuffer bytes;
+        bytes = ByteBuffer.wrap(buffer.toString().getBytes(StandardCharsets.UTF_8));
+
+        while(bytes.hasRemaining())
+        {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * Measures a table's columns: the title column fits the longest title,
+     * capped at {@link #MAX_TABLE_TITLE_WIDTH}, and the year column the
+     * widest year, so years of any length line up. Neither is narrower than
+     * its header.
+     */
+    private void measureColumns(final Iterable<? extends Book> books)
+    {
+        titleWidth = TITLE_HEADER.length();
+        yearWidth = YEAR_HEADER.length();
+
+        for(final Book book : books)
+        {
+            titleWidth = Math.max(titleWidth, Math.min(book.getTitle().length(), MAX_TABLE_TITLE_WIDTH));
+            yearWidth = Math.max(yearWidth, digitsOf(book.getYearPublished()));
+        }
+    }
+
+    /**
+     * Returns the number of characters in a year's decimal form, including
+     * any minus sign.
+     */
+    private static int digitsOf(final int year)
+    {
+        int  digits;
+        long rest;
+
+        digits = year < 0 ? 2 : 1;
+        rest = Math.abs((long) year);
+
+        while(rest >= DECIMAL_RADIX)
+        {
+            rest /= DECIMAL_RADIX;
+            digits++;
+        }
+
+        return digits;
+    }
+
+    /**
+     * @throws IllegalArgumentException if format is null
+     */
+    private static void validateFormat(final Format format)
+    {
+        if(format == null)
+        {
+            throw new IllegalArgumentException("Format must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if books is null
+     */
+    private static void validateBooks(final Iterable<? extends Book> books)
+    {
+        if(books == null)
+        {
+            throw new IllegalArgumentException("Books must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if destination is null
+     */
+    private static void validateDestination(final Object destination)
+    {
+        if(destination == null)
+        {
+            throw new IllegalArgumentException("Destination must not be null.");
+        }
+    }
+
+    /**
+     * Receives the buffer each time it is full and once at the end.
+     */
+    private interface Sink
+    {
+        /**
+         * Writes the buffer's contents to the destination.
+         *
+         * @throws IOException if the destination fails
+         */
+        void drain() throws IOException;
+    }
+}
@@ -0,0 +1,1327 @@
+package ca.bcit.comp2522.code;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Makes a {@link Library} durable with a write-ahead log.
+ * <p>
+ * {@link #open(Path, String, SyncMode)} recovers the library from its
+ * directory and registers the journal as a {@link CatalogListener} and a
+ * {@link CheckoutListener}, so every later {@link Library#addBook(Book)} and
+ * {@link Library#removeBook(Book)}, and every checkout, return and hold at
+ * the library's {@link CheckoutDesk}, is appended to the log. The directory
+ * holds numbered generations:
+ * <pre>
+ *   snapshot-N.libs   a {@link LibrarySnapshot} of every change before log N
+ *   desk-N.log        the desk's ledger as of that snapshot
+ *   journal-N.log     the changes made after that snapshot
+ * </pre>
+ * Each log record is {@code [int length][int CRC32][payload]}, so a record
+ * torn by a crash is detected and cut off during recovery. Within a
+ * generation, books are numbered in the order the journal learns of them:
+ * the snapshot's books in catalog order, then each logged addition. A
+ * removal or desk event is logged with the book's number and fields, so
+ * replay applies it to that same book even after the catalog has been
+ * sorted or holds others equal to it; a record naming no such book fails
+ * recovery with an {@link IOException}. Desk events are replayed into the
+ * desk with their original sequence numbers and times, restoring who has
+ * each book, the holds queues and the ledger. Recovery loads the newest snapshot and replays the
+ * logs from its generation onwards. The catalog's order is not logged, so
+ * books come back in snapshot order followed by the order they were added.
+ * {@link #checkpoint()} starts a new log generation, writes the desk's
+ * ledger for the books still in the catalog, saves a snapshot, which
+ * {@link LibrarySnapshot#save(Library, Path)} renames into place
+ * atomically, and only then deletes the older files, so a crash at any
+ * point leaves a recoverable directory. Receipts for books removed before
+ * the checkpoint are not carried over.
+ * <p>
+ * With {@link SyncMode#EVERY_WRITE} each change is forced to disk by its own
+ * {@code fsync} before the library call returns. With
+ * {@link SyncMode#GROUP_COMMIT} a change also waits until it is on disk, but
+ * shares the {@code fsync} with changes logged concurrently: the first
+ * waiter to reach the log becomes the leader and forces every buffered
+ * change, and the followers queued behind it return as soon as that force
+ * has covered theirs. With {@link SyncMode#ASYNC} changes collect in a
+ * buffer that a background thread writes and forces once per interval, or
+ * sooner when it fills, and the library call returns before the change is
+ * durable, so a crash can lose the last interval. {@link #sync()} forces
+ * pending changes at any time.
+ * <p>
+ * The journal is told of a change after the library has made it. If the
+ * change cannot be logged, the journal fails: the change is reported with an
+ * {@link UncheckedIOException} from the library call, every later change is
+ * rejected the same way, and {@link #getFailure()} returns the cause. The
+ * library then holds changes the log does not, so it should be discarded
+ * and recovered again with {@link #open(Path, String, SyncMode)}.
+ * <p>
+ * Changes made through the library must come from one thread at a time, as
+ * for {@link Library}. The journal's own {@link #addBook(Book)} and
+ * {@link #removeBook(Book)} may be called from many threads at once: they
+ * serialize the change itself but wait for the disk outside that lock, which
+ * is what lets concurrent writers share a group commit. The two must not be
+ * mixed while changes are in flight. Desk events may be logged from many
+ * threads, under the desk's own rule that the library is not changed
+ * meanwhile, and share group commits the same way.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class CatalogJournal implements CatalogListener, CheckoutListener, AutoCloseable
+{
+    /** Default time between background commits in {@link SyncMode#ASYNC} mode. */
+    public static final Duration DEFAULT_COMMIT_INTERVAL = Duration.ofMillis(5);
+
+    /** Default number of logged changes, including desk events, between automatic checkpoints. */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1_000_000;
+
+    private static final String LOG_PREFIX      = "journal-";
+    private static final String LOG_SUFFIX      = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".libs";
+    private static final String DESK_PREFIX     = "desk-";
+
+    /** Record type of an added book. */
+    private static final byte RECORD_ADD = 1;
+
+    /** Record type of a removed book, named by its number and fields. */
+    private static final byte RECORD_REMOVE = 2;
+
+    /** Record type of a {@link CheckoutReceipt.Action#CHECKOUT} receipt. */
+    private static final byte RECORD_CHECKOUT = 3;
+
+    /** Record type of a {@link CheckoutReceipt.Action#RETURN} receipt. */
+    private static final byte RECORD_RETURN = 4;
+
+    /** Record type of a {@link CheckoutReceipt.Action#HOLD} receipt. */
+    private static final byte RECORD_HOLD = 5;
+
+    /** Record type of the desk's next receipt number, ending a desk file. */
+    private static final byte RECORD_DESK_SEQUENCE = 6;
+
+    /** Size of the shortest payload, a desk sequence record. */
+    private static final int MIN_PAYLOAD_BYTES = Byte.BYTES + Long.BYTES;
+
+    /** Size of a record's length and checksum fields. */
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+
+    /** Size of a record's type, genre, year, page count and title length fields. */
+    private static final int RECORD_FIXED_BYTES = Byte.BYTES + Byte.BYTES + Integer.BYTES * 3;
+
+    /** Size of a receipt's sequence, time and patron length fields. */
+    private static final int RECEIPT_FIXED_BYTES = Long.BYTES * 2 + Integer.BYTES * 2;
+
+    /** Capacity of each of the two append buffers. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Size of the read buffer used during replay. */
+    private static final int REPLAY_BUFFER_SIZE = 1 << 16;
+
+    /** Ticket of a change that has nothing to wait for. */
+    private static final long NO_TICKET = -1L;
+
+    /** Generation of a directory with no snapshot. */
+    private static final long FIRST_GENERATION = 0;
+
+    /**
+     * When a logged change is forced to disk.
+     */
+    public enum SyncMode
+    {
+        /** Force every change on its own before the library call returns. */
+        EVERY_WRITE,
+
+        /**
+         * Force every change before the library call returns, sharing each
+         * force among the changes logged concurrently.
+         */
+        GROUP_COMMIT,
+
+        /**
+         * Return at once and force buffered changes together, once per
+         * commit interval; a crash can lose changes already returned.
+         */
+        ASYNC
+    }
+
+    private final Path                     directory;
+    private final Library                  library;
+    private final SyncMode                 syncMode;
+    private final int                      checkpointInterval;
+    private final Object                   bufferLock;
+    private final Object                   channelLock;
+    private final CRC32                    checksum;
+    private final Object                   changeLock;
+    private final ScheduledExecutorService committer;
+
+    // Guarded by bufferLock
+    private ByteBuffer pending;
+    private long       buffered;
+    private boolean    closed;
+
+    // Guarded by channelLock
+    private ByteBuffer  spare;
+    private FileChannel log;
+    private long        generation;
+
+    // Used only by the thread changing the library
+    private final Map<Book, Long> sequences;
+    private long                  nextSequence;
+    private boolean               replaying;
+    private boolean               deferring;
+    private long                  deferredTicket;
+    private int                   changesSinceCheckpoint;
+
+    /** Desk events logged since the last checkpoint, from any thread. */
+    private final AtomicInteger receiptsSinceCheckpoint;
+
+    /** Number of records forced to disk, written under channelLock. */
+    private volatile long durable;
+
+    private volatile IOException failure;
+
+    private CatalogJournal(final Path       directory,
+                           final Library    library,
+                           final SyncMode   syncMode,
+                           final Duration   commitInterval,
+                           final int        checkpointInterval,
+                           final long       generation,
+                           final List<Book> bySequence) throws IOException
+    {
+        this.directory = directory;
+        this.library = library;
+        this.syncMode = syncMode;
+        this.checkpointInterval = checkpointInterval;
+        this.bufferLock = new Object();
+        this.channelLock = new Object();
+        this.changeLock = new Object();
+        this.checksum = new CRC32();
+        this.pending = ByteBuffer.allocate(BUFFER_SIZE);
+        this.spare = ByteBuffer.allocate(BUFFER_SIZE);
+        this.generation = generation;
+        this.log = openLog(generation);
+        this.sequences = new IdentityHashMap<>();
+        this.receiptsSinceCheckpoint = new AtomicInteger();
+        this.nextSequence = bySequence.size();
+
+        for(int sequence = 0; sequence < bySequence.size(); sequence++)
+        {
+            if(bySequence.get(sequence) != null)
+            {
+                sequences.put(bySequence.get(sequence), (long) sequence);
+            }
+        }
+
+        if(syncMode == SyncMode.ASYNC)
+        {
+            final long intervalNanos;
+            intervalNanos = commitInterval.toNanos();
+
+            committer = Executors.newSingleThreadScheduledExecutor(runnable ->
+            {
+                final Thread thread;
+                thread = new Thread(runnable, "catalog-journal-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            committer.scheduleWithFixedDelay(this::commitQuietly, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        }
+        else
+        {
+            committer = null;
+        }
+    }
+
+    /**
+     * Recovers a library from a journal directory with the default commit
+     * and checkpoint intervals, creating the directory if needed.
+     *
+     * @param directory the journal directory
+     * @param name      the library's name if the directory holds no snapshot yet
+     * @param syncMode  when changes are forced to disk
+     * @return the open journal; its library is {@link #getLibrary()}
+     * @throws IOException if the directory cannot be read or written
+     */
+    public static CatalogJournal open(final Path     directory,
+                                      final String   name,
+                                      final SyncMode syncMode) throws IOException
+    {
+        return open(directory, name, syncMode, DEFAULT_COMMIT_INTERVAL, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Recovers a library from a journal directory, creating the directory if
+     * needed: loads the newest snapshot, replays the logs written after it and
+     * starts logging further changes.
+     *
+     * @param directory          the journal directory
+     * @param name               the library's name if the directory holds no snapshot yet
+     * @param syncMode           when changes are forced to disk
+     * @param commitInterval     time between background commits; used only with {@link SyncMode#ASYNC}
+     * @param checkpointInterval logged changes between automatic checkpoints, or 0 for none
+     * @return the open journal; its library is {@link #getLibrary()}
+     * @throws IOException if the directory cannot be read or written
+     */
+    public static CatalogJournal open(final Path     directory,
+                                      final String   name,
+                                      final SyncMode syncMode,
+                                      final Duration commitInterval,
+                                      final int      checkpointInterval) throws IOException
+    {
+        validateDirectory(directory);
+        validateSyncMode(syncMode);
+        validateCommitInterval(commitInterval);
+        validateCheckpointInterval(checkpointInterval);
+
+        final NavigableMap<Long, Path> snapshots;
+        final NavigableMap<Long, Path> logs;
+        final long                     snapshotGeneration;
+        final Library                  library;
+        final List<Book>               bySequence;
+        final Path                     desk;
+        final CatalogJournal           journal;
+        long                           generation;
+
+        Files.createDirectories(directory);
+
+        snapshots = generations(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        logs = generations(directory, LOG_PREFIX, LOG_SUFFIX);
+
+        if(snapshots.isEmpty())
+        {
+            snapshotGeneration = FIRST_GENERATION;
+            library = new Library(name, Collections.emptyList());
+        }
+        else
+        {
+            snapshotGeneration = snapshots.lastKey();
+            library = LibrarySnapshot.load(snapshots.lastEntry().getValue());
+        }
+
+        generation = snapshotGeneration;
+        bySequence = new ArrayList<>(library.getCatalog());
+        desk = directory.resolve(DESK_PREFIX + snapshotGeneration + LOG_SUFFIX);
+
+        if(Files.exists(desk))
+        {
+            replay(desk, library, bySequence);
+        }
+
+        for(final Map.Entry<Long, Path> entry : logs.tailMap(snapshotGeneration, true).entrySet())
+        {
+            replay(entry.getValue(), library, bySequence);
+            generation = entry.getKey();
+        }
+
+        journal = new CatalogJournal(directory, library, syncMode, commitInterval,
+                                     checkpointInterval, generation, bySequence);
+        journal.deleteBefore(snapshotGeneration);
+
+        // addListener hands over the recovered catalog, which is already durable
+        journal.replaying = true;
+        library.addListener(journal);
+        journal.replaying = false;
+        library.getCheckoutDesk().addListener(journal);
+
+        return journal;
+    }
+
+    /**
+     * Returns the recovered library; changes made to it are journaled.
+     *
+     * @return the library
+     */
+    public Library getLibrary()
+    {
+        return library;
+    }
+
+    /**
+     * Logs an added book.
+     *
+     * @param book the book that was added
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    @Override
+    public void bookAdded(final Book book)
+    {
+        append(RECORD_ADD, Collections.singletonList(book));
+    }
+
+    /**
+     * Logs a batch of added books, forcing them together.
+     *
+     * @param books the books that were added
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    @Override
+    public void booksAdded(final List<Book> books)
+    {
+        append(RECORD_ADD, books);
+    }
+
+    /**
+     * Logs a removed book with the number the journal gave it.
+     *
+     * @param book the book that was removed
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    @Override
+    public void bookRemoved(final Book book)
+    {
+        append(RECORD_REMOVE, Collections.singletonList(book));
+    }
+
+    /**
+     * Logs a desk event, then forces it or waits for the group commit
+     * covering it, as the sync mode requires.
+     *
+     * @param receipt the receipt the desk issued
+     * @throws UncheckedIOException if the event cannot be logged
+     */
+    @Override
+    public void receiptIssued(final CheckoutReceipt receipt)
+    {
+        final Long number;
+
+        // Only read here: the desk is used while the library is not changing
+        number = sequences.get(receipt.getBook());
+
+        try
+        {
+            final long ticket;
+
+            if(number == null)
+            {
+                throw new IOException("Book " + receipt.getBook().getTitle() + " was never journaled.");
+            }
+
+            ticket = buffer(recordTypeOf(receipt.getAction()), receipt.getBook(), number, receipt);
+            receiptsSinceCheckpoint.incrementAndGet();
+
+            if(syncMode == SyncMode.EVERY_WRITE)
+            {
+                sync();
+            }
+            else if(syncMode == SyncMode.GROUP_COMMIT)
+            {
+                awaitDurable(ticket);
+            }
+        }
+        catch(final IOException e)
+        {
+            fail(e);
+            throw notJournaled(e);
+        }
+    }
+
+    /**
+     * Adds a book to the library and returns once the change is logged as
+     * the sync mode requires. Safe to call from several threads at once.
+     *
+     * @param book the book to add
+     * @throws UncheckedIOException if the change cannot be logged
+     */
+    public void addBook(final Book book)
+    {
+        change(() ->
+        {
+            library.addBook(book);
+            return null;
+        });
+    }
+
+    /**
+     * Removes a book from the library and returns once the change is logged
+     * as the sync mode requires. Safe to call from several threads at once.
+     *
+     * @param book the book to remove
+     * @return true if the book was in the catalog and has been removed
+     * @throws UncheckedIOException if the change cannot be logged
+     */
+    public boolean removeBook(final Book book)
+    {
+        return change(() -> library.removeBook(book));
+    }
+
+    /**
+     * Returns why the journal failed, or null if it has not. Once failed,
+     * the library holds changes the log may not and every later change is
+     * rejected.
+     *
+     * @return the failure, or null
+     */
+    public IOException getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * Writes and forces every change logged so far.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void sync() throws IOException
+    {
+        synchronized(channelLock)
+        {
+            final ByteBuffer batch;
+            final long       upTo;
+
+            validateNotFailed();
+
+            synchronized(bufferLock)
+            {
+                batch = pending;
+                pending = spare;
+                upTo = buffered;
+            }
+
+            spare = batch;
+            batch.flip();
+
+            try
+            {
+                while(batch.hasRemaining())
+                {
+                    log.write(batch);
+                }
+
+                log.force(false);
+                durable = upTo;
+            }
+            catch(final IOException e)
+            {
+                fail(e);
+                throw e;
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Saves a snapshot of the library and its desk's ledger, and discards
+     * the log they replace. Must be called from the thread that changes the
+     * library, while the desk is not in use.
+     *
+     * @throws IOException if the snapshot or log cannot be written
+     */
+    public void checkpoint() throws IOException
+    {
+        final long            nextGeneration;
+        final List<Book>      books;
+        final Map<Book, Long> renumbered;
+
+        try
+        {
+            synchronized(channelLock)
+            {
+                sync();
+                log.close();
+
+                generation++;
+                log = openLog(generation);
+                nextGeneration = generation;
+            }
+
+            // The new generation numbers the books in snapshot order
+            books = library.getCatalog();
+            renumbered = new IdentityHashMap<>(books.size());
+
+            for(int sequence = 0; sequence < books.size(); sequence++)
+            {
+                renumbered.put(books.get(sequence), (long) sequence);
+            }
+
+            // The ledger is durable before the snapshot that makes recovery read it
+            writeDesk(directory.resolve(DESK_PREFIX + nextGeneration + LOG_SUFFIX), renumbered);
+            LibrarySnapshot.save(library, directory.resolve(SNAPSHOT_PREFIX + nextGeneration + SNAPSHOT_SUFFIX));
+        }
+        catch(final IOException e)
+        {
+            // Later changes would be numbered against a snapshot that may not exist
+            fail(e);
+            throw e;
+        }
+
+        sequences.clear();
+        sequences.putAll(renumbered);
+        nextSequence = books.size();
+        changesSinceCheckpoint = 0;
+        receiptsSinceCheckpoint.set(0);
+        deleteBefore(nextGeneration);
+    }
+
+    /**
+     * Forces pending changes, stops the commit thread and closes the log.
+     * The library stops being journaled.
+     *
+     * @throws IOException if pending changes cannot be written
+     */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized(bufferLock)
+        {
+            if(closed)
+            {
+                return;
+            }
+
+            closed = true;
+        }
+
+        library.removeListener(this);
+        library.getCheckoutDesk().removeListener(this);
+
+        if(committer != null)
+        {
+            committer.shutdown();
+        }
+
+        try
+        {
+            sync();
+        }
+        finally
+        {
+            synchronized(channelLock)
+            {
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * Encodes changes into the pending buffer, then forces them, waits for
+     * the group commit covering them or, inside {@link #change(Supplier)},
+     * leaves that wait to the caller. In {@link SyncMode#ASYNC} mode they are
+     * left for the commit thread. Any failure fails the journal, since the
+     * library has already made the change.
+     *
+     * @throws UncheckedIOException if the change cannot be logged, or the
+     *                              journal failed earlier
+     */
+    private void append(final byte       type,
+                        final List<Book> books)
+    {
+        if(replaying)
+        {
+            return;
+        }
+
+        try
+        {
+            long ticket;
+            ticket = NO_TICKET;
+
+            for(final Book book : books)
+            {
+                ticket = buffer(type, book, sequenceOf(type, book), null);
+            }
+
+            // One force covers the whole batch
+            if(syncMode == SyncMode.EVERY_WRITE)
+            {
+                sync();
+            }
+            else if(syncMode == SyncMode.GROUP_COMMIT && deferring)
+            {
+                deferredTicket = ticket;
+            }
+            else if(syncMode == SyncMode.GROUP_COMMIT)
+            {
+                awaitDurable(ticket);
+            }
+
+            changesSinceCheckpoint += books.size();
+
+            if(checkpointInterval > 0
+               && changesSinceCheckpoint + receiptsSinceCheckpoint.get() >= checkpointInterval)
+            {
+                checkpoint();
+            }
+        }
+        catch(final IOException e)
+        {
+            fail(e);
+            throw notJournaled(e);
+        }
+    }
+
+    /**
+     * Makes a change under the change lock, then waits for a group commit
+     * outside it, so that concurrent callers can share one force.
+     *
+     * @throws UncheckedIOException if the change cannot be logged
+     */
+    private <T> T change(final Supplier<T> change)
+    {
+        final T    result;
+        final long ticket;
+
+        synchronized(changeLock)
+        {
+            deferredTicket = NO_TICKET;
+            deferring = true;
+
+            try
+            {
+                result = change.get();
+            }
+            finally
+            {
+                deferring = false;
+            }
+
+            ticket = deferredTicket;
+        }
+
+        try
+        {
+            awaitDurable(ticket);
+        }
+        catch(final IOException e)
+        {
+            fail(e);
+            throw notJournaled(e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns once the record with the given ticket has been forced. The
+     * first waiter to take the channel lock leads, forcing every record
+     * buffered so far; the followers queued behind it find theirs covered
+     * and return without forcing again.
+     */
+    private void awaitDurable(final long ticket) throws IOException
+    {
+        if(durable >= ticket)
+        {
+            return;
+        }
+
+        synchronized(channelLock)
+        {
+            if(durable < ticket)
+            {
+                sync();
+            }
+        }
+    }
+
+    private UncheckedIOException notJournaled(final IOException cause)
+    {
+        return new UncheckedIOException("Change to " + library.getName()
+                                        + " was not journaled; the library no longer matches its log.", cause);
+    }
+
+    /**
+     * Numbers an added book, or returns and forgets the number of a removed
+     * one.
+     *
+     * @throws IOException if a removed book was never numbered
+     */
+    private long sequenceOf(final byte type,
+                            final Book book) throws IOException
+    {
+        final Long sequence;
+
+        if(type == RECORD_ADD)
+        {
+            sequences.put(book, nextSequence);
+            return nextSequence++;
+        }
+
+        sequence = sequences.remove(book);
+
+        if(sequence == null)
+        {
+            throw new IOException("Removed book " + book.getTitle() + " was never journaled.");
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Encodes one change into the pending buffer, committing the buffer first
+     * if it is full.
+     *
+     * @param receipt the desk event logged, or null for a catalog change
+     * @return the change's ticket, the number of records buffered up to it
+     */
+    private long buffer(final byte            type,
+                        final Book            book,
+                        final long            sequence,
+                        final CheckoutReceipt receipt) throws IOException
+    {
+        final byte[] title;
+        final byte[] patron;
+        final int    recordLength;
+
+        title = book.getTitle().getBytes(StandardCharsets.UTF_8);
+        patron = receipt == null ? null : receipt.getPatron().getBytes(StandardCharsets.UTF_8);
+        recordLength = RECORD_HEADER_BYTES + payloadLength(type, title, patron);
+
+        while(true)
+        {
+            synchronized(bufferLock)
+            {
+                validateOpen();
+
+                if(pending.remaining() >= recordLength)
+                {
+                    encode(pending, checksum, type, book, title, sequence, receipt, patron);
+                    return ++buffered;
+                }
+
+                if(pending.position() == 0)
+                {
+                    pending = ByteBuffer.allocate(Math.max(BUFFER_SIZE, recordLength));
+                    continue;
+                }
+            }
+
+            // Buffer full: commit it on this thread and retry
+            sync();
+        }
+    }
+
+    /**
+     * Writes one record at the end of the target buffer, which has room for
+     * it. For the pending buffer the caller holds bufferLock.
+     */
+    private static void encode(final ByteBuffer      target,
+                               final CRC32           crc,
+                               final byte            type,
+                               final Book            book,
+                               final byte[]          title,
+                               final long            sequence,
+                               final CheckoutReceipt receipt,
+                               final byte[]          patron)
+    {
+        final int start;
+        final int payloadLength;
+
+        start = target.position();
+        payloadLength = payloadLength(type, title, patron);
+
+        target.position(start + RECORD_HEADER_BYTES);
+        target.put(type);
+        target.put((byte) book.getGenreType().ordinal());
+        target.putInt(book.getYearPublished());
+        target.putInt(book.getPageCount());
+        target.putInt(title.length);
+        target.put(title);
+
+        if(type != RECORD_ADD)
+        {
+            target.putLong(sequence);
+        }
+
+        if(receipt != null)
+        {
+            target.putLong(receipt.getSequence());
+            target.putLong(receipt.getTime().getEpochSecond());
+            target.putInt(receipt.getTime().getNano());
+            target.putInt(patron.length);
+            target.put(patron);
+        }
+
+        crc.reset();
+        crc.update(target.array(), start + RECORD_HEADER_BYTES, payloadLength);
+
+        target.putInt(start, payloadLength);
+        target.putInt(start + Integer.BYTES, (int) crc.getValue());
+    }
+
+    /**
+     * Returns the size of a record's payload: the fixed fields, the title,
+     * the book's number for anything but an addition and, for a desk event,
+     * the receipt's fields.
+     */
+    private static int payloadLength(final byte   type,
+                                     final byte[] title,
+                                     final byte[] patron)
+    {
+        return RECORD_FIXED_BYTES + title.length
+               + (type == RECORD_ADD ? 0 : Long.BYTES)
+               + (patron == null ? 0 : RECEIPT_FIXED_BYTES + patron.length);
+    }
+
+    /**
+     * Writes the desk's ledger for the books in the given numbering to a new
+     * file, followed by the desk's next receipt number, and forces it.
+     * Receipts for books no longer in the catalog are left out.
+     */
+    private void writeDesk(final Path            path,
+                           final Map<Book, Long> numbers) throws IOException
+    {
+        final CRC32 crc;
+        ByteBuffer  buffer;
+
+        crc = new CRC32();
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        try(final FileChannel channel = FileChannel.open(path,
+                                                         StandardOpenOption.CREATE,
+                                                         StandardOpenOption.WRITE,
+                                                         StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            for(final CheckoutReceipt receipt : library.getCheckoutDesk().ledger())
+            {
+                final Long   number;
+                final byte[] title;
+                final byte[] patron;
+                final byte   type;
+                final int    recordLength;
+
+                number = numbers.get(receipt.getBook());
+
+                if(number == null)
+                {
+                    continue;
+                }
+
+                title = receipt.getBook().getTitle().getBytes(StandardCharsets.UTF_8);
+                patron = receipt.getPatron().getBytes(StandardCharsets.UTF_8);
+                type = recordTypeOf(receipt.getAction());
+                recordLength = RECORD_HEADER_BYTES + payloadLength(type, title, patron);
+
+                if(buffer.remaining() < recordLength)
+                {
+                    writeFully(channel, buffer);
+                    buffer = buffer.capacity() < recordLength ? ByteBuffer.allocate(recordLength) : buffer;
+                }
+
+                encode(buffer, crc, type, receipt.getBook(), title, number, receipt, patron);
+            }
+
+            // Receipts left out must not have their numbers issued again
+            if(buffer.remaining() < RECORD_HEADER_BYTES + MIN_PAYLOAD_BYTES)
+            {
+                writeFully(channel, buffer);
+            }
+
+            buffer.putInt(MIN_PAYLOAD_BYTES);
+            buffer.putInt(0);
+            buffer.put(RECORD_DESK_SEQUENCE);
+            buffer.putLong(library.getCheckoutDesk().nextSequence());
+            crc.reset();
+            crc.update(buffer.array(), buffer.position() - MIN_PAYLOAD_BYTES, MIN_PAYLOAD_BYTES);
+            buffer.putInt(buffer.position() - MIN_PAYLOAD_BYTES - Integer.BYTES, (int) crc.getValue());
+
+            writeFully(channel, buffer);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Writes out and clears a buffer being filled.
+     */
+    private static void writeFully(final FileChannel channel,
+                                   final ByteBuffer  buffer) throws IOException
+    {
+        buffer.flip();
+
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    private static byte recordTypeOf(final CheckoutReceipt.Action action)
+    {
+        switch(action)
+        {
+            case CHECKOUT:
+                return RECORD_CHECKOUT;
+            case RETURN:
+                return RECORD_RETURN;
+            default:
+                return RECORD_HOLD;
+        }
+    }
+
+    /**
+     * Applies every intact record of one log to the library, truncating the
+     * log at the first torn or corrupt record. A length that runs past the
+     * end of the file marks a torn record, so it is never allocated.
+     *
+     * @param bySequence the recovered books by number, null where removed
+     * @throws IOException if the log cannot be read, or an intact record
+     *                     removes a book the library does not hold
+     */
+    private static void replay(final Path       path,
+                               final Library    library,
+                               final List<Book> bySequence) throws IOException
+    {
+        final CRC32 crc;
+        final long  fileSize;
+        long        validLength;
+
+        crc = new CRC32();
+        fileSize = Files.size(path);
+        validLength = 0;
+
+        try(final InputStream stream = Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ));
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(stream, REPLAY_BUFFER_SIZE)))
+        {
+            while(true)
+            {
+                final int    length;
+                final int    expected;
+                final byte[] payload;
+
+                try
+                {
+                    length = input.readInt();
+                    expected = input.readInt();
+
+                    if(length < MIN_PAYLOAD_BYTES || length > fileSize - validLength - RECORD_HEADER_BYTES)
+                    {
+                        break;
+                    }
+
+                    payload = new byte[length];
+                    input.readFully(payload);
+                }
+                catch(final EOFException e)
+                {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(payload, 0, payload.length);
+
+                if((int) crc.getValue() != expected)
+                {
+                    break;
+                }
+
+                apply(ByteBuffer.wrap(payload), library, bySequence, path);
+                validLength += RECORD_HEADER_BYTES + length;
+            }
+        }
+
+        try(final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+        {
+            if(channel.size() > validLength)
+            {
+                channel.truncate(validLength);
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Applies one decoded record to the library.
+     *
+     * @throws IOException if a removal or desk event names a book that is
+     *                     not in the library or does not match the logged fields
+     */
+    private static void apply(final ByteBuffer payload,
+                              final Library    library,
+                              final List<Book> bySequence,
+                              final Path       path) throws IOException
+    {
+        final byte   type;
+        final Genre  genre;
+        final int    year;
+        final int    pages;
+        final String title;
+        final byte[] titleBytes;
+        final long   sequence;
+        final Book   book;
+
+        type = payload.get();
+
+        if(type == RECORD_DESK_SEQUENCE)
+        {
+            library.getCheckoutDesk().restoreSequence(payload.getLong());
+            return;
+        }
+
+        genre = Genre.ofOrdinal(payload.get());
+        year = payload.getInt();
+        pages = payload.getInt();
+        titleBytes = new byte[payload.getInt()];
+        payload.get(titleBytes);
+        title = new String(titleBytes, StandardCharsets.UTF_8);
+
+        if(type == RECORD_ADD)
+        {
+            book = new Book(title, genre, year, pages);
+            library.addBook(book);
+            bySequence.add(book);
+            return;
+        }
+
+        if(type < RECORD_REMOVE || type > RECORD_HOLD)
+        {
+            throw new IOException(path + " holds a record of unknown type " + type + ".");
+        }
+
+        sequence = payload.getLong();
+        book = sequence >= 0 && sequence < bySequence.size() ? bySequence.get((int) sequence) : null;
+
+        if(book == null
+           || !book.getTitle().equals(title)
+           || book.getGenreType() != genre
+           || book.getYearPublished() != year
+           || book.getPageCount() != pages)
+        {
+            throw new IOException(path + " names book " + sequence + " (" + title
+                                  + "), which does not match the recovered library.");
+        }
+
+        if(type == RECORD_REMOVE)
+        {
+            // Replayed books are distinct objects, so removing by identity removes exactly this one
+            library.removeBook(book);
+            bySequence.set((int) sequence, null);
+            return;
+        }
+
+        library.getCheckoutDesk().restore(receiptOf(payload, type, library, book));
+    }
+
+    /**
+     * Decodes the receipt fields that follow a desk event's book number.
+     */
+    private static CheckoutReceipt receiptOf(final ByteBuffer payload,
+                                             final byte       type,
+                                             final Library    library,
+                                             final Book       book)
+    {
+        final long                   deskSequence;
+        final Instant                time;
+        final byte[]                 patron;
+        final CheckoutReceipt.Action action;
+
+        deskSequence = payload.getLong();
+        time = Instant.ofEpochSecond(payload.getLong(), payload.getInt());
+        patron = new byte[payload.getInt()];
+        payload.get(patron);
+
+        if(type == RECORD_CHECKOUT)
+        {
+            action = CheckoutReceipt.Action.CHECKOUT;
+        }
+        else if(type == RECORD_RETURN)
+        {
+            action = CheckoutReceipt.Action.RETURN;
+        }
+        else
+        {
+            action = CheckoutReceipt.Action.HOLD;
+        }
+
+        return new CheckoutReceipt(deskSequence, action, library.getName(), book,
+                                   new String(patron, StandardCharsets.UTF_8), time);
+    }
+
+    /**
+     * Returns the files in the directory with the given prefix and suffix,
+     * keyed by the generation number between them.
+     */
+    private static NavigableMap<Long, Path> generations(final Path   directory,
+                                                        final String prefix,
+                                                        final String suffix) throws IOException
+    {
+        final NavigableMap<Long, Path> files;
+        files = new TreeMap<>();
+
+        try(final DirectoryStream<Path> entries = Files.newDirectoryStream(directory, prefix + "*" + suffix))
+        {
+            for(final Path entry : entries)
+            {
+                final String fileName;
+                fileName = entry.getFileName().toString();
+
+                try
+                {
+                    files.put(Long.parseLong(fileName.substring(prefix.length(),
+                                                                fileName.length() - suffix.length())),
+                              entry);
+                }
+                catch(final NumberFormatException e)
+                {
+                    // Not one of ours
+                }
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Deletes snapshots and logs older than the given generation, and any
+     * snapshot left half-written by a crash.
+     */
+    private void deleteBefore(final long keepFrom) throws IOException
+    {
+        for(final Path path : generations(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).headMap(keepFrom).values())
+        {
+            Files.deleteIfExists(path);
+        }
+
+        for(final Path path : generations(directory, LOG_PREFIX, LOG_SUFFIX).headMap(keepFrom).values())
+        {
+            Files.deleteIfExists(path);
+        }
+
+        for(final Path path : generations(directory, DESK_PREFIX, LOG_SUFFIX).headMap(keepFrom).values())
+        {
+            Files.deleteIfExists(path);
+        }
+
+        try(final DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + LibrarySnapshot.TEMP_SUFFIX))
+        {
+            for(final Path entry : entries)
+            {
+                Files.deleteIfExists(entry);
+            }
+        }
+    }
+
+    /**
+     * Opens the log of the given generation for appending.
+     */
+    private FileChannel openLog(final long logGeneration) throws IOException
+    {
+        return FileChannel.open(directory.resolve(LOG_PREFIX + logGeneration + LOG_SUFFIX),
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Fails the journal, keeping the first cause.
+     */
+    private void fail(final IOException cause)
+    {
+        if(failure == null)
+        {
+            failure = cause;
+        }
+    }
+
+    /**
+     * Runs a background commit on the commit thread, keeping any failure for
+     * the next change to report.
+     */
+    private void commitQuietly()
+    {
+        try
+        {
+            sync();
+        }
+        catch(final IOException e)
+        {
+            // sync() has failed the journal; the next change reports it
+        }
+    }
+
+    /**
+     * @throws IOException if the journal is closed or a commit failed
+     */
+    private void validateOpen() throws IOException
+    {
+        if(closed)
+        {
+            throw new IOException("Journal is closed.");
+        }
+
+        validateNotFailed();
+    }
+
+    /**
+     * @throws IOException if a commit failed
+     */
+    private void validateNotFailed() throws IOException
+    {
+        if(failure != null)
+        {
+            throw new IOException("An earlier commit failed.", failure);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if directory is null
+     */
+    private static void validateDirectory(final Path directory)
+    {
+        if(directory == null)
+        {
+            throw new IllegalArgumentException("Directory must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if syncMode is null
+     */
+    private static void validateSyncMode(final SyncMode syncMode)
+    {
+        if(syncMode == null)
+        {
+            throw new IllegalArgumentException("Sync mode must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if commitInterval is null or not positive
+     */
+    private static void validateCommitInterval(final Duration commitInterval)
+    {
+        if(commitInterval == null || commitInterval.isNegative() || commitInterval.isZero())
+        {
+            throw new IllegalArgumentException("Commit interval must be positive.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if checkpointInterval is negative
+     */
+    private static void validateCheckpointInterval(final int checkpointInterval)
+    {
+        if(checkpointInterval < 0)
+        {
+            throw new IllegalArgumentException("Checkpoint interval must not be negative.");
+        }
+    }
+}
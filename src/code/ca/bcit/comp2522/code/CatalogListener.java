@@ -0,0 +1,47 @@
+package ca.bcit.comp2522.code;
+
+import java.util.List;
+
+/**
+ * Receives every change made to a {@link Library} catalog through
+ * {@link Library#addBook(Book)}, {@link Library#addAll(java.util.Collection)}
+ * and {@link Library#removeBook(Book)}.
+ * Listeners are called on the thread that changed the library, after its
+ * indexes are updated, so they should return quickly. Changes made directly
+ * through {@link Library#getCatalog()} are not reported.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public interface CatalogListener
+{
+    /**
+     * Called once for each book added to the catalog.
+     *
+     * @param book the book that was added
+     */
+    void bookAdded(Book book);
+
+    /**
+     * Called once for a batch of books added together, as by
+     * {@link Library#addAll(java.util.Collection)}. Calls
+     * {@link #bookAdded(Book)} for each book unless overridden to handle the
+     * batch at once.
+     *
+     * @param books the books that were added, in catalog order
+     */
+    default void booksAdded(final List<Book> books)
+    {
+        for(final Book book : books)
+        {
+            bookAdded(book);
+        }
+    }
+
+    /**
+     * Called once for each book removed from the catalog.
+     *
+     * @param book the book that was removed
+     */
+    void bookRemoved(Book book);
+}
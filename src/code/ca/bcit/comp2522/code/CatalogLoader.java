@@ -0,0 +1,881 @@
+package ca.bcit.comp2522.code;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streams books out of large catalog dumps without reading the whole file
+ * into memory.
+ * The file is read through a {@link FileChannel} into one reusable buffer and
+ * split into lines in place. Numbers and genres are decoded straight from the
+ * bytes, so the only allocation per row is the title {@link String} and the
+ * {@link Book} itself; the genre is always one of the shared
+ * {@link Book#GENRE_FICTION}-style constants. Every row goes through the
+ * {@link Book} constructor and therefore through its title and genre
+ * validation. Parsed books are handed over in batches of a configurable size,
+ * so memory stays bounded by the buffer plus one batch.
+ * A loader keeps per-row parse state and is not thread-safe.
+ * <p>
+ * Two formats are supported, one record per line:
+ * <ul>
+ *     <li>{@link Format#CSV}: {@code title,genre,yearPublished,pageCount},
+ *         with the title optionally double-quoted ({@code ""} escapes a quote)
+ *         and an optional header row whose first field is {@code title}; as
+ *         in RFC 4180, a quoted title may hold line breaks, so its record
+ *         spans several lines, as {@link CatalogExporter} writes them</li>
+ *     <li>{@link Format#JSON_LINES}: one flat object per line with the keys
+ *         {@code title}, {@code genre}, {@code yearPublished} and
+ *         {@code pageCount}</li>
+ * </ul>
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class CatalogLoader
+{
+    /** Number of books per batch used by the single-argument constructor. */
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    /** Size of the read buffer; it only grows for a line longer than this. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Initial size of the buffer used to unescape quoted CSV titles. */
+    private static final int SCRATCH_SIZE = 256;
+
+    /** Factor by which the read buffer grows to fit an oversized line. */
+    private static final int GROWTH_FACTOR = 2;
+
+    /** Number of fields in a CSV row. */
+    private static final int CSV_FIELD_COUNT = 4;
+
+    /** Number of hex digits in a JSON {@code \\u} escape. */
+    private static final int UNICODE_ESCAPE_DIGITS = 4;
+
+    /** Radix of a JSON {@code \\u} escape. */
+    private static final int HEX_RADIX = 16;
+
+    /** Radix of the decimal year and page count fields. */
+    private static final int DECIMAL_RADIX = 10;
+
+    private static final byte NEWLINE         = '\n';
+    private static final byte SPACE           = ' ';
+    private static final byte TAB             = '\t';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte COMMA           = ',';
+    private static final byte QUOTE           = '"';
+    private static final byte BACKSLASH       = '\\';
+    private static final byte COLON           = ':';
+    private static final byte OPEN_BRACE      = '{';
+    private static final byte CLOSE_BRACE     = '}';
+    private static final byte MINUS           = '-';
+
+    private static final byte[] CSV_HEADER_FIELD  = bytes("title");
+    private static final byte[] FICTION_BYTES     = bytes(Book.GENRE_FICTION);
+    private static final byte[] NONFICTION_BYTES  = bytes(Book.GENRE_NONFICTION);
+    private static final byte[] REFERENCE_BYTES   = bytes(Book.GENRE_REFERENCE);
+    private static final byte[] TITLE_KEY         = bytes("title");
+    private static final byte[] GENRE_KEY         = bytes("genre");
+    private static final byte[] YEAR_KEY          = bytes("yearPublished");
+    private static final byte[] PAGES_KEY         = bytes("pageCount");
+
+    /**
+     * The layout of each line in the input file.
+     */
+    public enum Format
+    {
+        /** Comma-separated {@code title,genre,yearPublished,pageCount}. */
+        CSV,
+
+        /** One flat JSON object per line. */
+        JSON_LINES
+    }
+
+    private final Format    format;
+    private final int       batchSize;
+    private final TitlePool titlePool;
+
+    // Per-row parse state, reset at the start of every line
+    private byte[] line;
+    private int    cursor;
+    private int    end;
+    private long   lineNumber;
+    private byte[] scratch;
+
+    /**
+     * Constructs a CatalogLoader with the default batch size.
+     *
+     * @param format the layout of the input file
+     */
+    public CatalogLoader(final Format format)
+    {
+        this(format, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a CatalogLoader.
+     *
+     * @param format    the layout of the input file
+     * @param batchSize the number of books handed over at a time
+     */
+    public CatalogLoader(final Format format,
+                         final int    batchSize)
+    {
+        this(format, batchSize, null);
+    }
+
+    /**
+     * Constructs a CatalogLoader that passes every title through a pool, so
+     * repeated titles across rows share one String.
+     *
+     * @param format    the layout of the input file
+     * @param batchSize the number of books handed over at a time
+     * @param titlePool the pool to deduplicate titles with, or null for none
+     */
+    public CatalogLoader(final Format    format,
+                         final int       batchSize,
+                         final TitlePool titlePool)
+    {
+        validateFormat(format);
+        validateBatchSize(batchSize);
+
+        this.format = format;
+        this.batchSize = batchSize;
+        this.titlePool = titlePool;
+        this.scratch = new byte[SCRATCH_SIZE];
+    }
+
+    /**
+     * Streams every book in the file into the given library.
+     *
+     * @param path    the catalog dump to read
+     * @param library the library to add the books to
+     * @return the number of books added
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a row is malformed or fails Book validation
+     */
+    public long load(final Path    path,
+                     final Library library) throws IOException
+    {
+        validateLibrary(library);
+
+        return load(path, library::addAll);
+    }
+
+    /**
+     * Streams every book in the file to the given consumer, one batch at a time.
+     * The batch list is reused after the consumer returns, so the consumer
+     * must copy anything it wants to keep.
+     *
+     * @param path     the catalog dump to read
+     * @param consumer receives each batch of parsed books
+     * @return the number of books parsed
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a row is malformed or fails Book validation
+     */
+    public long load(final Path                 path,
+                     final Consumer<List<Book>> consumer) throws IOException
+    {
+        validatePath(path);
+        validateConsumer(consumer);
+
+        final List<Book> batch;
+        long             loaded;
+
+        batch = new ArrayList<>(batchSize);
+        loaded = 0;
+        lineNumber = 0;
+
+        // CSV quoting state at the scan position, kept across buffer refills
+        boolean recordBlank;
+        boolean inQuotes;
+        boolean closedQuote;
+
+        recordBlank = true;
+        inQuotes = false;
+        closedQuote = false;
+
+        try(final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer buffer;
+            int        scanFrom;
+
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            scanFrom = 0;
+
+            while(true)
+            {
+                final int    read;
+                final byte[] bytes;
+                final int    limit;
+                int          lineStart;
+
+                read = channel.read(buffer);
+                buffer.flip();
+
+                bytes = buffer.array();
+                limit = buffer.limit();
+                lineStart = 0;
+
+                for(int i = scanFrom; i < limit; i++)
+                {
+                    final byte b;
+                    b = bytes[i];
+
+                    if(format == Format.CSV)
+                    {
+                        // A quote opens a title only at the start of a record; "" inside reopens it
+                        if(b == QUOTE && (inQuotes || recordBlank || closedQuote))
+                        {
+                            closedQuote = inQuotes;
+                            inQuotes = !inQuotes;
+                        }
+                        else
+                        {
+                            closedQuote = false;
+                        }
+
+                        if(inQuotes)
+                        {
+                            recordBlank = false;
+                            continue;
+                        }
+
+                        recordBlank = recordBlank && (b == SPACE || b == TAB);
+                    }
+
+                    if(b == NEWLINE)
+                    {
+                        loaded += parseLine(bytes, lineStart, i, batch, consumer);
+                        lineStart = i + 1;
+                        recordBlank = true;
+                    }
+                }
+
+                if(read < 0)
+                {
+                    if(lineStart < limit)
+                    {
+                        loaded += parseLine(bytes, lineStart, limit, batch, consumer);
+                    }
+
+                    break;
+                }
+
+                buffer.position(lineStart);
+                buffer.compact();
+                scanFrom = buffer.position();
+
+                if(!buffer.hasRemaining())
+                {
+                    final ByteBuffer larger;
+                    larger = ByteBuffer.allocate(buffer.capacity() * GROWTH_FACTOR);
+
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+        }
+
+        if(!batch.isEmpty())
+        {
+            consumer.accept(batch);
+            batch.clear();
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Parses one line and flushes the batch when it is full.
+     *
+     * @return 1 if the line held a book, 0 if it was blank or a header
+     */
+    private int parseLine(final byte[]               bytes,
+                          final int                  from,
+                          final int                  to,
+                          final List<Book>           batch,
+                          final Consumer<List<Book>> consumer)
+    {
+        lineNumber++;
+        line = bytes;
+        cursor = from;
+        end = to;
+
+        if(end > cursor && line[end - 1] == CARRIAGE_RETURN)
+        {
+            end--;
+        }
+
+        skipWhitespace();
+
+        if(cursor == end || (format == Format.CSV && lineNumber == 1 && isCsvHeader()))
+        {
+            return 0;
+        }
+
+        final Book book;
+
+        try
+        {
+            book = format == Format.CSV ? parseCsv() : parseJson();
+        }
+        catch(final IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+        }
+
+        batch.add(book);
+
+        if(batch.size() == batchSize)
+        {
+            consumer.accept(batch);
+            batch.clear();
+        }
+
+        return 1;
+    }
+
+    private Book parseCsv()
+    {
+        final String title;
+        final String genre;
+        final int    year;
+        final int    pages;
+
+        title = parseCsvTitle();
+        expect(COMMA, "Expected " + CSV_FIELD_COUNT + " comma-separated fields.");
+        genre = parseGenre(cursor, indexOf(COMMA));
+        expect(COMMA, "Expected " + CSV_FIELD_COUNT + " comma-separated fields.");
+        year = parseInt(indexOf(COMMA));
+        expect(COMMA, "Expected " + CSV_FIELD_COUNT + " comma-separated fields.");
+        pages = parseInt(end);
+
+        return new Book(canonical(title), genre, year, pages);
+    }
+
+    private String parseCsvTitle()
+    {
+        if(cursor < end && line[cursor] == QUOTE)
+        {
+            int length;
+            int lineBreaks;
+            length = 0;
+            lineBreaks = 0;
+            cursor++;
+
+            if(scratch.length < end - cursor)
+            {
+                scratch = new byte[end - cursor];
+            }
+
+            while(true)
+            {
+                if(cursor == end)
+                {
+                    throw new IllegalArgumentException("Unterminated quoted title.");
+                }
+
+                if(line[cursor] == QUOTE)
+                {
+                    if(cursor + 1 < end && line[cursor + 1] == QUOTE)
+                    {
+                        scratch[length++] = QUOTE;
+                        cursor += 2;
+                        continue;
+                    }
+
+                    // Later errors in the record are on its last line
+                    cursor++;
+                    lineNumber += lineBreaks;
+                    return new String(scratch, 0, length, StandardCharsets.UTF_8);
+                }
+
+                if(line[cursor] == NEWLINE)
+                {
+                    lineBreaks++;
+                }
+
+                scratch[length++] = line[cursor++];
+            }
+        }
+
+        final int start;
+        start = cursor;
+        cursor = indexOf(COMMA);
+
+        return new String(line, start, cursor - start, StandardCharsets.UTF_8);
+    }
+
+    private Book parseJson()
+    {
+        String  title;
+        String  genre;
+        int     year;
+        int     pages;
+        boolean hasYear;
+        boolean hasPages;
+
+        title = null;
+        genre = null;
+        year = 0;
+        pages = 0;
+        hasYear = false;
+        hasPages = false;
+
+        expect(OPEN_BRACE, "Expected '{'.");
+        skipWhitespace();
+
+        if(cursor < end && line[cursor] == CLOSE_BRACE)
+        {
+            throw new IllegalArgumentException("Empty JSON object.");
+        }
+
+        while(true)
+        {
+            final int keyStart;
+            final int keyEnd;
+
+            skipWhitespace();
+            expect(QUOTE, "Expected a quoted key.");
+            keyStart = cursor;
+            keyEnd = indexOf(QUOTE);
+            cursor = keyEnd + 1;
+            skipWhitespace();
+            expect(COLON, "Expected ':' after key.");
+            skipWhitespace();
+
+            if(matches(keyStart, keyEnd, TITLE_KEY))
+            {
+                title = parseJsonString();
+            }
+            else if(matches(keyStart, keyEnd, GENRE_KEY))
+            {
+                final int genreStart;
+                final int genreEnd;
+
+                expect(QUOTE, "Expected a quoted genre.");
+                genreStart = cursor;
+                genreEnd = indexOf(QUOTE);
+                genre = parseGenre(genreStart, genreEnd);
+                cursor = genreEnd + 1;
+            }
+            else if(matches(keyStart, keyEnd, YEAR_KEY))
+            {
+                year = parseInt(jsonValueEnd());
+                hasYear = true;
+            }
+            else if(matches(keyStart, keyEnd, PAGES_KEY))
+            {
+                pages = parseInt(jsonValueEnd());
+                hasPages = true;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown key \"" +
+                        new String(line, keyStart, keyEnd - keyStart, StandardCharsets.UTF_8) + "\".");
+            }
+
+            skipWhitespace();
+
+            if(cursor < end && line[cursor] == COMMA)
+            {
+                cursor++;
+                continue;
+            }
+
+            expect(CLOSE_BRACE, "Expected ',' or '}'.");
+            break;
+        }
+
+        if(!hasYear || !hasPages)
+        {
+            throw new IllegalArgumentException("Missing yearPublished or pageCount.");
+        }
+
+        return new Book(canonical(title), genre, year, pages);
+    }
+
+    /**
+     * Returns the pooled copy of a title when a pool is configured.
+     */
+    private String canonical(final String title)
+    {
+        if(titlePool == null || title == null)
+        {
+            return title;
+        }
+
+        return titlePool.intern(title);
+    }
+
+    /**
+     * Decodes a JSON string value starting at its opening quote.
+     * Values without escapes are decoded straight from the line bytes.
+     */
+    private String parseJsonString()
+    {
+        expect(QUOTE, "Expected a quoted string.");
+
+        final int     start;
+        StringBuilder decoded;
+        int           segmentStart;
+
+        start = cursor;
+        decoded = null;
+        segmentStart = start;
+
+        while(true)
+        {
+            if(cursor >= end)
+            {
+                throw new IllegalArgumentException("Unterminated string.");
+            }
+
+            final byte current;
+            current = line[cursor];
+
+            if(current == QUOTE)
+            {
+                final String tail;
+                tail = new String(line, segmentStart, cursor - segmentStart, StandardCharsets.UTF_8);
+                cursor++;
+
+                return decoded == null ? tail : decoded.append(tail).toString();
+            }
+
+            if(current == BACKSLASH)
+            {
+                if(decoded == null)
+                {
+                    decoded = new StringBuilder();
+                }
+
+                decoded.append(new String(line, segmentStart, cursor - segmentStart, StandardCharsets.UTF_8));
+                cursor++;
+                appendEscape(decoded);
+                segmentStart = cursor;
+                continue;
+            }
+
+            cursor++;
+        }
+    }
+
+    /**
+     * Appends the character for the escape sequence at the cursor.
+     */
+    private void appendEscape(final StringBuilder decoded)
+    {
+        if(cursor >= end)
+        {
+            throw new IllegalArgumentException("Unterminated escape sequence.");
+        }
+
+        final byte escape;
+        escape = line[cursor++];
+
+        switch(escape)
+        {
+            case '"', '\\', '/' -> decoded.append((char) escape);
+            case 'b' -> decoded.append('\b');
+            case 'f' -> decoded.append('\f');
+            case 'n' -> decoded.append('\n');
+            case 'r' -> decoded.append('\r');
+            case 't' -> decoded.append('\t');
+            case 'u' ->
+            {
+                if(cursor + UNICODE_ESCAPE_DIGITS > end)
+                {
+                    throw new IllegalArgumentException("Truncated unicode escape.");
+                }
+
+                int codeUnit;
+                codeUnit = 0;
+
+                for(int i = 0; i < UNICODE_ESCAPE_DIGITS; i++)
+                {
+                    final int digit;
+                    digit = Character.digit(line[cursor++], HEX_RADIX);
+
+                    if(digit < 0)
+                    {
+                        throw new IllegalArgumentException("Invalid unicode escape.");
+                    }
+
+                    codeUnit = codeUnit * HEX_RADIX + digit;
+                }
+
+                decoded.append((char) codeUnit);
+            }
+            default -> throw new IllegalArgumentException("Invalid escape sequence.");
+        }
+    }
+
+    /**
+     * Returns the index just past a bare JSON number value at the cursor.
+     */
+    private int jsonValueEnd()
+    {
+        int index;
+        index = cursor;
+
+        while(index < end && line[index] != COMMA && line[index] != CLOSE_BRACE)
+        {
+            index++;
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the shared genre constant spelled by the bytes in the range.
+     * An unrecognised genre is decoded so the Book constructor rejects it
+     * with its usual message.
+     */
+    private String parseGenre(final int from,
+                              final int to)
+    {
+        final int start;
+        final int stop;
+
+        start = trimStart(from, to);
+        stop = trimEnd(start, to);
+        cursor = to;
+
+        if(matches(start, stop, FICTION_BYTES))
+        {
+            return Book.GENRE_FICTION;
+        }
+
+        if(matches(start, stop, NONFICTION_BYTES))
+        {
+            return Book.GENRE_NONFICTION;
+        }
+
+        if(matches(start, stop, REFERENCE_BYTES))
+        {
+            return Book.GENRE_REFERENCE;
+        }
+
+        return new String(line, start, stop - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a decimal int from the cursor up to the given index.
+     */
+    private int parseInt(final int to)
+    {
+        final int     start;
+        final int     stop;
+        final boolean negative;
+        long          value;
+        int           index;
+
+        start = trimStart(cursor, to);
+        stop = trimEnd(start, to);
+        cursor = to;
+
+        negative = start < stop && line[start] == MINUS;
+        index = negative ? start + 1 : start;
+        value = 0;
+
+        if(index == stop)
+        {
+            throw new IllegalArgumentException("Expected a number.");
+        }
+
+        for(; index < stop; index++)
+        {
+            final int digit;
+            digit = line[index] - '0';
+
+            if(digit < 0 || digit >= DECIMAL_RADIX)
+            {
+                throw new IllegalArgumentException("Invalid number \"" +
+                        new String(line, start, stop - start, StandardCharsets.UTF_8) + "\".");
+            }
+
+            value = value * DECIMAL_RADIX + digit;
+
+            if(value > Integer.MAX_VALUE + 1L)
+            {
+                throw new IllegalArgumentException("Number out of range.");
+            }
+        }
+
+        value = negative ? -value : value;
+
+        if(value > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Number out of range.");
+        }
+
+        return (int) value;
+    }
+
+    private boolean isCsvHeader()
+    {
+        if(end - cursor <= CSV_HEADER_FIELD.length || line[cursor + CSV_HEADER_FIELD.length] != COMMA)
+        {
+            return false;
+        }
+
+        for(int i = 0; i < CSV_HEADER_FIELD.length; i++)
+        {
+            if(Character.toLowerCase(line[cursor + i]) != CSV_HEADER_FIELD[i])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean matches(final int    from,
+                            final int    to,
+                            final byte[] expected)
+    {
+        if(to - from != expected.length)
+        {
+            return false;
+        }
+
+        for(int i = 0; i < expected.length; i++)
+        {
+            if(line[from + i] != expected[i])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the index of the next occurrence of the byte, or the line end.
+     */
+    private int indexOf(final byte target)
+    {
+        int index;
+        index = cursor;
+
+        while(index < end && line[index] != target)
+        {
+            index++;
+        }
+
+        return index;
+    }
+
+    private void expect(final byte   expected,
+                        final String message)
+    {
+        if(cursor >= end || line[cursor] != expected)
+        {
+            throw new IllegalArgumentException(message);
+        }
+
+        cursor++;
+    }
+
+    private void skipWhitespace()
+    {
+        cursor = trimStart(cursor, end);
+    }
+
+    private int trimStart(final int from,
+                          final int to)
+    {
+        int index;
+        index = from;
+
+        while(index < to && line[index] <= ' ' && line[index] >= 0)
+        {
+            index++;
+        }
+
+        return index;
+    }
+
+    private int trimEnd(final int from,
+                        final int to)
+    {
+        int index;
+        index = to;
+
+        while(index > from && line[index - 1] <= ' ' && line[index - 1] >= 0)
+        {
+            index--;
+        }
+
+        return index;
+    }
+
+    private static byte[] bytes(final String text)
+    {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @throws IllegalArgumentException if format is null
+     */
+    private static void validateFormat(final Format format)
+    {
+        if(format == null)
+        {
+            throw new IllegalArgumentException("Format must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if batchSize is not positive
+     */
+    private static void validateBatchSize(final int batchSize)
+    {
+        if(batchSize <= 0)
+        {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if path is null
+     */
+    private static void validatePath(final Path path)
+    {
+        if(path == null)
+        {
+            throw new IllegalArgumentException("Path must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if consumer is null
+     */
+    private static void validateConsumer(final Consumer<List<Book>> consumer)
+    {
+        if(consumer == null)
+        {
+            throw new IllegalArgumentException("Batch consumer must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if library is null
+     */
+    private static void validateLibrary(final Library library)
+    {
+        if(library == null)
+        {
+            throw new IllegalArgumentException("Library must not be null.");
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package ca.bcit.comp2522.code;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A lazy query over a {@link Library} catalog, created by {@link Library#query()}.
+ * Stages only record what to do; a terminal operation then runs the whole
+ * query in one pass:
+ * <ul>
+ *     <li>a title, genre or year-range condition is pushed down to the
+ *         matching {@link Library} index, choosing the smallest candidate
+ *         set, so only those books are visited;</li>
+ *     <li>every other condition is checked on each candidate in the same
+ *         loop, without intermediate lists;</li>
+ *     <li>without a sort, the loop stops as soon as the limit is reached;
+ *         with a sort and a limit, a bounded heap keeps only the best rows.</li>
+ * </ul>
+ * Without {@link #sortedBy(Comparator)} rows come in the order of whichever
+ * index or catalog is scanned. A query is a mutable builder and is not
+ * thread-safe; it reads the catalog when a terminal operation runs.
+ *
+ * <pre>
+ *   library.query()
+ *          .genre(Genre.FICTION)
+ *          .publishedBetween(1951, Integer.MAX_VALUE)
+ *          .where(book -&gt; book.getPageCount() &gt; 300)
+ *          .sortedBy(Book.BY_YEAR_PUBLISHED)
+ *          .limit(20)
+ *          .toList();
+ * </pre>
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class CatalogQuery
+{
+    /** Limit meaning "every matching book". */
+    private static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    private final Library                       library;
+    private final List<Predicate<? super Book>> filters;
+
+    private String                   title;
+    private Genre                    genre;
+    private int                      fromYear;
+    private int                      toYear;
+    private boolean                  hasYearRange;
+    private Comparator<? super Book> order;
+    private int                      limit;
+
+    /**
+     * Constructs a query over the given library's catalog.
+     *
+     * @param library the library to query
+     */
+    CatalogQuery(final Library library)
+    {
+        this.library = library;
+        this.filters = new ArrayList<>();
+        this.limit = NO_LIMIT;
+    }
+
+    /**
+     * Keeps only books with exactly the given title; answered from the title index.
+     *
+     * @param title the title to match
+     * @return this query
+     */
+    public CatalogQuery titled(final String title)
+    {
+        validateNotNull(title, "Title");
+
+        if(this.title != null && !this.title.equals(title))
+        {
+            filters.add(book -> false);
+        }
+
+        this.title = title;
+        return this;
+    }
+
+    /**
+     * Keeps only books of the given genre; answered from the genre index.
+     *
+     * @param genre the genre to match
+     * @return this query
+     */
+    public CatalogQuery genre(final Genre genre)
+    {
+        validateNotNull(genre, "Genre");
+
+        if(this.genre != null && this.genre != genre)
+        {
+            filters.add(book -> false);
+        }
+
+        this.genre = genre;
+        return this;
+    }
+
+    /**
+     * Keeps only books published in the given range; answered from the year index.
+     * Calling this again narrows the range.
+     *
+     * @param from the earliest year, inclusive
+     * @param to   the latest year, inclusive
+     * @return this query
+     */
+    public CatalogQuery publishedBetween(final int from,
+                                         final int to)
+    {
+        if(from > to)
+        {
+            throw new IllegalArgumentException("Start year must not be after end year.");
+        }
+
+        if(hasYearRange)
+        {
+            fromYear = Math.max(fromYear, from);
+            toYear = Math.min(toYear, to);
+        }
+        else
+        {
+            fromYear = from;
+            toYear = to;
+            hasYearRange = true;
+        }
+
+        return this;
+    }
+
+    /**
+     * Keeps only books matching the given condition.
+     *
+     * @param filter the condition to test on each candidate
+     * @return this query
+     */
+    public CatalogQuery where(final Predicate<? super Book> filter)
+    {
+        validateNotNull(filter, "Filter");
+
+        filters.add(filter);
+        return this;
+    }
+
+    /**
+     * Orders the results by the given comparator.
+     *
+     * @param comparator the result order
+     * @return this query
+     */
+    public CatalogQuery sortedBy(final Comparator<? super Book> comparator)
+    {
+        validateNotNull(comparator, "Comparator");
+
+        order = comparator;
+        return this;
+    }
+
+    /**
+     * Returns at most the given number of results.
+     *
+     * @param maxResults the largest number of books to return
+     * @return this query
+     */
+    public CatalogQuery limit(final int maxResults)
+    {
+        if(maxResults < 0)
+        {
+            throw new IllegalArgumentException("Limit must not be negative.");
+        }
+
+        limit = Math.min(limit, maxResults);
+        return this;
+    }
+
+    /**
+     * Runs the query and returns the matching books.
+     *
+     * @return the results
+     */
+    public List<Book> toList()
+    {
+        return run(limit);
+    }
+
+    /**
+     * Runs the query and converts each matching book.
+     *
+     * @param <R>    the converted type
+     * @param mapper the conversion applied to each result
+     * @return the converted results, in result order
+     */
+    public <R> List<R> map(final Function<? super Book, ? extends R> mapper)
+    {
+        validateNotNull(mapper, "Mapper");
+
+        final List<Book> books;
+        final List<R>    mapped;
+
+        books = run(limit);
+        mapped = new ArrayList<>(books.size());
+
+        for(final Book book : books)
+        {
+            mapped.add(mapper.apply(book));
+        }
+
+        return mapped;
+    }
+
+    /**
+     * Runs the query and passes each matching book to the action.
+     *
+     * @param action the operation applied to each result
+     */
+    public void forEach(final Consumer<? super Book> action)
+    {
+        validateNotNull(action, "Action");
+
+        if(order == null)
+        {
+            scan(action, limit);
+            return;
+        }
+
+        run(limit).forEach(action);
+    }
+
+    /**
+     * Runs the query and returns the first result. The query itself is
+     * unchanged, so later terminal operations still see every result.
+     *
+     * @return the first matching book, or empty if there is none
+     */
+    public Optional<Book> findFirst()
+    {
+        final List<Book> books;
+        books = run(Math.min(limit, 1));
+
+        return books.isEmpty() ? Optional.empty() : Optional.of(books.get(0));
+    }
+
+    /**
+     * Runs the query and counts the matching books, without materializing them.
+     *
+     * @return the number of results
+     */
+    public int count()
+    {
+        final int[] count;
+        count = new int[1];
+
+        scan(book -> count[0]++, limit);
+
+        return Math.min(count[0], limit);
+    }
+
+    /**
+     * Collects at most maxResults results, using a bounded heap when sorted
+     * and limited. The limit is passed in rather than read from the query
+     * so that a terminal operation can tighten it without changing the query.
+     */
+    private List<Book> run(final int maxResults)
+    {
+        if(maxResults == 0)
+        {
+            return new ArrayList<>();
+        }
+
+        if(order == null)
+        {
+            final List<Book> results;
+            results = new ArrayList<>();
+
+            scan(results::add, maxResults);
+            return results;
+        }
+
+        if(maxResults == NO_LIMIT)
+        {
+            final List<Book> results;
+            results = new ArrayList<>();
+
+            scan(results::add, maxResults);
+            results.sort(order);
+            return results;
+        }
+
+        // Max-heap on the result order: the root is the worst row kept so far
+        final PriorityQueue<Book> best;
+        final List<Book>          results;
+
+        best = new PriorityQueue<>(Collections.reverseOrder(order));
+
+        scan(book ->
+        {
+            if(best.size() < maxResults)
+            {
+                best.add(book);
+            }
+            else if(order.compare(book, best.peek()) < 0)
+            {
+                best.poll();
+                best.add(book);
+            }
+        }, maxResults);
+
+        results = new ArrayList<>(best);
+        results.sort(order);
+        return results;
+    }
+
+    /**
+     * Visits every candidate that passes all conditions, stopping early once
+     * an unsorted query has reached maxResults.
+     *
+     * @param sink       receives each match
+     * @param maxResults the limit an unsorted scan stops at
+     */
+    private void scan(final Consumer<? super Book> sink,
+                      final int                    maxResults)
+    {
+        final boolean stopAtLimit;
+        int           matched;
+
+        stopAtLimit = order == null;
+        matched = 0;
+
+        for(final List<Book> source : sources())
+        {
+            for(final Book book : source)
+            {
+                if(!matches(book))
+                {
+                    continue;
+                }
+
+                sink.accept(book);
+                matched++;
+
+                if(stopAtLimit && matched >= maxResults)
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a candidate passes every condition, including the
+     * indexed ones not used to pick the candidates.
+     */
+    private boolean matches(final Book book)
+    {
+        if(genre != null && book.getGenreType() != genre)
+        {
+            return false;
+        }
+
+        if(hasYearRange && (book.getYearPublished() < fromYear || book.getYearPublished() > toYear))
+        {
+            return false;
+        }
+
+        if(title != null && !title.equals(book.getTitle()))
+        {
+            return false;
+        }
+
+        for(final Predicate<? super Book> filter : filters)
+        {
+            if(!filter.test(book))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Picks the smallest candidate set among the applicable indexes.
+     */
+    private Collection<List<Book>> sources()
+    {
+        if(title != null)
+        {
+            return Collections.singletonList(library.booksTitled(title));
+        }
+
+        if(hasYearRange && fromYear > toYear)
+        {
+            return Collections.emptyList();
+        }
+
+        Collection<List<Book>> best;
+        long                   bestSize;
+
+        best = Collections.singletonList(library.getCatalog());
+        bestSize = library.getCatalog().size();
+
+        if(genre != null)
+        {
+            best = Collections.singletonList(library.booksOfGenre(genre));
+            bestSize = best.iterator().next().size();
+        }
+
+        if(hasYearRange)
+        {
+            final Collection<List<Book>> years;
+            long                         yearSize;
+
+            years = library.booksByYearBetween(fromYear, toYear);
+            yearSize = 0;
+
+            for(final List<Book> books : years)
+            {
+                yearSize += books.size();
+
+                if(yearSize >= bestSize)
+                {
+                    break;
+                }
+            }
+
+            if(yearSize < bestSize)
+            {
+                best = years;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * @throws IllegalArgumentException if value is null
+     */
+    private static void validateNotNull(final Object value,
+                                        final String label)
+    {
+        if(value == null)
+        {
+            throw new IllegalArgumentException(label + " must not be null.");
+        }
+    }
+}
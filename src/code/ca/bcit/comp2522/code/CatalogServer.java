@@ -0,0 +1,531 @@
+package ca.bcit.comp2522.code;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves catalog lookups, statistics and {@link Library.Librarian}
+ * recommendations for one {@link Library} over a line-based TCP protocol.
+ * <p>
+ * Each request is one UTF-8 line and each response starts with one line:
+ * <pre>
+ *   PING                        PONG
+ *   FIND title                  OK n, then n book lines (0 or 1)
+ *   RANGE from to               OK n, then n book lines ordered by year
+ *   COUNT genre                 OK count
+ *   AVERAGE [genre]             OK mean page count
+ *   RECOMMEND [limit [genre]]   OK n, then n book lines, best first
+ *   QUIT                        OK, then the connection is closed
+ *   anything invalid            ERR reason
+ * </pre>
+ * A book line is its title, genre, year and page count separated by tabs.
+ * List responses hold at most {@link #MAX_RESULTS} books.
+ * <p>
+ * Every connection is served by its own thread with blocking I/O: a virtual
+ * thread when the running JDK has them, found by reflection so the code
+ * still builds on Java 17, and otherwise a pooled platform thread. Clients
+ * may pipeline, sending many requests before reading any responses; they
+ * are answered in order, and responses are only flushed once no more
+ * requests are waiting in the input buffer, so a pipelined batch goes back
+ * in as few packets as possible. Counts and averages come from a
+ * {@link LiveLibraryStats} kept current as a listener, so no request scans
+ * the catalog. The library must not be changed while it is being served.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class CatalogServer implements AutoCloseable
+{
+    /** Most books returned in one list response. */
+    public static final int MAX_RESULTS = 1_000;
+
+    /** Recommendations returned when RECOMMEND gives no limit. */
+    private static final int DEFAULT_RECOMMENDATIONS = 5;
+
+    /** Size of each connection's read and write buffers. */
+    private static final int BUFFER_SIZE = 1 << 14;
+
+    /** Pending connections the listening socket queues. */
+    private static final int ACCEPT_BACKLOG = 1_024;
+
+    /** How long {@link #close()} waits for connections to finish. */
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    /** JDK 21+ factory for a virtual-thread-per-task executor. */
+    private static final String VIRTUAL_EXECUTOR_FACTORY = "newVirtualThreadPerTaskExecutor";
+
+    /** Separates a command from its arguments, and the arguments from each other. */
+    private static final String ARGUMENT_SEPARATOR = " ";
+
+    /** Separates the fields of a book line. */
+    private static final char FIELD_SEPARATOR = '\t';
+
+    private static final String OK   = "OK";
+    private static final String ERR  = "ERR";
+    private static final String PONG = "PONG";
+
+    private final Library           library;
+    private final LiveLibraryStats  stats;
+    private final Library.Librarian librarian;
+    private final ServerSocket      serverSocket;
+    private final ExecutorService   connections;
+    private final boolean           virtualThreads;
+    private final Set<Socket>       openSockets;
+    private final Thread            acceptor;
+    private final LongAdder         failedConnections;
+
+    /** The most recent connection failure, or null if there has been none. */
+    private volatile IOException lastFailure;
+
+    private volatile boolean closed;
+
+    private CatalogServer(final Library      library,
+                          final ServerSocket serverSocket)
+    {
+        final ExecutorService virtual;
+
+        this.library = library;
+        this.stats = new LiveLibraryStats();
+        this.librarian = library.new Librarian("Server");
+        this.serverSocket = serverSocket;
+        this.openSockets = ConcurrentHashMap.newKeySet();
+        this.failedConnections = new LongAdder();
+
+        virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.connections = virtual != null ? virtual : Executors.newCachedThreadPool(CatalogServer::newDaemonThread);
+
+        library.addListener(stats);
+
+        this.acceptor = newDaemonThread(this::acceptLoop);
+        acceptor.setName("catalog-server-accept-" + serverSocket.getLocalPort());
+    }
+
+    /**
+     * Starts serving the given library on a loopback port.
+     *
+     * @param library the library to serve
+     * @param port    the port to listen on, or 0 for any free port
+     * @return the running server
+     * @throws IOException if the port cannot be bound
+     */
+    public static CatalogServer start(final Library library,
+                                      final int     port) throws IOException
+    {
+        return start(library, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Starts serving the given library on the given address.
+     *
+     * @param library the library to serve
+     * @param address the address to listen on
+     * @return the running server
+     * @throws IOException if the address cannot be bound
+     */
+    public static CatalogServer start(final Library           library,
+                                      final InetSocketAddress address) throws IOException
+    {
+        validateLibrary(library);
+        validateAddress(address);
+
+        final ServerSocket  serverSocket;
+        final CatalogServer server;
+
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address, ACCEPT_BACKLOG);
+
+        server = new CatalogServer(library, serverSocket);
+        server.acceptor.start();
+        return server;
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the local port
+     */
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns whether connections are served on virtual threads.
+     *
+     * @return true on a JDK with virtual threads
+     */
+    public boolean usesVirtualThreads()
+    {
+        return virtualThreads;
+    }
+
+    /**
+     * Returns the number of connections dropped by an I/O error other than
+     * the client disconnecting.
+     *
+     * @return the count since the server started
+     */
+    public long getFailedConnections()
+    {
+        return failedConnections.sum();
+    }
+
+    /**
+     * Returns the error that dropped the most recent failed connection.
+     *
+     * @return the error, or null if no connection has failed
+     */
+    public IOException getLastFailure()
+    {
+        return lastFailure;
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and waits briefly
+     * for their threads to finish.
+     *
+     * @throws IOException if the listening socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if(closed)
+        {
+            return;
+        }
+
+        closed = true;
+        serverSocket.close();
+
+        for(final Socket socket : openSockets)
+        {
+            closeQuietly(socket);
+        }
+
+        connections.shutdown();
+
+        try
+        {
+            connections.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        library.removeListener(stats);
+    }
+
+    /**
+     * Accepts connections until the server is closed, handing each to its
+     * own thread.
+     */
+    private void acceptLoop()
+    {
+        while(!closed)
+        {
+            final Socket socket;
+
+            try
+            {
+                socket = serverSocket.accept();
+            }
+            catch(final IOException e)
+            {
+                // The listening socket was closed, or accept failed; stop if closed
+                continue;
+            }
+
+            openSockets.add(socket);
+
+            try
+            {
+                connections.execute(() -> serve(socket));
+            }
+            catch(final RejectedExecutionException e)
+            {
+                // The server closed between accept and hand-off
+                openSockets.remove(socket);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Answers the requests of one connection in order until the client
+     * quits or disconnects.
+     */
+    private void serve(final Socket socket)
+    {
+        try(socket)
+        {
+            final BufferedReader reader;
+            final Writer         writer;
+            String               line;
+
+            socket.setTcpNoDelay(true);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8),
+                                        BUFFER_SIZE);
+            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8),
+                                        BUFFER_SIZE);
+
+            while((line = reader.readLine()) != null)
+            {
+                final long    start;
+                final boolean open;
+
+                start = LibraryMetrics.start();
+                open = respond(line, writer);
+                LibraryMetrics.SERVER_REQUEST.stop(start);
+
+                if(!open)
+                {
+                    break;
+                }
+
+                // Hold responses back while pipelined requests are still waiting
+                if(!reader.ready())
+                {
+                    writer.flush();
+                }
+            }
+
+            writer.flush();
+        }
+        catch(final SocketException e)
+        {
+            // The client disconnected or the server closed the socket
+        }
+        catch(final IOException e)
+        {
+            if(!closed)
+            {
+                failedConnections.increment();
+                lastFailure = e;
+            }
+        }
+        finally
+        {
+            openSockets.remove(socket);
+        }
+    }
+
+    /**
+     * Writes the response to one request.
+     *
+     * @return false if the client asked to close the connection
+     */
+    private boolean respond(final String request,
+                            final Writer writer) throws IOException
+    {
+        final int    split;
+        final String command;
+        final String arguments;
+
+        split = request.indexOf(ARGUMENT_SEPARATOR);
+        command = (split < 0 ? request : request.substring(0, split)).toUpperCase(Locale.ROOT);
+        arguments = split < 0 ? "" : request.substring(split + 1).trim();
+
+        try
+        {
+            switch(command)
+            {
+                case "PING":
+                    writeLine(writer, PONG);
+                    return true;
+                case "FIND":
+                    writeBooks(writer, find(arguments));
+                    return true;
+                case "RANGE":
+                    writeBooks(writer, range(arguments));
+                    return true;
+                case "COUNT":
+                    writeLine(writer, OK + ARGUMENT_SEPARATOR + stats.countByGenre(Genre.fromLabel(arguments)));
+                    return true;
+                case "AVERAGE":
+                    writeLine(writer, OK + ARGUMENT_SEPARATOR + average(arguments));
+                    return true;
+                case "RECOMMEND":
+                    writeBooks(writer, recommend(arguments));
+                    return true;
+                case "QUIT":
+                    writeLine(writer, OK);
+                    return false;
+                default:
+                    writeLine(writer, ERR + ARGUMENT_SEPARATOR + "Unknown command: " + command);
+                    return true;
+            }
+        }
+        catch(final IllegalArgumentException e)
+        {
+            writeLine(writer, ERR + ARGUMENT_SEPARATOR + e.getMessage());
+            return true;
+        }
+    }
+
+    private List<Book> find(final String title)
+    {
+        final Optional<Book> match;
+        match = library.findByTitle(title);
+
+        return match.map(List::of).orElse(List.of());
+    }
+
+    private List<Book> range(final String arguments)
+    {
+        final String[] years;
+        years = arguments.split(ARGUMENT_SEPARATOR);
+
+        if(years.length != 2)
+        {
+            throw new IllegalArgumentException("RANGE needs a from year and a to year.");
+        }
+
+        return library.booksPublishedBetween(Integer.parseInt(years[0]), Integer.parseInt(years[1]));
+    }
+
+    private double average(final String genre)
+    {
+        return genre.isEmpty() ? stats.averagePageCount() : stats.averagePageCount(Genre.fromLabel(genre));
+    }
+
+    private List<Book> recommend(final String arguments)
+    {
+        final String[] parts;
+        final int      limit;
+
+        if(arguments.isEmpty())
+        {
+            return librarian.recommend(DEFAULT_RECOMMENDATIONS);
+        }
+
+        parts = arguments.split(ARGUMENT_SEPARATOR, 2);
+        limit = Math.min(Integer.parseInt(parts[0]), MAX_RESULTS);
+
+        if(parts.length == 1)
+        {
+            return librarian.recommend(limit);
+        }
+
+        return librarian.recommendByGenre(Genre.fromLabel(parts[1]), limit);
+    }
+
+    /**
+     * Writes a count line followed by up to {@link #MAX_RESULTS} book lines.
+     */
+    private static void writeBooks(final Writer     writer,
+                                   final List<Book> books) throws IOException
+    {
+        final int count;
+        count = Math.min(books.size(), MAX_RESULTS);
+
+        writeLine(writer, OK + ARGUMENT_SEPARATOR + count);
+
+        for(int i = 0; i < count; i++)
+        {
+            final Book book;
+            book = books.get(i);
+
+            writer.write(book.getTitle());
+            writer.write(FIELD_SEPARATOR);
+            writer.write(book.getGenre());
+            writer.write(FIELD_SEPARATOR);
+            writer.write(Integer.toString(book.getYearPublished()));
+            writer.write(FIELD_SEPARATOR);
+            writer.write(Integer.toString(book.getPageCount()));
+            writer.write('\n');
+        }
+    }
+
+    private static void writeLine(final Writer writer,
+                                  final String line) throws IOException
+    {
+        writer.write(line);
+        writer.write('\n');
+    }
+
+    /**
+     * Returns a virtual-thread-per-task executor, or null on a JDK without
+     * virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor()
+    {
+        try
+        {
+            final Method factory;
+            factory = Executors.class.getMethod(VIRTUAL_EXECUTOR_FACTORY);
+
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch(final ReflectiveOperationException e)
+        {
+            return null;
+        }
+    }
+
+    private static Thread newDaemonThread(final Runnable task)
+    {
+        final Thread thread;
+        thread = new Thread(task, "catalog-server-connection");
+
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void closeQuietly(final Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch(final IOException e)
+        {
+            // Already closed by its connection thread
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if library is null
+     */
+    private static void validateLibrary(final Library library)
+    {
+        if(library == null)
+        {
+            throw new IllegalArgumentException("Library must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if address is null
+     */
+    private static void validateAddress(final InetSocketAddress address)
+    {
+        if(address == null)
+        {
+            throw new IllegalArgumentException("Address must not be null.");
+        }
+    }
+}
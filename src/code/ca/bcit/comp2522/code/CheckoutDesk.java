@@ -0,0 +1,419 @@
+package ca.bcit.comp2522.code;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks books of a {@link Library} in and out, keeps a queue of holds per
+ * book and records every event in an append-only ledger.
+ * Each book has its own small state object that serves as its lock, so
+ * checkouts of different books never contend; the state map, sequence
+ * counter and ledger are lock-free. Availability and the current holder are
+ * volatile and read without locking. When a book with holds is returned it
+ * passes straight to the first patron in its queue, so an available book
+ * never has waiting holds. {@link CheckoutListener}s registered with
+ * {@link #addListener(CheckoutListener)} are given every receipt as it is
+ * issued, which is how {@link CatalogJournal} makes the desk durable.
+ * Books must be in the library's catalog and are matched the way the
+ * library matches them: by identity, or by value when its books are
+ * stored in an {@link OffHeapCatalog} and each one read is a new copy.
+ * Safe for concurrent use while the library itself is not being changed.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class CheckoutDesk
+{
+    private final Library                library;
+    private final Map<Object, BookState> states;
+    private final AtomicLong             sequence;
+    private final Queue<CheckoutReceipt> ledger;
+    private final List<CheckoutListener> listeners;
+
+    /** Receipts already appended to the ledger; trails the sequence while appends are in flight. */
+    private final AtomicLong             recorded;
+
+    /**
+     * Constructs a desk for the given library's books.
+     *
+     * @param library the library whose books are lent
+     */
+    CheckoutDesk(final Library library)
+    {
+        this.library = library;
+        this.states = new ConcurrentHashMap<>();
+        this.sequence = new AtomicLong();
+        this.ledger = new ConcurrentLinkedQueue<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.recorded = new AtomicLong();
+    }
+
+    /**
+     * Checks a book out to a patron if it is available.
+     *
+     * @param book   the book to check out
+     * @param patron the borrowing patron
+     * @return the checkout receipt, or empty if the book is already out
+     */
+    public Optional<CheckoutReceipt> checkout(final Book   book,
+                                              final String patron)
+    {
+        validatePatron(patron);
+
+        final BookState state;
+        state = stateOf(book);
+
+        if(state.holder != null)
+        {
+            return Optional.empty();
+        }
+
+        synchronized(state)
+        {
+            if(state.holder != null)
+            {
+                return Optional.empty();
+            }
+
+            return Optional.of(lend(state, book, patron));
+        }
+    }
+
+    /**
+     * Returns a book checked out by the given patron. If other patrons hold
+     * the book it is checked out to the first of them, with its own receipt
+     * in the ledger.
+     *
+     * @param book   the book being returned
+     * @param patron the patron returning it
+     * @return the return receipt
+     * @throws IllegalStateException if the patron does not have the book
+     */
+    public CheckoutReceipt returnBook(final Book   book,
+                                      final String patron)
+    {
+        validatePatron(patron);
+
+        final BookState state;
+        state = stateOf(book);
+
+        synchronized(state)
+        {
+            final CheckoutReceipt receipt;
+            final String          next;
+
+            if(!patron.equals(state.holder))
+            {
+                throw new IllegalStateException(patron + " does not have " + book.getTitle() + ".");
+            }
+
+            state.holder = null;
+            receipt = record(CheckoutReceipt.Action.RETURN, book, patron);
+            next = state.holds.poll();
+
+            if(next != null)
+            {
+                lend(state, book, next);
+            }
+
+            return receipt;
+        }
+    }
+
+    /**
+     * Places a hold on a book for a patron. If the book is available it is
+     * checked out to the patron immediately instead.
+     *
+     * @param book   the book to hold
+     * @param patron the patron waiting for it
+     * @return a hold receipt, or a checkout receipt if the book was available
+     * @throws IllegalStateException if the patron already has or holds the book
+     */
+    public CheckoutReceipt placeHold(final Book   book,
+                                     final String patron)
+    {
+        validatePatron(patron);
+
+        final BookState state;
+        state = stateOf(book);
+
+        synchronized(state)
+        {
+            if(state.holder == null)
+            {
+                return lend(state, book, patron);
+            }
+
+            if(patron.equals(state.holder) || state.holds.contains(patron))
+            {
+                throw new IllegalStateException(patron + " already has or holds " + book.getTitle() + ".");
+            }
+
+            state.holds.add(patron);
+            return record(CheckoutReceipt.Action.HOLD, book, patron);
+        }
+    }
+
+    /**
+     * Returns whether a book is on the shelf.
+     *
+     * @param book the book to check
+     * @return true if no patron has the book
+     */
+    public boolean isAvailable(final Book book)
+    {
+        return stateOf(book).holder == null;
+    }
+
+    /**
+     * Returns the patron who has a book.
+     *
+     * @param book the book to check
+     * @return the patron, or empty if the book is available
+     */
+    public Optional<String> holderOf(final Book book)
+    {
+        return Optional.ofNullable(stateOf(book).holder);
+    }
+
+    /**
+     * Returns the number of patrons waiting for a book.
+     *
+     * @param book the book to check
+     * @return the length of its holds queue
+     */
+    public int holdCount(final Book book)
+    {
+        final BookState state;
+        state = stateOf(book);
+
+        synchronized(state)
+        {
+            return state.holds.size();
+        }
+    }
+
+    /**
+     * Returns the ledger: every receipt issued so far, in sequence order.
+     *
+     * @return a copy of the ledger
+     */
+    public List<CheckoutReceipt> ledger()
+    {
+        final List<CheckoutReceipt> receipts;
+        receipts = new ArrayList<>(ledger);
+
+        // Appends for different books may land slightly out of sequence
+        receipts.sort(Comparator.comparingLong(CheckoutReceipt::getSequence));
+        return receipts;
+    }
+
+    /**
+     * Returns the number of receipts in the ledger. Every receipt counted
+     * is already visible to {@link #ledger()}; one being issued concurrently
+     * is counted once it has been appended.
+     *
+     * @return the ledger size
+     */
+    public long ledgerSize()
+    {
+        return recorded.get();
+    }
+
+    /**
+     * Registers a listener for receipts issued from now on.
+     *
+     * @param listener the listener to register
+     */
+    public void addListener(final CheckoutListener listener)
+    {
+        if(listener == null)
+        {
+            throw new IllegalArgumentException("Listener must not be null.");
+        }
+
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener; it receives no further receipts.
+     *
+     * @param listener the listener to unregister
+     * @return true if the listener was registered
+     */
+    public boolean removeListener(final CheckoutListener listener)
+    {
+        return listeners.remove(listener);
+    }
+
+    /**
+     * Reapplies a receipt recovered from a journal: the book's state changes
+     * as it did when the receipt was issued, the receipt joins the ledger
+     * with its original sequence number, and listeners are not told.
+     * Receipts for one book must be restored in sequence order.
+     *
+     * @param receipt the recovered receipt
+     */
+    void restore(final CheckoutReceipt receipt)
+    {
+        final BookState state;
+        state = stateOf(receipt.getBook());
+
+        synchronized(state)
+        {
+            switch(receipt.getAction())
+            {
+                case CHECKOUT:
+                    // A book passed on at a return goes to the first holder
+                    state.holds.remove(receipt.getPatron());
+                    state.holder = receipt.getPatron();
+                    break;
+                case RETURN:
+                    state.holder = null;
+                    break;
+                default:
+                    state.holds.add(receipt.getPatron());
+                    break;
+            }
+        }
+
+        ledger.add(receipt);
+        recorded.incrementAndGet();
+        sequence.accumulateAndGet(receipt.getSequence() + 1, Math::max);
+    }
+
+    /**
+     * Returns the sequence number the next receipt will get.
+     *
+     * @return the next sequence number
+     */
+    long nextSequence()
+    {
+        return sequence.get();
+    }
+
+    /**
+     * Raises the next sequence number to at least the given one, so that
+     * receipts issued after a recovery never reuse the number of one that
+     * was not restored.
+     *
+     * @param next the lowest sequence number still unused
+     */
+    void restoreSequence(final long next)
+    {
+        sequence.accumulateAndGet(next, Math::max);
+    }
+
+    /**
+     * Marks a book as out to a patron and records the checkout.
+     * The caller holds the book's lock.
+     */
+    private CheckoutReceipt lend(final BookState state,
+                                 final Book      book,
+                                 final String    patron)
+    {
+        state.holder = patron;
+        return record(CheckoutReceipt.Action.CHECKOUT, book, patron);
+    }
+
+    /**
+     * Issues a receipt, appends it to the ledger and passes it to the
+     * listeners. The caller holds the book's lock.
+     */
+    private CheckoutReceipt record(final CheckoutReceipt.Action action,
+                                   final Book                   book,
+                                   final String                 patron)
+    {
+        final CheckoutReceipt receipt;
+        receipt = new CheckoutReceipt(sequence.getAndIncrement(),
+                                      action,
+                                      library.getName(),
+                                      book,
+                                      patron,
+                                      Instant.now());
+
+        ledger.add(receipt);
+        recorded.incrementAndGet();
+
+        for(final CheckoutListener listener : listeners)
+        {
+            listener.receiptIssued(receipt);
+        }
+
+        return receipt;
+    }
+
+    /**
+     * Returns the state of a book, creating it on first use.
+     *
+     * @throws IllegalArgumentException if book is null or not in the library
+     */
+    private BookState stateOf(final Book book)
+    {
+        final BookState existing;
+        existing = book == null ? null : states.get(library.keyOf(book));
+
+        if(existing != null)
+        {
+            return existing;
+        }
+
+        validateBook(book);
+        return states.computeIfAbsent(library.keyOf(book), key -> new BookState());
+    }
+
+    /**
+     * @throws IllegalArgumentException if book is null or not in the library
+     */
+    private void validateBook(final Book book)
+    {
+        if(book == null)
+        {
+            throw new IllegalArgumentException("Book must not be null.");
+        }
+
+        if(library.contains(book))
+        {
+            return;
+        }
+
+        throw new IllegalArgumentException("Book is not in " + library.getName() + ": " + book.getTitle() + ".");
+    }
+
+    /**
+     * @throws IllegalArgumentException if patron is null or blank
+     */
+    private static void validatePatron(final String patron)
+    {
+        if(patron == null || patron.isBlank())
+        {
+            throw new IllegalArgumentException("Patron must not be null or blank.");
+        }
+    }
+
+    /**
+     * The lending state of one book, also used as that book's lock.
+     */
+    private static final class BookState
+    {
+        private final Deque<String> holds;
+
+        private volatile String holder;
+
+        private BookState()
+        {
+            holds = new ArrayDeque<>();
+        }
+    }
+}
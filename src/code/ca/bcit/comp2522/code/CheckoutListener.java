@@ -0,0 +1,21 @@
+package ca.bcit.comp2522.code;
+
+/**
+ * Receives every receipt a {@link CheckoutDesk} issues, through
+ * {@link CheckoutDesk#addListener(CheckoutListener)}.
+ * Listeners are called on the thread that made the change, while it still
+ * holds the book's lock, so receipts for one book arrive in sequence order;
+ * receipts for different books may arrive concurrently.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public interface CheckoutListener
+{
+    /**
+     * Called once for each checkout, return and hold.
+     *
+     * @param receipt the receipt just issued
+     */
+    void receiptIssued(CheckoutReceipt receipt);
+}
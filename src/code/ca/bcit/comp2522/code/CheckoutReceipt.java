@@ -0,0 +1,135 @@
+package ca.bcit.comp2522.code;
+
+import java.time.Instant;
+
+/**
+ * An immutable record of one event at a {@link CheckoutDesk}: a checkout,
+ * a return or a hold. Receipts are returned to the caller and appended to
+ * the desk's ledger. Sequence numbers are unique per desk and give the order
+ * in which events happened.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class CheckoutReceipt
+{
+    /**
+     * The kind of event a receipt records.
+     */
+    public enum Action
+    {
+        /** The patron took the book out. */
+        CHECKOUT,
+
+        /** The patron brought the book back. */
+        RETURN,
+
+        /** The patron joined the queue for a book that was out. */
+        HOLD
+    }
+
+    private final long    sequence;
+    private final Action  action;
+    private final String  libraryName;
+    private final Book    book;
+    private final String  patron;
+    private final Instant time;
+
+    /**
+     * Constructs a receipt.
+     *
+     * @param sequence    the event's position in the desk's ledger
+     * @param action      what happened
+     * @param libraryName the name of the library
+     * @param book        the book involved
+     * @param patron      the patron involved
+     * @param time        when it happened
+     */
+    CheckoutReceipt(final long    sequence,
+                    final Action  action,
+                    final String  libraryName,
+                    final Book    book,
+                    final String  patron,
+                    final Instant time)
+    {
+        this.sequence = sequence;
+        this.action = action;
+        this.libraryName = libraryName;
+        this.book = book;
+        this.patron = patron;
+        this.time = time;
+    }
+
+    /**
+     * Returns the event's sequence number; later events have larger numbers.
+     *
+     * @return the sequence number
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Returns what happened.
+     *
+     * @return the action
+     */
+    public Action getAction()
+    {
+        return action;
+    }
+
+    /**
+     * Returns the name of the library.
+     *
+     * @return the library name
+     */
+    public String getLibraryName()
+    {
+        return libraryName;
+    }
+
+    /**
+     * Returns the book involved.
+     *
+     * @return the book
+     */
+    public Book getBook()
+    {
+        return book;
+    }
+
+    /**
+     * Returns the patron involved.
+     *
+     * @return the patron
+     */
+    public String getPatron()
+    {
+        return patron;
+    }
+
+    /**
+     * Returns when the event happened.
+     *
+     * @return the event time
+     */
+    public Instant getTime()
+    {
+        return time;
+    }
+
+    /**
+     * Returns a one-line description of the receipt.
+     *
+     * @return the receipt as text
+     */
+    @Override
+    public String toString()
+    {
+        return "#" + sequence + " " + action + " " + book.getTitle() +
+                " (" + book.getYearPublished() + ") by " + patron +
+                " at " + libraryName + ", " + time;
+    }
+}
@@ -0,0 +1,349 @@
+package ca.bcit.comp2522.code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A column-oriented copy of a book catalog for analytics scans.
+ * Instead of one {@link Book} object per entry, each field is stored in its
+ * own primitive array: years and page counts as {@code int[]}, genres as
+ * one-byte {@link Genre} ordinals, and titles as codes into a dictionary of distinct titles.
+ * Scans over a single field, such as {@link Library.LibraryStats#averagePageCount(ColumnarCatalog)},
+ * then read one contiguous array instead of chasing a pointer per book.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class ColumnarCatalog
+{
+    /** Code returned by {@link #genreCode(String)} for an unknown genre. */
+    static final byte UNKNOWN_GENRE = -1;
+
+    /** Capacity used when the catalog starts empty. */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Factor by which the columns grow when full. */
+    private static final int GROWTH_FACTOR = 2;
+
+    private final Map<String, Integer> titleCodesByTitle;
+    private final List<String>         titleDictionary;
+
+    private int[]  years;
+    private int[]  pageCounts;
+    private byte[] genreCodes;
+    private int[]  titleCodes;
+    private int    size;
+
+    /**
+     * Constructs an empty ColumnarCatalog.
+     */
+    public ColumnarCatalog()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty ColumnarCatalog sized for the expected number of books.
+     *
+     * @param initialCapacity the number of books to reserve room for
+     */
+    public ColumnarCatalog(final int initialCapacity)
+    {
+        validateCapacity(initialCapacity);
+
+        titleCodesByTitle = new HashMap<>();
+        titleDictionary   = new ArrayList<>();
+        years             = new int[initialCapacity];
+        pageCounts        = new int[initialCapacity];
+        genreCodes        = new byte[initialCapacity];
+        titleCodes        = new int[initialCapacity];
+    }
+
+    /**
+     * Builds a columnar copy of the given books.
+     *
+     * @param books the books to copy
+     * @return a catalog holding the same books in the same order
+     */
+    public static ColumnarCatalog of(final List<Book> books)
+    {
+        validateBooks(books);
+
+        final ColumnarCatalog columns;
+        columns = new ColumnarCatalog(books.size());
+
+        for(final Book book : books)
+        {
+            columns.add(book);
+        }
+
+        return columns;
+    }
+
+    /**
+     * Appends a book's fields to the end of each column.
+     *
+     * @param book the book to add
+     */
+    public void add(final Book book)
+    {
+        validateBook(book);
+        append(book.getTitle(), genreCode(book.getGenreType()), book.getYearPublished(), book.getPageCount());
+    }
+
+    /**
+     * Appends one entry from already-validated field values.
+     */
+    void append(final String title,
+                final byte   genreCode,
+                final int    yearPublished,
+                final int    pageCount)
+    {
+        if(size == years.length)
+        {
+            grow();
+        }
+
+        final Integer existingCode;
+        existingCode = titleCodesByTitle.get(title);
+
+        if(existingCode == null)
+        {
+            titleCodes[size] = titleDictionary.size();
+            titleCodesByTitle.put(title, titleDictionary.size());
+            titleDictionary.add(title);
+        }
+        else
+        {
+            titleCodes[size] = existingCode;
+        }
+
+        years[size]      = yearPublished;
+        pageCounts[size] = pageCount;
+        genreCodes[size] = genreCode;
+        size++;
+    }
+
+    /**
+     * Returns the number of books in this catalog.
+     *
+     * @return the book count
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of distinct titles in the title dictionary.
+     *
+     * @return the distinct title count
+     */
+    public int distinctTitleCount()
+    {
+        return titleDictionary.size();
+    }
+
+    /**
+     * Returns the title of the book at the given position.
+     *
+     * @param index the book's position
+     * @return the title
+     */
+    public String getTitle(final int index)
+    {
+        validateIndex(index);
+        return titleDictionary.get(titleCodes[index]);
+    }
+
+    /**
+     * Returns the genre of the book at the given position.
+     *
+     * @param index the book's position
+     * @return the genre
+     */
+    public String getGenre(final int index)
+    {
+        validateIndex(index);
+        return Genre.ofOrdinal(genreCodes[index]).getLabel();
+    }
+
+    /**
+     * Returns the year published of the book at the given position.
+     *
+     * @param index the book's position
+     * @return the year published
+     */
+    public int getYearPublished(final int index)
+    {
+        validateIndex(index);
+        return years[index];
+    }
+
+    /**
+     * Returns the page count of the book at the given position.
+     *
+     * @param index the book's position
+     * @return the page count
+     */
+    public int getPageCount(final int index)
+    {
+        validateIndex(index);
+        return pageCounts[index];
+    }
+
+    /**
+     * Builds a {@link Book} from the columns at the given position.
+     *
+     * @param index the book's position
+     * @return a new Book with that entry's fields
+     */
+    public Book getBook(final int index)
+    {
+        validateIndex(index);
+
+        return new Book(titleDictionary.get(titleCodes[index]),
+                        Genre.ofOrdinal(genreCodes[index]),
+                        years[index],
+                        pageCounts[index]);
+    }
+
+    /**
+     * Builds a list of {@link Book} objects from every entry, in order.
+     *
+     * @return the books
+     */
+    public List<Book> toBooks()
+    {
+        final List<Book> books;
+        books = new ArrayList<>(size);
+
+        for(int i = 0; i < size; i++)
+        {
+            books.add(getBook(i));
+        }
+
+        return books;
+    }
+
+    /**
+     * Returns the page count column; only the first {@link #size()} entries are valid.
+     */
+    int[] pageCountColumn()
+    {
+        return pageCounts;
+    }
+
+    /**
+     * Returns the year column; only the first {@link #size()} entries are valid.
+     */
+    int[] yearColumn()
+    {
+        return years;
+    }
+
+    /**
+     * Returns the genre code column; only the first {@link #size()} entries are valid.
+     */
+    byte[] genreCodeColumn()
+    {
+        return genreCodes;
+    }
+
+    /**
+     * Returns the number of distinct genre codes.
+     */
+    static int genreCount()
+    {
+        return Genre.count();
+    }
+
+    /**
+     * Returns the genre label represented by the given code.
+     */
+    static String genreOf(final int code)
+    {
+        return Genre.ofOrdinal(code).getLabel();
+    }
+
+    /**
+     * Returns the code used for the given genre in the genre column,
+     * which is its ordinal.
+     */
+    static byte genreCode(final Genre genre)
+    {
+        return (byte) genre.ordinal();
+    }
+
+    /**
+     * Returns the code used for the given genre label in the genre column.
+     *
+     * @param genre the genre label
+     * @return its code, or {@link #UNKNOWN_GENRE} if it is not an accepted genre
+     */
+    static byte genreCode(final String genre)
+    {
+        final Genre resolved;
+        resolved = Genre.lookup(genre);
+
+        return resolved == null ? UNKNOWN_GENRE : genreCode(resolved);
+    }
+
+    private void grow()
+    {
+        final int capacity;
+        capacity = Math.max(DEFAULT_CAPACITY, size * GROWTH_FACTOR);
+
+        years      = Arrays.copyOf(years, capacity);
+        pageCounts = Arrays.copyOf(pageCounts, capacity);
+        genreCodes = Arrays.copyOf(genreCodes, capacity);
+        titleCodes = Arrays.copyOf(titleCodes, capacity);
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if index is not a valid position
+     */
+    private void validateIndex(final int index)
+    {
+        if(index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size + ".");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if initialCapacity is negative
+     */
+    private static void validateCapacity(final int initialCapacity)
+    {
+        if(initialCapacity < 0)
+        {
+            throw new IllegalArgumentException("Initial capacity must not be negative.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if books is null
+     */
+    private static void validateBooks(final List<Book> books)
+    {
+        if(books == null)
+        {
+            throw new IllegalArgumentException("Books list must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if book is null
+     */
+    private static void validateBook(final Book book)
+    {
+        if(book == null)
+        {
+            throw new IllegalArgumentException("Book must not be null.");
+        }
+    }
+}
@@ -0,0 +1,590 @@
+package ca.bcit.comp2522.code;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A thread-safe library whose readers never block.
+ * Writers are serialized on a lock and append into a shared, growable array,
+ * then publish an immutable {@link Snapshot} (array reference, size and
+ * per-genre counts) through a single volatile write. Readers take the current
+ * snapshot with one volatile read and see a consistent, point-in-time catalog
+ * for as long as they hold it, however many books are added meanwhile.
+ * Slots past a snapshot's size are only ever written by later appends, so a
+ * published snapshot never changes.
+ * <p>
+ * The title index maps each title to the position of its first book and is
+ * filled before the snapshot holding that book is published. A lookup
+ * reads the current snapshot first and ignores positions past its size, so
+ * {@link #findByTitle(String)} finds a book exactly when the catalog it is
+ * checked against contains it. Every operation therefore takes effect at
+ * one volatile read or write, and the library is linearizable;
+ * {@code CatalogStressTest} checks this under concurrent writers.
+ * <p>
+ * A {@link Recommender} ranks the books of a published snapshot without
+ * taking the write lock, so recommendations run alongside ingest.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class ConcurrentLibrary
+{
+    /** Capacity of the backing array when the library starts empty. */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Factor by which the backing array grows when full. */
+    private static final int GROWTH_FACTOR = 2;
+
+    private final String               name;
+    private final Object               writeLock;
+    private final Map<String, Integer> titleIndex;
+
+    private volatile Snapshot current;
+
+    /**
+     * Constructs a ConcurrentLibrary with the given name and initial books.
+     *
+     * @param name         the library's name
+     * @param initialBooks the starting catalog
+     */
+    public ConcurrentLibrary(final String     name,
+                             final List<Book> initialBooks)
+    {
+        validateName(name);
+        validateInitialBooks(initialBooks);
+
+        this.name = name;
+        this.writeLock = new Object();
+        this.titleIndex = new ConcurrentHashMap<>();
+        this.current = new Snapshot(new Book[Math.max(DEFAULT_CAPACITY, initialBooks.size())],
+                                    0,
+                                    new int[ColumnarCatalog.genreCount()]);
+
+        for(final Book book : initialBooks)
+        {
+            addBook(book);
+        }
+    }
+
+    /**
+     * Adds a book to the catalog and publishes a new snapshot containing it.
+     * Concurrent writers are serialized; readers are never blocked.
+     *
+     * @param book the book to add
+     */
+    public void addBook(final Book book)
+    {
+        validateBook(book);
+
+        synchronized(writeLock)
+        {
+            final Snapshot previous;
+            final Book[]   books;
+            final int[]    genreCounts;
+
+            previous = current;
+
+            if(previous.size == previous.books.length)
+            {
+                books = Arrays.copyOf(previous.books, previous.size * GROWTH_FACTOR);
+            }
+            else
+            {
+                books = previous.books;
+            }
+
+            genreCounts = previous.genreCounts.clone();
+            genreCounts[ColumnarCatalog.genreCode(book.getGenreType())]++;
+
+            books[previous.size] = book;
+
+            // Indexed before publishing, so no reader sees the book unindexed
+            titleIndex.putIfAbsent(book.getTitle(), previous.size);
+
+            // The volatile write publishes the slot above to every later reader
+            current = new Snapshot(books, previous.size + 1, genreCounts);
+        }
+    }
+
+    /**
+     * Adds a batch of books and publishes one snapshot containing all of them,
+     * taking the write lock once and growing the backing array at most once.
+     * Null rows are reported in the result rather than thrown.
+     *
+     * @param books the books to add
+     * @return how many books were added and which rows were rejected
+     */
+    public BatchResult addAll(final Collection<? extends Book> books)
+    {
+        validateBatch(books);
+
+        final List<Book>                  accepted;
+        final List<BatchResult.Rejection> rejections;
+
+        accepted = new ArrayList<>(books.size());
+        rejections = BatchResult.screen(books, accepted, "Book");
+
+        synchronized(writeLock)
+        {
+            final Snapshot previous;
+            final int      size;
+            final Book[]   grown;
+            final int[]    genreCounts;
+
+            previous = current;
+            size = previous.size + accepted.size();
+
+            if(size > previous.books.length)
+            {
+                grown = Arrays.copyOf(previous.books, Math.max(size, previous.books.length * GROWTH_FACTOR));
+            }
+            else
+            {
+                grown = previous.books;
+            }
+
+            genreCounts = previous.genreCounts.clone();
+
+            for(int i = 0; i < accepted.size(); i++)
+            {
+                final Book book;
+                book = accepted.get(i);
+
+                grown[previous.size + i] = book;
+                genreCounts[ColumnarCatalog.genreCode(book.getGenreType())]++;
+                titleIndex.putIfAbsent(book.getTitle(), previous.size + i);
+            }
+
+            // The volatile write publishes every slot above to later readers
+            current = new Snapshot(grown, size, genreCounts);
+        }
+
+        return new BatchResult(accepted.size(), rejections);
+    }
+
+    /**
+     * Returns the library's name.
+     *
+     * @return the name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns an immutable, point-in-time view of the catalog.
+     * The view is unaffected by books added after this call.
+     *
+     * @return the current catalog snapshot
+     */
+    public List<Book> getCatalog()
+    {
+        return current;
+    }
+
+    /**
+     * Returns the number of books currently in the catalog.
+     *
+     * @return the book count
+     */
+    public int size()
+    {
+        return current.size;
+    }
+
+    /**
+     * Returns the number of books of the given genre in constant time.
+     *
+     * @param genre the genre to count
+     * @return count of matching books
+     */
+    public int countByGenre(final String genre)
+    {
+        final byte code;
+        code = ColumnarCatalog.genreCode(genre);
+
+        if(code == ColumnarCatalog.UNKNOWN_GENRE)
+        {
+            return 0;
+        }
+
+        return current.genreCounts[code];
+    }
+
+    /**
+     * Returns the first book added with exactly the given title.
+     * A title becomes findable at the same moment its book appears in the
+     * catalog.
+     *
+     * @param title the title to look up
+     * @return the matching book, or empty if none has that title
+     */
+    public Optional<Book> findByTitle(final String title)
+    {
+        final Snapshot snapshot;
+        final Integer  position;
+
+        // Read the snapshot first: any position indexed for a book it holds is already visible
+        snapshot = current;
+        position = titleIndex.get(title);
+
+        if(position == null || position >= snapshot.size)
+        {
+            return Optional.empty();
+        }
+
+        return Optional.of(snapshot.books[position]);
+    }
+
+    /**
+     * Recommends books from the enclosing {@link ConcurrentLibrary}.
+     * Non-static - holds an implicit reference to the outer instance.
+     * Each call reads the current snapshot and answers from a ranking of
+     * exactly the books in it, or in a later published snapshot, so a
+     * recommendation never blocks writers and never sees a partial write.
+     * Rankings are immutable and shared by every caller. Because each
+     * snapshot extends the previous one, a stale ranking is brought up to
+     * date by sorting only the books added since and merging them in, and
+     * readers that race to do so each publish a ranking that is at least as
+     * new as the last. Books with equal scores stay in catalog order, as
+     * with {@link Library.Librarian}.
+     */
+    public final class Recommender
+    {
+        private final Comparator<Book>         byScore;
+        private final AtomicReference<Ranking> ranking;
+
+        /**
+         * Constructs a Recommender that favours the most recently published books.
+         */
+        public Recommender()
+        {
+            this(Book::getYearPublished);
+        }
+
+        /**
+         * Constructs a Recommender with the given scoring.
+         *
+         * @param scorer scores a book; higher scores are recommended first
+         */
+        public Recommender(final ToDoubleFunction<? super Book> scorer)
+        {
+            validateScorer(scorer);
+
+            this.byScore = Comparator.<Book>comparingDouble(scorer::applyAsDouble).reversed();
+            this.ranking = new AtomicReference<>(Ranking.EMPTY);
+        }
+
+        /**
+         * Returns the highest-scored book in the catalog.
+         *
+         * @return the top recommendation, or empty if the catalog is empty
+         */
+        public Optional<Book> recommend()
+        {
+            final List<Book> top;
+            top = recommend(1);
+
+            return top.isEmpty() ? Optional.empty() : Optional.of(top.get(0));
+        }
+
+        /**
+         * Returns the highest-scored books in the catalog.
+         *
+         * @param limit the most books to return
+         * @return up to limit books, best first
+         */
+        public List<Book> recommend(final int limit)
+        {
+            validateLimit(limit);
+            return topOf(current().ranked, limit);
+        }
+
+        /**
+         * Returns the highest-scored books of the given genre.
+         *
+         * @param genre the genre to recommend from
+         * @param limit the most books to return
+         * @return up to limit books, best first
+         */
+        public List<Book> recommendByGenre(final Genre genre,
+                                           final int   limit)
+        {
+            validateGenre(genre);
+            validateLimit(limit);
+            return topOf(current().rankedByGenre.get(genre), limit);
+        }
+
+        /**
+         * Returns a ranking covering at least the currently published
+         * snapshot, extending the latest one if it is behind.
+         */
+        private Ranking current()
+        {
+            final long     start;
+            final Snapshot snapshot;
+            final Ranking  latest;
+            final Ranking  extended;
+
+            start = LibraryMetrics.start();
+
+            // Read the snapshot first: any ranking at least its size covers a published catalog
+            snapshot = ConcurrentLibrary.this.current;
+            latest = ranking.get();
+
+            if(latest.size >= snapshot.size)
+            {
+                LibraryMetrics.RECOMMEND.stop(start);
+                return latest;
+            }
+
+            extended = latest.extend(snapshot, byScore);
+            ranking.accumulateAndGet(extended, (held, offered) -> held.size >= offered.size ? held : offered);
+
+            LibraryMetrics.RECOMMEND.stop(start);
+            return extended;
+        }
+    }
+
+    /**
+     * The books of one snapshot ranked best first, overall and per genre.
+     */
+    private static final class Ranking
+    {
+        /** The ranking of an empty catalog. */
+        private static final Ranking EMPTY = new Ranking(0, new Book[0], emptyGenres());
+
+        private final int                size;
+        private final Book[]             ranked;
+        private final Map<Genre, Book[]> rankedByGenre;
+
+        private Ranking(final int                size,
+                        final Book[]             ranked,
+                        final Map<Genre, Book[]> rankedByGenre)
+        {
+            this.size = size;
+            this.ranked = ranked;
+            this.rankedByGenre = rankedByGenre;
+        }
+
+        /**
+         * Returns the ranking of a later snapshot, which holds this
+         * ranking's books followed by new ones: the new books are sorted
+         * and merged into each ranked array.
+         */
+        private Ranking extend(final Snapshot         snapshot,
+                               final Comparator<Book> byScore)
+        {
+            final Book[]             added;
+            final Map<Genre, Book[]> byGenre;
+
+            added = Arrays.copyOfRange(snapshot.books, size, snapshot.size);
+            Arrays.sort(added, byScore);
+            byGenre = new EnumMap<>(Genre.class);
+
+            for(final Genre genre : Genre.values())
+            {
+                byGenre.put(genre, merge(rankedByGenre.get(genre), ofGenre(added, genre), byScore));
+            }
+
+            return new Ranking(snapshot.size, merge(ranked, added, byScore), byGenre);
+        }
+
+        /**
+         * Merges two ranked arrays; on equal scores the earlier array's
+         * books, which were added first, come first.
+         */
+        private static Book[] merge(final Book[]           earlier,
+                                    final Book[]           later,
+                                    final Comparator<Book> byScore)
+        {
+            final Book[] merged;
+            int          left;
+            int          right;
+
+            merged = new Book[earlier.length + later.length];
+            left = 0;
+            right = 0;
+
+            while(left < earlier.length && right < later.length)
+            {
+                merged[left + right] = byScore.compare(later[right], earlier[left]) < 0 ?
+                                       later[right++] : earlier[left++];
+            }
+
+            System.arraycopy(earlier, left, merged, left + right, earlier.length - left);
+            System.arraycopy(later, right, merged, left + right, later.length - right);
+            return merged;
+        }
+
+        /**
+         * Returns the books of one genre, keeping their order.
+         */
+        private static Book[] ofGenre(final Book[] books,
+                                      final Genre  genre)
+        {
+            final List<Book> matches;
+            matches = new ArrayList<>();
+
+            for(final Book book : books)
+            {
+                if(book.getGenreType() == genre)
+                {
+                    matches.add(book);
+                }
+            }
+
+            return matches.toArray(new Book[0]);
+        }
+
+        private static Map<Genre, Book[]> emptyGenres()
+        {
+            final Map<Genre, Book[]> genres;
+            genres = new EnumMap<>(Genre.class);
+
+            for(final Genre genre : Genre.values())
+            {
+                genres.put(genre, new Book[0]);
+            }
+
+            return genres;
+        }
+    }
+
+    /**
+     * Returns an unmodifiable copy of at most limit books from the front of
+     * a ranked array.
+     */
+    private static List<Book> topOf(final Book[] ranked,
+                                    final int    limit)
+    {
+        return Collections.unmodifiableList(new ArrayList<>(Arrays.asList(ranked)
+                                                                  .subList(0, Math.min(limit, ranked.length))));
+    }
+
+    /**
+     * An immutable prefix of the shared backing array.
+     */
+    private static final class Snapshot extends AbstractList<Book> implements RandomAccess
+    {
+        private final Book[] books;
+        private final int    size;
+        private final int[]  genreCounts;
+
+        Snapshot(final Book[] books,
+                 final int    size,
+                 final int[]  genreCounts)
+        {
+            this.books = books;
+            this.size = size;
+            this.genreCounts = genreCounts;
+        }
+
+        @Override
+        public Book get(final int index)
+        {
+            if(index < 0 || index >= size)
+            {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size + ".");
+            }
+
+            return books[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if name is null or blank
+     */
+    private static void validateName(final String name)
+    {
+        if(name == null || name.isBlank())
+        {
+            throw new IllegalArgumentException("Library name must not be null or blank.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if initialBooks is null
+     */
+    private static void validateInitialBooks(final List<Book> initialBooks)
+    {
+        if(initialBooks == null)
+        {
+            throw new IllegalArgumentException("Initial books list must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if books is null
+     */
+    private static void validateBatch(final Collection<? extends Book> books)
+    {
+        if(books == null)
+        {
+            throw new IllegalArgumentException("Books must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if scorer is null
+     */
+    private static void validateScorer(final ToDoubleFunction<? super Book> scorer)
+    {
+        if(scorer == null)
+        {
+            throw new IllegalArgumentException("Scorer must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if genre is null
+     */
+    private static void validateGenre(final Genre genre)
+    {
+        if(genre == null)
+        {
+            throw new IllegalArgumentException("Genre must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if limit is negative
+     */
+    private static void validateLimit(final int limit)
+    {
+        if(limit < 0)
+        {
+            throw new IllegalArgumentException("Limit must not be negative.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if book is null
+     */
+    private static void validateBook(final Book book)
+    {
+        if(book == null)
+        {
+            throw new IllegalArgumentException("Book must not be null.");
+        }
+    }
+}
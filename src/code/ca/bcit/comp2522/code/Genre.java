@@ -0,0 +1,114 @@
+package ca.bcit.comp2522.code;
+
+/**
+ * The accepted genres of a {@link Book}.
+ * Each constant carries the label used by the string constants on
+ * {@link Book}, so {@code Genre.FICTION.getLabel()} is the same String as
+ * {@link Book#GENRE_FICTION}. Comparing genres is a reference comparison
+ * instead of a {@link String#equals(Object)} call.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public enum Genre
+{
+    /** Fiction, labelled {@link Book#GENRE_FICTION}. */
+    FICTION(Book.GENRE_FICTION),
+
+    /** Non-fiction, labelled {@link Book#GENRE_NONFICTION}. */
+    NONFICTION(Book.GENRE_NONFICTION),
+
+    /** Reference, labelled {@link Book#GENRE_REFERENCE}. */
+    REFERENCE(Book.GENRE_REFERENCE);
+
+    /** Shared copy of {@link #values()}, which clones on every call. */
+    private static final Genre[] VALUES = values();
+
+    private final String label;
+
+    Genre(final String label)
+    {
+        this.label = label;
+    }
+
+    /**
+     * Returns the string label of this genre.
+     *
+     * @return the label, one of the {@code Book.GENRE_*} constants
+     */
+    public String getLabel()
+    {
+        return label;
+    }
+
+    /**
+     * Returns the genre with the given label.
+     *
+     * @param label the label to look up
+     * @return the matching genre
+     * @throws IllegalArgumentException if the label is not recognised
+     */
+    public static Genre fromLabel(final String label)
+    {
+        final Genre genre;
+        genre = lookup(label);
+
+        if(genre == null)
+        {
+            throw new IllegalArgumentException(
+                    "Genre must be " + Book.GENRE_FICTION    + ", " +
+                            Book.GENRE_NONFICTION + ", or "           +
+                            Book.GENRE_REFERENCE  + ".");
+        }
+
+        return genre;
+    }
+
+    /**
+     * Returns the genre with the given label, or null if it is not recognised.
+     */
+    static Genre lookup(final String label)
+    {
+        for(final Genre genre : VALUES)
+        {
+            if(genre.label.equals(label))
+            {
+                return genre;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the genre with the given ordinal.
+     */
+    static Genre ofOrdinal(final int ordinal)
+    {
+        return VALUES[ordinal];
+    }
+
+    /**
+     * Returns the number of genres.
+     */
+    static int count()
+    {
+        return VALUES.length;
+    }
+
+    /**
+     * Returns the length of the longest genre label.
+     */
+    static int maxLabelLength()
+    {
+        int length;
+        length = 0;
+
+        for(final Genre genre : VALUES)
+        {
+            length = Math.max(length, genre.label.length());
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,208 @@
+package ca.bcit.comp2522.code;
+
+import java.util.Arrays;
+
+/**
+ * A shelf of primitive {@code int} values, such as page counts or years.
+ * Offers the same {@code add}/{@code getSmallest}/{@code getLargest} API as
+ * {@link Shelf} without boxing each value into an {@link Integer}: values
+ * live in a growable {@code int[]} and the extremes and sum are updated as
+ * values are added, so those queries never scan the array.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class IntShelf
+{
+    /** Capacity used by the no-argument constructor. */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Factor by which the backing array grows when full. */
+    private static final int GROWTH_FACTOR = 2;
+
+    /** Lowest accepted percentile. */
+    private static final double MIN_PERCENTILE = 0.0;
+
+    /** Highest accepted percentile. */
+    private static final double MAX_PERCENTILE = 100.0;
+
+    private int[]   values;
+    private int     size;
+    private int     smallest;
+    private int     largest;
+    private long    sum;
+    private boolean sorted;
+
+    /**
+     * Constructs an empty IntShelf.
+     */
+    public IntShelf()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty IntShelf sized for the expected number of values.
+     *
+     * @param initialCapacity the number of values to reserve room for
+     */
+    public IntShelf(final int initialCapacity)
+    {
+        validateCapacity(initialCapacity);
+
+        values = new int[initialCapacity];
+        sorted = true;
+    }
+
+    /**
+     * Adds a value to this shelf.
+     *
+     * @param value the value to add
+     */
+    public void add(final int value)
+    {
+        if(size == values.length)
+        {
+            values = Arrays.copyOf(values, Math.max(DEFAULT_CAPACITY, size * GROWTH_FACTOR));
+        }
+
+        if(size == 0)
+        {
+            smallest = value;
+            largest  = value;
+        }
+        else
+        {
+            sorted   = sorted && value >= values[size - 1];
+            smallest = Math.min(smallest, value);
+            largest  = Math.max(largest, value);
+        }
+
+        values[size] = value;
+        size++;
+        sum += value;
+    }
+
+    /**
+     * Returns the smallest value.
+     *
+     * @return the smallest value
+     */
+    public int getSmallest()
+    {
+        validateNotEmpty();
+        return smallest;
+    }
+
+    /**
+     * Returns the largest value.
+     *
+     * @return the largest value
+     */
+    public int getLargest()
+    {
+        validateNotEmpty();
+        return largest;
+    }
+
+    /**
+     * Returns the sum of all values, accumulated in a {@code long}.
+     *
+     * @return the sum
+     */
+    public long sum()
+    {
+        return sum;
+    }
+
+    /**
+     * Returns the arithmetic mean of all values.
+     *
+     * @return the mean as a double
+     */
+    public double mean()
+    {
+        validateNotEmpty();
+        return (double) sum / size;
+    }
+
+    /**
+     * Returns the value at the given percentile using the nearest-rank method.
+     * The first call after unsorted adds sorts the backing array in place;
+     * later calls are O(1) until another out-of-order value is added.
+     *
+     * @param percentile the percentile, from 0 to 100 inclusive
+     * @return the smallest value with at least that share of values at or below it
+     */
+    public int percentile(final double percentile)
+    {
+        validateNotEmpty();
+        validatePercentile(percentile);
+
+        if(!sorted)
+        {
+            Arrays.sort(values, 0, size);
+            sorted = true;
+        }
+
+        final int rank;
+        rank = (int) Math.ceil(percentile / MAX_PERCENTILE * size);
+
+        return values[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Returns the number of values on this shelf.
+     *
+     * @return the value count
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns whether this shelf holds no values.
+     *
+     * @return true if the shelf is empty
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if initialCapacity is negative
+     */
+    private static void validateCapacity(final int initialCapacity)
+    {
+        if(initialCapacity < 0)
+        {
+            throw new IllegalArgumentException("Initial capacity must not be negative.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if percentile is outside 0 to 100
+     */
+    private static void validatePercentile(final double percentile)
+    {
+        if(!(percentile >= MIN_PERCENTILE && percentile <= MAX_PERCENTILE))
+        {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+    }
+
+    /**
+     * Validates that the shelf is not empty before a query.
+     *
+     * @throws IllegalStateException if the shelf is empty
+     */
+    private void validateNotEmpty()
+    {
+        if(size == 0)
+        {
+            throw new IllegalStateException("Shelf is empty.");
+        }
+    }
+}
@@ -1,10 +1,41 @@
 package ca.bcit.comp2522.code;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
 
 /**
  * Represents a named library that holds a catalog of books.
+ * Books added through the constructor or {@link #addBook(Book)} are also
+ * indexed by genre, year published and title, so lookups and counts do not
+ * need to scan the catalog. {@link CatalogListener}s registered with
+ * {@link #addListener(CatalogListener)} are told of every book added or
+ * removed, so derived state such as {@link LiveLibraryStats} stays current.
+ * A Library built from an {@link OffHeapCatalog} keeps its books off the
+ * heap: the catalog becomes the library's storage, no per-book indexes are
+ * built, and lookups and counts are answered by the catalog's own title
+ * table, counters and column scans. The books it returns are decoded
+ * copies, so it matches books by value rather than identity: a book is
+ * removed, or lent by the {@link CheckoutDesk}, if one with the same
+ * title, genre, year and page count is in the catalog. Its
+ * {@link #snapshot()} is decoded onto the heap when first asked for after
+ * a change, and a {@link Librarian} ranks positions instead of books,
+ * decoding only the books it returns. The catalog is adopted, not copied,
+ * so books must be added and removed through the library: a change made
+ * to the OffHeapCatalog directly is not seen by listeners or counted as a
+ * change.
  * Contains two nested classes: the static {@link LibraryStats} and
  * the non-static {@link Librarian}.
  *
@@ -16,11 +47,31 @@ public final class Library
     /** Index of the first book in the catalog. */
     private static final int FIRST_BOOK_INDEX = 0;
 
-    private final String     name;
-    private final List<Book> catalog;
+    private final String                            name;
+    private final List<Book>                        catalog;
+    private final Map<Genre, List<Book>>            genreIndex;
+    private final NavigableMap<Integer, List<Book>> yearIndex;
+    private final Map<String, List<Book>>           titleIndex;
+    private final List<CatalogListener>             listeners;
+    private final CheckoutDesk                      checkoutDesk;
+
+    /** The catalog when the books are stored off the heap, otherwise null. */
+    private final OffHeapCatalog                    offHeap;
+
+    /** Incremented on every change made through addBook or removeBook. */
+    private volatile long version;
+
+    /** Immutable copy of the catalog as of the last change, shared with readers. */
+    private volatile PersistentCatalog snapshot;
+
+    /** Version the snapshot was decoded at, when the books are stored off the heap. */
+    private long snapshotVersion;
 
     /**
      * Constructs a Library with the given name and initial books.
+     * The books are copied, except that an {@link OffHeapCatalog} is used
+     * as the library's storage directly and must afterwards only be changed
+     * through the library.
      *
      * @param name         the library's name
      * @param initialBooks the starting catalog
@@ -32,7 +83,42 @@ public final class Library
         validateInitialBooks(initialBooks);
 
         this.name = name;
-        this.catalog = new ArrayList<>(initialBooks);
+        this.offHeap = initialBooks instanceof OffHeapCatalog ? (OffHeapCatalog) initialBooks : null;
+        this.catalog = offHeap != null ? offHeap : new ArrayList<>(initialBooks);
+        this.genreIndex = new EnumMap<>(Genre.class);
+        this.yearIndex = new TreeMap<>();
+        this.titleIndex = new HashMap<>();
+        this.listeners = new ArrayList<>();
+        this.checkoutDesk = new CheckoutDesk(this);
+
+        if(offHeap != null)
+        {
+            // Books were validated as they were stored, and are looked up in place
+            return;
+        }
+
+        for(final Book book : catalog)
+        {
+            validateBook(book);
+            index(book);
+        }
+
+        this.snapshot = PersistentCatalog.of(catalog);
+    }
+
+    /**
+     * Constructs a Library from a columnar catalog, materializing one
+     * {@link Book} per entry.
+     *
+     * @param name    the library's name
+     * @param columns the starting catalog in columnar form
+     * @return a new Library holding the same books in the same order
+     */
+    public static Library fromColumnar(final String          name,
+                                       final ColumnarCatalog columns)
+    {
+        validateColumns(columns);
+        return new Library(name, columns.toBooks());
     }
 
     /**
@@ -43,8 +129,220 @@ public final class Library
      */
     public void addBook(final Book book)
     {
+        final long start;
+        start = LibraryMetrics.start();
+
         validateBook(book);
         catalog.add(book);
+
+        if(offHeap == null)
+        {
+            index(book);
+            snapshot = snapshot.append(book);
+        }
+
+        version++;
+
+        for(final CatalogListener listener : listeners)
+        {
+            listener.bookAdded(book);
+        }
+
+        LibraryMetrics.ADD_BOOK.stop(start);
+    }
+
+    /**
+     * Adds a batch of books in one step. The batch is validated in a single
+     * pass; null rows are reported in the result rather than thrown, and every
+     * other book is added. The catalog grows at most once, and listeners
+     * receive the whole batch in one {@link CatalogListener#booksAdded(List)}
+     * call.
+     *
+     * @param books the books to add
+     * @return how many books were added and which rows were rejected
+     */
+    public BatchResult addAll(final Collection<? extends Book> books)
+    {
+        validateBatch(books);
+
+        final long                        start;
+        final List<Book>                  accepted;
+        final List<BatchResult.Rejection> rejections;
+
+        start = LibraryMetrics.start();
+        accepted = new ArrayList<>(books.size());
+        rejections = BatchResult.screen(books, accepted, "Book");
+
+        catalog.addAll(accepted);
+
+        if(offHeap == null)
+        {
+            for(final Book book : accepted)
+            {
+                index(book);
+            }
+
+            snapshot = snapshot.appendAll(accepted);
+        }
+
+        version++;
+
+        for(final CatalogListener listener : listeners)
+        {
+            listener.booksAdded(Collections.unmodifiableList(accepted));
+        }
+
+        LibraryMetrics.ADD_ALL.stop(start);
+        return new BatchResult(accepted.size(), rejections);
+    }
+
+    /**
+     * Removes the given book from the catalog and its indexes.
+     * Books are matched by identity, so an equal copy is not removed,
+     * except when the books are stored off the heap, where the first book
+     * with the same fields is removed.
+     *
+     * @param book the book to remove
+     * @return true if the book was in the catalog and has been removed
+     */
+    public boolean removeBook(final Book book)
+    {
+        validateBook(book);
+
+        if(!catalog.remove(book))
+        {
+            return false;
+        }
+
+        if(offHeap == null)
+        {
+            unindex(book);
+
+            // A removal shifts every later book, so the trie is rebuilt like the list
+            snapshot = PersistentCatalog.of(catalog);
+        }
+
+        version++;
+
+        for(final CatalogListener listener : listeners)
+        {
+            listener.bookRemoved(book);
+        }
+
+        return true;
+    }
+
+    /**
+     * Registers a listener for catalog changes. The listener is first given
+     * every book already in the catalog through
+     * {@link CatalogListener#bookAdded(Book)}, in catalog order, so it starts
+     * out consistent with the library.
+     *
+     * @param listener the listener to register
+     */
+    public void addListener(final CatalogListener listener)
+    {
+        validateListener(listener);
+
+        for(final Book book : catalog)
+        {
+            listener.bookAdded(book);
+        }
+
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener; it receives no further changes.
+     *
+     * @param listener the listener to unregister
+     * @return true if the listener was registered
+     */
+    public boolean removeListener(final CatalogListener listener)
+    {
+        return listeners.remove(listener);
+    }
+
+    /**
+     * Returns the first book added with exactly the given title.
+     *
+     * @param title the title to look up
+     * @return the matching book, or empty if none has that title
+     */
+    public Optional<Book> findByTitle(final String title)
+    {
+        if(offHeap != null)
+        {
+            return offHeap.findByTitle(title);
+        }
+
+        final List<Book> matches;
+        matches = titleIndex.get(title);
+
+        if(matches == null)
+        {
+            return Optional.empty();
+        }
+
+        return Optional.of(matches.get(FIRST_BOOK_INDEX));
+    }
+
+    /**
+     * Returns the books published in the given range of years, ordered by year.
+     *
+     * @param from the earliest year, inclusive
+     * @param to   the latest year, inclusive
+     * @return the matching books
+     */
+    public List<Book> booksPublishedBetween(final int from,
+                                           final int to)
+    {
+        validateYearRange(from, to);
+
+        if(offHeap != null)
+        {
+            return offHeap.booksPublishedBetween(from, to);
+        }
+
+        final List<Book> matches;
+        matches = new ArrayList<>();
+
+        for(final List<Book> books : yearIndex.subMap(from, true, to, true).values())
+        {
+            matches.addAll(books);
+        }
+
+        return matches;
+    }
+
+    /**
+     * Returns the number of books of the given genre in constant time.
+     *
+     * @param genre the genre to count
+     * @return count of matching books
+     */
+    public int countByGenre(final String genre)
+    {
+        final Genre resolved;
+        resolved = Genre.lookup(genre);
+
+        return resolved == null ? 0 : countByGenre(resolved);
+    }
+
+    /**
+     * Returns the number of books of the given genre in constant time.
+     *
+     * @param genre the genre to count
+     * @return count of matching books
+     */
+    public int countByGenre(final Genre genre)
+    {
+        if(offHeap != null)
+        {
+            return offHeap.countByGenre(genre);
+        }
+
+        return genreIndex.getOrDefault(genre, Collections.emptyList()).size();
     }
 
     /**
@@ -59,7 +357,10 @@ public final class Library
 
     /**
      * Returns the catalog list directly.
-     * The caller may add, remove, or sort entries.
+     * The caller may add, remove, or sort entries; books added or removed
+     * through this list bypass the title, year and genre indexes and are not
+     * reported to listeners, and sorting it reorders the library for every
+     * other caller. Use {@link #snapshot()} for a view that is safe to keep.
      *
      * @return the mutable catalog list
      */
@@ -68,6 +369,187 @@ public final class Library
         return catalog;
     }
 
+    /**
+     * Returns an immutable view of the catalog as of the last change made
+     * through {@link #addBook(Book)}, {@link #addAll(Collection)} or
+     * {@link #removeBook(Book)}, in constant time and without copying.
+     * The view never changes, so it can be iterated on another thread while
+     * books are added, and {@link PersistentCatalog#sorted(Comparator)}
+     * gives a sorted version without reordering the library. Changes made
+     * directly through {@link #getCatalog()} are not reflected. When the
+     * books are stored off the heap, the first call after a change decodes
+     * every book into a new snapshot, so it must not race an addition.
+     *
+     * @return the current catalog snapshot
+     */
+    public PersistentCatalog snapshot()
+    {
+        if(offHeap != null)
+        {
+            return decodedSnapshot();
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Returns the desk that lends this library's books.
+     *
+     * @return the library's checkout desk
+     */
+    public CheckoutDesk getCheckoutDesk()
+    {
+        return checkoutDesk;
+    }
+
+    /**
+     * Starts a lazy query over the catalog. Nothing is scanned until a
+     * terminal operation such as {@link CatalogQuery#toList()} runs.
+     *
+     * @return a new query matching every book
+     */
+    public CatalogQuery query()
+    {
+        return new CatalogQuery(this);
+    }
+
+    /**
+     * Returns whether the given book is in the catalog: the same object, or
+     * when the books are stored off the heap, a book with the same fields.
+     */
+    boolean contains(final Book book)
+    {
+        if(offHeap != null)
+        {
+            return offHeap.contains(book);
+        }
+
+        for(final Book candidate : booksTitled(book.getTitle()))
+        {
+            if(candidate == book)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns a key that is equal for two books exactly when this library
+     * treats them as the same book: the book itself, or when the books are
+     * stored off the heap, its fields.
+     */
+    Object keyOf(final Book book)
+    {
+        return offHeap != null ? OffHeapCatalog.keyOf(book) : book;
+    }
+
+    /**
+     * Returns the indexed books of a genre, in the order they were added.
+     */
+    List<Book> booksOfGenre(final Genre genre)
+    {
+        if(offHeap != null)
+        {
+            return offHeap.booksOfGenre(genre);
+        }
+
+        return Collections.unmodifiableList(genreIndex.getOrDefault(genre, Collections.emptyList()));
+    }
+
+    /**
+     * Returns the indexed books with exactly the given title.
+     */
+    List<Book> booksTitled(final String title)
+    {
+        if(offHeap != null)
+        {
+            return offHeap.booksTitled(title);
+        }
+
+        return Collections.unmodifiableList(titleIndex.getOrDefault(title, Collections.emptyList()));
+    }
+
+    /**
+     * Returns the per-year lists of books published in the given range, by year.
+     */
+    Collection<List<Book>> booksByYearBetween(final int from,
+                                              final int to)
+    {
+        if(offHeap != null)
+        {
+            return List.of(offHeap.booksPublishedBetween(from, to));
+        }
+
+        return Collections.unmodifiableCollection(yearIndex.subMap(from, true, to, true).values());
+    }
+
+    /**
+     * Returns a columnar copy of the catalog for analytics scans.
+     *
+     * @return the catalog in columnar form, in catalog order
+     */
+    public ColumnarCatalog toColumnar()
+    {
+        return ColumnarCatalog.of(catalog);
+    }
+
+    /**
+     * Records a book in the genre, year and title indexes.
+     *
+     * @param book the book to index
+     */
+    private void index(final Book book)
+    {
+        genreIndex.computeIfAbsent(book.getGenreType(), genre -> new ArrayList<>()).add(book);
+        yearIndex.computeIfAbsent(book.getYearPublished(), year -> new ArrayList<>()).add(book);
+        titleIndex.computeIfAbsent(book.getTitle(), title -> new ArrayList<>()).add(book);
+    }
+
+    /**
+     * Removes a book from the genre, year and title indexes.
+     *
+     * @param book the book to unindex
+     */
+    private void unindex(final Book book)
+    {
+        removeFrom(genreIndex, book.getGenreType(), book);
+        removeFrom(yearIndex, book.getYearPublished(), book);
+        removeFrom(titleIndex, book.getTitle(), book);
+    }
+
+    /**
+     * Removes a book from one index entry, dropping the entry once it is empty.
+     */
+    private static <K> void removeFrom(final Map<K, List<Book>> index,
+                                       final K                  key,
+                                       final Book               book)
+    {
+        final List<Book> books;
+        books = index.get(key);
+
+        if(books != null && books.remove(book) && books.isEmpty())
+        {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Returns the snapshot of an off-heap catalog, decoding a new one if the
+     * catalog has changed since the last.
+     */
+    private synchronized PersistentCatalog decodedSnapshot()
+    {
+        if(snapshot == null || snapshotVersion != version)
+        {
+            snapshot = PersistentCatalog.of(offHeap);
+            snapshotVersion = version;
+        }
+
+        return snapshot;
+    }
+
     /**
      * @throws IllegalArgumentException if name is null or blank
      */
@@ -101,6 +583,51 @@ public final class Library
         }
     }
 
+    /**
+     * @throws IllegalArgumentException if books is null
+     */
+    private static void validateBatch(final Collection<? extends Book> books)
+    {
+        if(books == null)
+        {
+            throw new IllegalArgumentException("Books must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if listener is null
+     */
+    private static void validateListener(final CatalogListener listener)
+    {
+        if(listener == null)
+        {
+            throw new IllegalArgumentException("Listener must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if columns is null
+     */
+    private static void validateColumns(final ColumnarCatalog columns)
+    {
+        if(columns == null)
+        {
+            throw new IllegalArgumentException("Columnar catalog must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if from is after to
+     */
+    private static void validateYearRange(final int from,
+                                          final int to)
+    {
+        if(from > to)
+        {
+            throw new IllegalArgumentException("Start year must not be after end year.");
+        }
+    }
+
     // Task 5 - Static Nested Class
 
     /**
@@ -119,29 +646,73 @@ public final class Library
         public int countByGenre(final List<Book> books,
                                 final String     genre)
         {
-            int count;
+            final Genre resolved;
+            resolved = Genre.lookup(genre);
+
+            return resolved == null ? 0 : countByGenre(books, resolved);
+        }
+
+        /**
+         * Returns the number of books of the given genre, comparing
+         * {@link Genre} references instead of strings. An
+         * {@link OffHeapCatalog} answers from its running counts.
+         *
+         * @param books the list to examine
+         * @param genre the genre to match
+         * @return count of matching books
+         */
+        public int countByGenre(final List<Book> books,
+                                final Genre      genre)
+        {
+            final long start;
+            int        count;
+
+            start = LibraryMetrics.start();
+
+            if(books instanceof OffHeapCatalog)
+            {
+                count = ((OffHeapCatalog) books).countByGenre(genre);
+                LibraryMetrics.STATS_COUNT_BY_GENRE.stop(start);
+                return count;
+            }
+
             count = 0;
 
             for(final Book book : books)
             {
-                if(genre.equals(book.getGenre()))
+                if(book.getGenreType() == genre)
                 {
                     count++;
                 }
             }
 
+            LibraryMetrics.STATS_COUNT_BY_GENRE.stop(start);
             return count;
         }
 
         /**
          * Returns the average page count across all books.
+         * An {@link OffHeapCatalog} answers from its running totals.
          *
          * @param books the list to average
          * @return mean page count as a double
          */
         public double averagePageCount(final List<Book> books)
         {
-            int total;
+            final long start;
+            long       total;
+
+            start = LibraryMetrics.start();
+
+            if(books instanceof OffHeapCatalog)
+            {
+                final double average;
+                average = ((OffHeapCatalog) books).averagePageCount();
+
+                LibraryMetrics.STATS_AVERAGE_PAGE_COUNT.stop(start);
+                return average;
+            }
+
             total = 0;
 
             for(final Book book : books)
@@ -149,43 +720,478 @@ public final class Library
                 total += book.getPageCount();
             }
 
+            LibraryMetrics.STATS_AVERAGE_PAGE_COUNT.stop(start);
             return (double) total / books.size();
         }
+
+        /**
+         * Returns the number of books whose genre matches the given value,
+         * scanning only the genre code column.
+         *
+         * @param columns the columnar catalog to examine
+         * @param genre   the genre to match
+         * @return count of matching books
+         */
+        public int countByGenre(final ColumnarCatalog columns,
+                                final String          genre)
+        {
+            final long   start;
+            final byte   code;
+            final byte[] genreCodes;
+            final int    size;
+            int          count;
+
+            start      = LibraryMetrics.start();
+            code       = ColumnarCatalog.genreCode(genre);
+            genreCodes = columns.genreCodeColumn();
+            size       = columns.size();
+            count      = 0;
+
+            for(int i = 0; i < size; i++)
+            {
+                if(genreCodes[i] == code)
+                {
+                    count++;
+                }
+            }
+
+            LibraryMetrics.STATS_COUNT_BY_GENRE.stop(start);
+            return count;
+        }
+
+        /**
+         * Returns the average page count across all books,
+         * scanning only the page count column.
+         *
+         * @param columns the columnar catalog to average
+         * @return mean page count as a double
+         */
+        public double averagePageCount(final ColumnarCatalog columns)
+        {
+            final long  start;
+            final int[] pageCounts;
+            final int   size;
+            long        total;
+
+            start      = LibraryMetrics.start();
+            pageCounts = columns.pageCountColumn();
+            size       = columns.size();
+            total      = 0;
+
+            for(int i = 0; i < size; i++)
+            {
+                total += pageCounts[i];
+            }
+
+            LibraryMetrics.STATS_AVERAGE_PAGE_COUNT.stop(start);
+            return (double) total / size;
+        }
     }
 
     // Task 6 - Non-Static Inner Class
 
     /**
-     * A librarian who works at the enclosing {@link Library}.
+     * A librarian who works at the enclosing {@link Library} and recommends
+     * books from its catalog.
      * Non-static - holds an implicit reference to the outer instance,
      * allowing direct access to its private fields.
+     * Candidates are ranked by a pluggable scorer, where a higher score is a
+     * better recommendation. The librarian precomputes ranked candidate lists
+     * for the whole catalog, each genre and each decade, plus a list ordered
+     * by page count for "similar length" requests, and keeps recent results
+     * in an LRU cache whose entries expire after a time-to-live. Both are
+     * rebuilt lazily after the library's catalog changes through
+     * {@link #addBook(Book)} or {@link #removeBook(Book)}. For a library
+     * stored in an {@link OffHeapCatalog} the candidate lists hold
+     * positions: each book is decoded once to be scored, the positions are
+     * sorted and grouped using the year, genre and page count columns, and
+     * only the books a recommendation returns are decoded again. Safe for
+     * concurrent reads while the library is not being changed.
      */
     public final class Librarian
     {
-        private final String name;
+        /** Number of results kept in the cache by default. */
+        private static final int DEFAULT_CACHE_SIZE = 256;
+
+        /** How long a cached result is served by default. */
+        private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+        /** Number of years grouped into one decade. */
+        private static final int YEARS_PER_DECADE = 10;
+
+        /** Result cache hash map load factor. */
+        private static final float CACHE_LOAD_FACTOR = 0.75f;
+
+        private final String                          name;
+        private final ToDoubleFunction<? super Book>  scorer;
+        private final Comparator<Book>                byScore;
+        private final long                            timeToLiveNanos;
+        private final Map<List<Object>, CachedResult> cache;
+
+        private long                     candidatesVersion;
+        private List<Book>               ranked;
+        private Map<Genre, List<Book>>   rankedByGenre;
+        private Map<Integer, List<Book>> rankedByDecade;
+        private List<Book>               byLength;
 
         /**
-         * Constructs a Librarian with the given name.
+         * Constructs a Librarian who favours the most recently published books.
          *
          * @param name the librarian's name
          */
         public Librarian(final String name)
+        {
+            this(name, Book::getYearPublished, DEFAULT_CACHE_SIZE, DEFAULT_TIME_TO_LIVE);
+        }
+
+        /**
+         * Constructs a Librarian with the given scoring and cache settings.
+         *
+         * @param name       the librarian's name
+         * @param scorer     scores a book; higher scores are recommended first
+         * @param cacheSize  the most results to keep cached
+         * @param timeToLive how long a cached result may be served
+         */
+        public Librarian(final String                         name,
+                         final ToDoubleFunction<? super Book> scorer,
+                         final int                            cacheSize,
+                         final Duration                       timeToLive)
         {
             validateLibrarianName(name);
+            validateScorer(scorer);
+            validateCacheSize(cacheSize);
+            validateTimeToLive(timeToLive);
+
             this.name = name;
+            this.scorer = scorer;
+            this.byScore = Comparator.<Book>comparingDouble(scorer::applyAsDouble).reversed();
+            this.timeToLiveNanos = timeToLive.toNanos();
+            this.cache = new LinkedHashMap<>(cacheSize, CACHE_LOAD_FACTOR, true)
+            {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<List<Object>, CachedResult> eldest)
+                {
+                    return size() > cacheSize;
+                }
+            };
+            this.candidatesVersion = -1;
+        }
+
+        /**
+         * Returns the librarian's name.
+         *
+         * @return the name
+         */
+        public String getName()
+        {
+            return name;
         }
 
         /**
-         * Prints the enclosing library's name and the first book in its catalog.
-         * Accesses the outer class fields {@code Library.this.name} and {@code catalog} directly.
+         * Returns the highest-scored book in the enclosing library's catalog.
+         *
+         * @return the top recommendation, or empty if the catalog is empty
          */
-        public void recommend()
+        public Optional<Book> recommend()
         {
-            final Book firstBook;
-            firstBook = catalog.get(FIRST_BOOK_INDEX);
+            final List<Book> top;
+            top = recommend(1);
 
-            System.out.println(name + " at " + Library.this.name +
-                    " recommends: " + firstBook);
+            return top.isEmpty() ? Optional.empty() : Optional.of(top.get(FIRST_BOOK_INDEX));
+        }
+
+        /**
+         * Returns the highest-scored books in the catalog.
+         *
+         * @param limit the most books to return
+         * @return up to limit books, best first
+         */
+        public List<Book> recommend(final int limit)
+        {
+            validateLimit(limit);
+            return cached(List.of("all", limit), () -> topOf(ranked, limit));
+        }
+
+        /**
+         * Returns the highest-scored books of the given genre.
+         *
+         * @param genre the genre to recommend from
+         * @param limit the most books to return
+         * @return up to limit books, best first
+         */
+        public List<Book> recommendByGenre(final Genre genre,
+                                           final int   limit)
+        {
+            validateGenre(genre);
+            validateLimit(limit);
+            return cached(List.of("genre", genre, limit), () -> topOf(rankedByGenre.get(genre), limit));
+        }
+
+        /**
+         * Returns the highest-scored books published in the decade containing
+         * the given year, so 1987 selects 1980 to 1989.
+         *
+         * @param year  any year in the decade
+         * @param limit the most books to return
+         * @return up to limit books, best first
+         */
+        public List<Book> recommendByDecade(final int year,
+                                            final int limit)
+        {
+            validateLimit(limit);
+
+            final int decade;
+            decade = decadeOf(year);
+
+            return cached(List.of("decade", decade, limit), () -> topOf(rankedByDecade.get(decade), limit));
+        }
+
+        /**
+         * Returns the books whose page count is closest to the given book's,
+         * excluding that book. Books equally close are ordered by score.
+         *
+         * @param book  the book to match the length of
+         * @param limit the most books to return
+         * @return up to limit books, closest first
+         */
+        public List<Book> recommendSimilarLength(final Book book,
+                                                 final int  limit)
+        {
+            validateBook(book);
+            validateLimit(limit);
+            return cached(List.of("length", keyOf(book), limit), () -> closestInLength(book, limit));
+        }
+
+        /**
+         * Returns a cached result for the key, computing and caching it if it
+         * is missing, expired or from before the last catalog change.
+         */
+        private synchronized List<Book> cached(final List<Object>         key,
+                                               final Supplier<List<Book>> compute)
+        {
+            final long         start;
+            final long         now;
+            final CachedResult hit;
+            final List<Book>   books;
+
+            start = LibraryMetrics.start();
+            refreshCandidates();
+
+            now = System.nanoTime();
+            hit = cache.get(key);
+
+            if(hit != null && now - hit.expiresAt < 0)
+            {
+                LibraryMetrics.RECOMMEND.stop(start);
+                return hit.books;
+            }
+
+            books = Collections.unmodifiableList(compute.get());
+            cache.put(key, new CachedResult(books, now + timeToLiveNanos));
+
+            LibraryMetrics.RECOMMEND.stop(start);
+            return books;
+        }
+
+        /**
+         * Rebuilds the candidate lists and drops cached results if the
+         * catalog has changed since they were built.
+         */
+        private void refreshCandidates()
+        {
+            if(candidatesVersion == version)
+            {
+                return;
+            }
+
+            if(offHeap != null)
+            {
+                rankPositions();
+            }
+            else
+            {
+                rankBooks();
+            }
+
+            cache.clear();
+            candidatesVersion = version;
+        }
+
+        /**
+         * Builds the candidate lists from the books on the heap.
+         */
+        private void rankBooks()
+        {
+            ranked = new ArrayList<>(catalog);
+            ranked.sort(byScore);
+
+            rankedByGenre = new EnumMap<>(Genre.class);
+            rankedByDecade = new HashMap<>();
+
+            for(final Book book : ranked)
+            {
+                rankedByGenre.computeIfAbsent(book.getGenreType(), genre -> new ArrayList<>()).add(book);
+                rankedByDecade.computeIfAbsent(decadeOf(book.getYearPublished()),
+                                               decade -> new ArrayList<>()).add(book);
+            }
+
+            // Stable sort keeps equal lengths in score order
+            byLength = new ArrayList<>(ranked);
+            byLength.sort(Book.BY_PAGE_COUNT);
+        }
+
+        /**
+         * Builds the candidate lists as views over positions in the off-heap
+         * catalog, in the same orders as {@link #rankBooks()}.
+         */
+        private void rankPositions()
+        {
+            final int[] positions;
+            positions = offHeap.positionsByScore(scorer);
+
+            ranked = offHeap.booksAt(positions);
+            rankedByGenre = new EnumMap<>(Genre.class);
+            rankedByDecade = new HashMap<>();
+
+            for(final Map.Entry<Integer, int[]> group :
+                offHeap.groupPositions(positions, position -> offHeap.genreAt(position).ordinal()).entrySet())
+            {
+                rankedByGenre.put(Genre.ofOrdinal(group.getKey()), offHeap.booksAt(group.getValue()));
+            }
+
+            for(final Map.Entry<Integer, int[]> group :
+                offHeap.groupPositions(positions, position -> decadeOf(offHeap.yearAt(position))).entrySet())
+            {
+                rankedByDecade.put(group.getKey(), offHeap.booksAt(group.getValue()));
+            }
+
+            byLength = offHeap.booksAt(offHeap.positionsByPageCount(positions));
+        }
+
+        /**
+         * Walks outward from the book's page count in the length-ordered list,
+         * taking whichever neighbour is closer at each step and skipping the
+         * book itself once.
+         */
+        private List<Book> closestInLength(final Book book,
+                                           final int  limit)
+        {
+            final List<Book> closest;
+            final int        target;
+            final Object     key;
+            int              below;
+            int              above;
+            boolean          skipped;
+
+            closest = new ArrayList<>(Math.min(limit, byLength.size()));
+            key = keyOf(book);
+            skipped = false;
+            target = book.getPageCount();
+            above = firstWithAtLeast(target);
+            below = above - 1;
+
+            while(closest.size() < limit && (below >= 0 || above < byLength.size()))
+            {
+                final Book next;
+
+                if(below < 0)
+                {
+                    next = byLength.get(above++);
+                }
+                else if(above >= byLength.size())
+                {
+                    next = byLength.get(below--);
+                }
+                else
+                {
+                    final Book lower;
+                    final Book upper;
+                    final int  lowerGap;
+                    final int  upperGap;
+
+                    lower = byLength.get(below);
+                    upper = byLength.get(above);
+                    lowerGap = target - lower.getPageCount();
+                    upperGap = upper.getPageCount() - target;
+
+                    if(lowerGap < upperGap ||
+                       (lowerGap == upperGap && byScore.compare(lower, upper) <= 0))
+                    {
+                        next = lower;
+                        below--;
+                    }
+                    else
+                    {
+                        next = upper;
+                        above++;
+                    }
+                }
+
+                if(!skipped && keyOf(next).equals(key))
+                {
+                    skipped = true;
+                }
+                else
+                {
+                    closest.add(next);
+                }
+            }
+
+            return closest;
+        }
+
+        /**
+         * Returns the index of the first book in the length-ordered list with
+         * at least the given page count.
+         */
+        private int firstWithAtLeast(final int pageCount)
+        {
+            int low;
+            int high;
+
+            low = 0;
+            high = byLength.size();
+
+            while(low < high)
+            {
+                final int middle;
+                middle = (low + high) >>> 1;
+
+                if(byLength.get(middle).getPageCount() < pageCount)
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        /**
+         * Returns a copy of at most limit books from the front of a ranked list.
+         */
+        private static List<Book> topOf(final List<Book> books,
+                                        final int        limit)
+        {
+            if(books == null)
+            {
+                return new ArrayList<>();
+            }
+
+            return new ArrayList<>(books.subList(0, Math.min(limit, books.size())));
+        }
+
+        /**
+         * Returns the first year of the decade containing the given year.
+         */
+        private static int decadeOf(final int year)
+        {
+            return Math.floorDiv(year, YEARS_PER_DECADE) * YEARS_PER_DECADE;
         }
 
         /**
@@ -198,5 +1204,76 @@ public final class Library
                 throw new IllegalArgumentException("Librarian name must not be null or blank.");
             }
         }
+
+        /**
+         * @throws IllegalArgumentException if scorer is null
+         */
+        private static void validateScorer(final ToDoubleFunction<? super Book> scorer)
+        {
+            if(scorer == null)
+            {
+                throw new IllegalArgumentException("Scorer must not be null.");
+            }
+        }
+
+        /**
+         * @throws IllegalArgumentException if cacheSize is not positive
+         */
+        private static void validateCacheSize(final int cacheSize)
+        {
+            if(cacheSize <= 0)
+            {
+                throw new IllegalArgumentException("Cache size must be positive.");
+            }
+        }
+
+        /**
+         * @throws IllegalArgumentException if timeToLive is null or negative
+         */
+        private static void validateTimeToLive(final Duration timeToLive)
+        {
+            if(timeToLive == null || timeToLive.isNegative())
+            {
+                throw new IllegalArgumentException("Time to live must not be null or negative.");
+            }
+        }
+
+        /**
+         * @throws IllegalArgumentException if genre is null
+         */
+        private static void validateGenre(final Genre genre)
+        {
+            if(genre == null)
+            {
+                throw new IllegalArgumentException("Genre must not be null.");
+            }
+        }
+
+        /**
+         * @throws IllegalArgumentException if limit is negative
+         */
+        private static void validateLimit(final int limit)
+        {
+            if(limit < 0)
+            {
+                throw new IllegalArgumentException("Limit must not be negative.");
+            }
+        }
+    }
+
+    /**
+     * A result held in a {@link Librarian}'s cache until it expires.
+     */
+    private static final class CachedResult
+    {
+        private final List<Book> books;
+        private final long       expiresAt;
+
+        private CachedResult(final List<Book> books,
+                             final long       expiresAt)
+        {
+            this.books = books;
+            this.expiresAt = expiresAt;
+        }
     }
 }
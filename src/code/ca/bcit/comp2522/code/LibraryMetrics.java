@@ -0,0 +1,571 @@
+package ca.bcit.comp2522.code;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency timers and gauges for the library's hot paths.
+ * <p>
+ * Instrumented code brackets an operation with {@link #start()} and
+ * {@link Timer#stop(long)}:
+ * <pre>
+ *   final long start;
+ *   start = LibraryMetrics.start();
+ *   ... operation ...
+ *   LibraryMetrics.ADD_BOOK.stop(start);
+ * </pre>
+ * While metrics are disabled, {@link #start()} is a single volatile read and
+ * {@code stop} returns at once, so the cost is close to zero. While enabled,
+ * recording allocates nothing: each {@link Timer} counts into a fixed array
+ * of log-linear buckets, like an HDR histogram, with 32 buckets per power of
+ * two, so percentiles are accurate to about 3%.
+ * <p>
+ * Metrics start disabled unless the system property
+ * {@code library.metrics.enabled} is {@code true}. They can be read through
+ * {@link #exportTo(MetricsExporter)}, or over JMX once
+ * {@link #registerMBean()} has been called.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class LibraryMetrics
+{
+    /** Value returned by {@link #start()} while metrics are disabled. */
+    public static final long DISABLED = Long.MIN_VALUE;
+
+    /** System property that enables metrics at startup. */
+    private static final String ENABLED_PROPERTY = "library.metrics.enabled";
+
+    /** JMX name under which {@link #registerMBean()} registers the metrics. */
+    private static final String MBEAN_NAME = "ca.bcit.comp2522.code:type=LibraryMetrics";
+
+    /** Registered timers by name, in declaration order. */
+    private static final Map<String, Timer> TIMERS = new LinkedHashMap<>();
+
+    /** Registered gauges by name. */
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    /** Times {@link Library#addBook(Book)}. */
+    public static final Timer ADD_BOOK = timer("library.addBook");
+
+    /** Times {@link Library#addAll(java.util.Collection)}. */
+    public static final Timer ADD_ALL = timer("library.addAll");
+
+    /** Times the {@code countByGenre} scans of {@link Library.LibraryStats}. */
+    public static final Timer STATS_COUNT_BY_GENRE = timer("stats.countByGenre");
+
+    /** Times the {@code averagePageCount} scans of {@link Library.LibraryStats}. */
+    public static final Timer STATS_AVERAGE_PAGE_COUNT = timer("stats.averagePageCount");
+
+    /** Times {@link Shelf#getSmallest()}. */
+    public static final Timer SHELF_GET_SMALLEST = timer("shelf.getSmallest");
+
+    /** Times {@link Shelf#getLargest()}. */
+    public static final Timer SHELF_GET_LARGEST = timer("shelf.getLargest");
+
+    /** Times every {@link Library.Librarian} recommendation, cached or not. */
+    public static final Timer RECOMMEND = timer("librarian.recommend");
+
+    /** Times each request answered by {@link CatalogServer}, excluding network I/O. */
+    public static final Timer SERVER_REQUEST = timer("server.request");
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private LibraryMetrics() { }
+
+    /**
+     * Returns the start time of an operation to pass to {@link Timer#stop(long)}.
+     *
+     * @return the current {@link System#nanoTime()}, or {@link #DISABLED}
+     */
+    public static long start()
+    {
+        return enabled ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * Returns whether operations are being timed.
+     *
+     * @return true if metrics are enabled
+     */
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Turns timing on or off. Recorded values are kept either way.
+     *
+     * @param on true to start timing operations
+     */
+    public static void setEnabled(final boolean on)
+    {
+        enabled = on;
+    }
+
+    /**
+     * Returns every timer, in declaration order.
+     *
+     * @return the timers
+     */
+    public static Collection<Timer> timers()
+    {
+        return Collections.unmodifiableCollection(TIMERS.values());
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name. A gauge is
+     * read only when metrics are exported.
+     *
+     * @param name  the gauge name
+     * @param gauge supplies the current value
+     */
+    public static void registerGauge(final String       name,
+                                     final LongSupplier gauge)
+    {
+        validateName(name);
+
+        if(gauge == null)
+        {
+            throw new IllegalArgumentException("Gauge must not be null.");
+        }
+
+        GAUGES.put(name, gauge);
+    }
+
+    /**
+     * Removes a gauge.
+     *
+     * @param name the gauge name
+     */
+    public static void unregisterGauge(final String name)
+    {
+        validateName(name);
+        GAUGES.remove(name);
+    }
+
+    /**
+     * Registers gauges for a library's catalog size and per-genre counts,
+     * named {@code library.<name>.size} and {@code library.<name>.<genre>}.
+     * The gauges hold a reference to the library until unregistered.
+     *
+     * @param library the library to watch
+     */
+    public static void watchCatalog(final Library library)
+    {
+        if(library == null)
+        {
+            throw new IllegalArgumentException("Library must not be null.");
+        }
+
+        final String prefix;
+        prefix = "library." + library.getName() + ".";
+
+        registerGauge(prefix + "size", () -> library.getCatalog().size());
+
+        for(final Genre genre : Genre.values())
+        {
+            registerGauge(prefix + genre.getLabel(), () -> library.countByGenre(genre));
+        }
+    }
+
+    /**
+     * Passes every timer and the current value of every gauge to an exporter.
+     *
+     * @param exporter the exporter to write to
+     */
+    public static void exportTo(final MetricsExporter exporter)
+    {
+        if(exporter == null)
+        {
+            throw new IllegalArgumentException("Exporter must not be null.");
+        }
+
+        for(final Timer timer : TIMERS.values())
+        {
+            exporter.exportTimer(timer);
+        }
+
+        for(final Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet())
+        {
+            exporter.exportGauge(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+    }
+
+    /**
+     * Clears every timer.
+     */
+    public static void reset()
+    {
+        for(final Timer timer : TIMERS.values())
+        {
+            timer.reset();
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, if not already
+     * registered, so JMX clients such as JConsole can read them.
+     *
+     * @throws IllegalStateException if the MBean cannot be registered
+     */
+    public static synchronized void registerMBean()
+    {
+        final MBeanServer server;
+        server = ManagementFactory.getPlatformMBeanServer();
+
+        try
+        {
+            final ObjectName name;
+            name = new ObjectName(MBEAN_NAME);
+
+            if(!server.isRegistered(name))
+            {
+                server.registerMBean(new MBean(), name);
+            }
+        }
+        catch(final JMException e)
+        {
+            throw new IllegalStateException("Could not register " + MBEAN_NAME + ".", e);
+        }
+    }
+
+    /**
+     * Creates and registers a timer during class initialization.
+     */
+    private static Timer timer(final String name)
+    {
+        final Timer timer;
+        timer = new Timer(name);
+
+        TIMERS.put(name, timer);
+        return timer;
+    }
+
+    /**
+     * @throws IllegalArgumentException if name is null or blank
+     */
+    private static void validateName(final String name)
+    {
+        if(name == null || name.isBlank())
+        {
+            throw new IllegalArgumentException("Metric name must not be null or blank.");
+        }
+    }
+
+    /**
+     * Counts operations and their latencies in a log-linear histogram.
+     * Values below 32 ns get a bucket each; above that, every power of two
+     * is split into 32 equal buckets. Safe for concurrent recording.
+     */
+    public static final class Timer
+    {
+        /** Bits of each value kept below its leading one bit. */
+        private static final int SUB_BUCKET_BITS = 5;
+
+        /** Buckets per power of two. */
+        private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+        /** Enough buckets for any non-negative long. */
+        private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+        /** Percentile of the whole distribution. */
+        private static final double ALL = 100.0;
+
+        /** Percentile reported as the median. */
+        private static final double MEDIAN = 50.0;
+
+        /** Percentile reported as the tail latency. */
+        private static final double TAIL = 99.0;
+
+        private final String          name;
+        private final AtomicLongArray buckets;
+        private final LongAdder       count;
+        private final LongAdder       totalNanos;
+        private final LongAccumulator maxNanos;
+
+        private Timer(final String name)
+        {
+            this.name = name;
+            this.buckets = new AtomicLongArray(BUCKET_COUNT);
+            this.count = new LongAdder();
+            this.totalNanos = new LongAdder();
+            this.maxNanos = new LongAccumulator(Math::max, 0);
+        }
+
+        /**
+         * Records the time since start, unless start is {@link LibraryMetrics#DISABLED}.
+         *
+         * @param start the value returned by {@link LibraryMetrics#start()}
+         */
+        public void stop(final long start)
+        {
+            if(start == DISABLED)
+            {
+                return;
+            }
+
+            record(System.nanoTime() - start);
+        }
+
+        /**
+         * Records one operation of the given duration.
+         *
+         * @param nanos the duration in nanoseconds; negative values count as 0
+         */
+        public void record(final long nanos)
+        {
+            final long value;
+            value = Math.max(0, nanos);
+
+            buckets.incrementAndGet(bucketOf(value));
+            count.increment();
+            totalNanos.add(value);
+            maxNanos.accumulate(value);
+        }
+
+        /**
+         * Returns the timer's name.
+         *
+         * @return the name
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Returns the number of operations recorded.
+         *
+         * @return the count
+         */
+        public long getCount()
+        {
+            return count.sum();
+        }
+
+        /**
+         * Returns the mean latency.
+         *
+         * @return mean nanoseconds per operation, or 0 if none were recorded
+         */
+        public double getMeanNanos()
+        {
+            final long operations;
+            operations = count.sum();
+
+            return operations == 0 ? 0 : (double) totalNanos.sum() / operations;
+        }
+
+        /**
+         * Returns the largest latency recorded.
+         *
+         * @return the maximum in nanoseconds
+         */
+        public long getMaxNanos()
+        {
+            return maxNanos.get();
+        }
+
+        /**
+         * Returns the latency at or below which the given share of operations
+         * completed, as the upper bound of the bucket it falls in.
+         *
+         * @param percentile the share, from 0 to 100
+         * @return the latency in nanoseconds, or 0 if none were recorded
+         */
+        public long getPercentileNanos(final double percentile)
+        {
+            if(percentile < 0 || percentile > ALL)
+            {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+            }
+
+            long total;
+            total = 0;
+
+            for(int i = 0; i < BUCKET_COUNT; i++)
+            {
+                total += buckets.get(i);
+            }
+
+            if(total == 0)
+            {
+                return 0;
+            }
+
+            final long rank;
+            long       seen;
+
+            rank = Math.max(1, (long) Math.ceil(percentile / ALL * total));
+            seen = 0;
+
+            for(int i = 0; i < BUCKET_COUNT; i++)
+            {
+                seen += buckets.get(i);
+
+                if(seen >= rank)
+                {
+                    return Math.min(upperBoundOf(i), getMaxNanos());
+                }
+            }
+
+            return getMaxNanos();
+        }
+
+        /**
+         * Clears every recorded value. Not atomic with respect to
+         * concurrent recording.
+         */
+        public void reset()
+        {
+            for(int i = 0; i < BUCKET_COUNT; i++)
+            {
+                buckets.set(i, 0);
+            }
+
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+
+        /**
+         * Returns the name, count, mean, p50, p99 and max.
+         *
+         * @return the timer as text
+         */
+        @Override
+        public String toString()
+        {
+            return String.format("%s count=%d mean=%.1fns p50=%dns p99=%dns max=%dns",
+                                 name, getCount(), getMeanNanos(),
+                                 getPercentileNanos(MEDIAN), getPercentileNanos(TAIL), getMaxNanos());
+        }
+
+        /**
+         * Returns the bucket of a non-negative value.
+         */
+        private static int bucketOf(final long value)
+        {
+            if(value < SUB_BUCKET_COUNT)
+            {
+                return (int) value;
+            }
+
+            final int shift;
+            shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+
+            return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+        }
+
+        /**
+         * Returns the largest value that falls in a bucket.
+         */
+        private static long upperBoundOf(final int bucket)
+        {
+            if(bucket < SUB_BUCKET_COUNT)
+            {
+                return bucket;
+            }
+
+            final int  shift;
+            final long mantissa;
+
+            shift = bucket / SUB_BUCKET_COUNT - 1;
+            mantissa = bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+            return ((mantissa + 1) << shift) - 1;
+        }
+    }
+
+    /**
+     * The JMX view of the metrics.
+     */
+    private static final class MBean implements LibraryMetricsMXBean
+    {
+        @Override
+        public boolean isEnabled()
+        {
+            return LibraryMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(final boolean on)
+        {
+            LibraryMetrics.setEnabled(on);
+        }
+
+        @Override
+        public Map<String, Long> getCounts()
+        {
+            final Map<String, Long> counts;
+            counts = new LinkedHashMap<>();
+
+            for(final Timer timer : TIMERS.values())
+            {
+                counts.put(timer.getName(), timer.getCount());
+            }
+
+            return counts;
+        }
+
+        @Override
+        public Map<String, Double> getMeanNanos()
+        {
+            final Map<String, Double> means;
+            means = new LinkedHashMap<>();
+
+            for(final Timer timer : TIMERS.values())
+            {
+                means.put(timer.getName(), timer.getMeanNanos());
+            }
+
+            return means;
+        }
+
+        @Override
+        public Map<String, Long> getP99Nanos()
+        {
+            final Map<String, Long> tails;
+            tails = new LinkedHashMap<>();
+
+            for(final Timer timer : TIMERS.values())
+            {
+                tails.put(timer.getName(), timer.getPercentileNanos(Timer.TAIL));
+            }
+
+            return tails;
+        }
+
+        @Override
+        public Map<String, Long> getGauges()
+        {
+            final Map<String, Long> values;
+            values = new LinkedHashMap<>();
+
+            for(final Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet())
+            {
+                values.put(gauge.getKey(), gauge.getValue().getAsLong());
+            }
+
+            return values;
+        }
+
+        @Override
+        public void reset()
+        {
+            LibraryMetrics.reset();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ca.bcit.comp2522.code;
+
+import java.util.Map;
+
+/**
+ * The JMX management interface of {@link LibraryMetrics}, registered by
+ * {@link LibraryMetrics#registerMBean()}. Maps are keyed by timer or gauge
+ * name.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public interface LibraryMetricsMXBean
+{
+    /**
+     * Returns whether operations are being timed.
+     *
+     * @return true if metrics are enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns timing on or off.
+     *
+     * @param on true to start timing operations
+     */
+    void setEnabled(boolean on);
+
+    /**
+     * Returns the number of operations each timer has recorded.
+     *
+     * @return counts by timer name
+     */
+    Map<String, Long> getCounts();
+
+    /**
+     * Returns each timer's mean latency.
+     *
+     * @return mean nanoseconds by timer name
+     */
+    Map<String, Double> getMeanNanos();
+
+    /**
+     * Returns each timer's 99th percentile latency.
+     *
+     * @return p99 nanoseconds by timer name
+     */
+    Map<String, Long> getP99Nanos();
+
+    /**
+     * Returns the current value of every gauge.
+     *
+     * @return values by gauge name
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * Clears every timer.
+     */
+    void reset();
+}
@@ -0,0 +1,757 @@
+package ca.bcit.comp2522.code;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Saves and loads {@link Library} snapshots in a compact binary format.
+ * <p>
+ * A snapshot holds the library name, a genre dictionary and four columns.
+ * Each column starts with its byte length, so a reader can skip straight to
+ * the one it needs:
+ * <pre>
+ *   magic "LIBS", format version
+ *   name            varint length + UTF-8
+ *   book count      varint
+ *   genres          varint count, then varint length + UTF-8 per genre
+ *   genre column    one dictionary code byte per book
+ *   year column     zigzag varint per book
+ *   page column     zigzag varint per book
+ *   title column    varint length + UTF-8 per book
+ * </pre>
+ * {@link #map(Path)} memory-maps a snapshot and answers genre counts and
+ * average page counts straight from the mapped columns, without creating a
+ * {@link Book} per entry; {@link MappedSnapshot#toLibrary()} materializes
+ * the full catalog only when it is needed.
+ * <p>
+ * {@link #save(Library, Path)} writes beside the target under a temporary
+ * name, forces the file and renames it into place, so a crash during a save
+ * leaves the previous snapshot intact.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class LibrarySnapshot
+{
+    /** File signature, the ASCII bytes {@code LIBS}. */
+    private static final int MAGIC = 0x4C494253;
+
+    /** Version of the layout described above. */
+    private static final byte VERSION = 1;
+
+    /** Size of the write buffer. */
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    /** Largest region of the file mapped at once while reading. */
+    private static final long MAP_WINDOW_SIZE = 1L << 28;
+
+    /** Longest possible varint encoding of a long. */
+    private static final int MAX_VARINT_BYTES = 10;
+
+    /** Bits of payload in each varint byte. */
+    private static final int VARINT_PAYLOAD_BITS = 7;
+
+    /** Mask selecting a varint byte's payload. */
+    private static final int VARINT_PAYLOAD_MASK = 0x7F;
+
+    /** Flag set on every varint byte except the last. */
+    private static final int VARINT_CONTINUATION = 0x80;
+
+    /** Mask that reads an int's bits as an unsigned value. */
+    private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
+
+    /** Size of a fixed-width column length. */
+    private static final int COLUMN_LENGTH_BYTES = Long.BYTES;
+
+    /** Appended to a snapshot's file name while it is being written. */
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private LibrarySnapshot() { }
+
+    /**
+     * Writes a snapshot of the library's name and catalog to the given file,
+     * atomically replacing any existing snapshot: the file is written under a
+     * temporary name in the same directory, forced to disk and renamed over
+     * the target, and the directory entry is then forced where the platform
+     * allows it.
+     *
+     * @param library the library to save
+     * @param path    the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(final Library library,
+                            final Path    path) throws IOException
+    {
+        validateLibrary(library);
+        validatePath(path);
+
+        final List<Book> books;
+        final Path       temporary;
+
+        books = library.getCatalog();
+        temporary = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+
+        try
+        {
+            write(library.getName(), books, temporary);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(final IOException | RuntimeException e)
+        {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        forceDirectory(path.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Writes and forces the snapshot encoding of a catalog.
+     */
+    private static void write(final String     name,
+                              final List<Book> books,
+                              final Path       path) throws IOException
+    {
+        try(final Writer writer = new Writer(path))
+        {
+            writer.writeInt(MAGIC);
+            writer.writeByte(VERSION);
+            writer.writeString(name);
+            writer.writeVarLong(books.size());
+
+            writer.writeVarLong(ColumnarCatalog.genreCount());
+
+            for(int code = 0; code < ColumnarCatalog.genreCount(); code++)
+            {
+                writer.writeString(ColumnarCatalog.genreOf(code));
+            }
+
+            long lengthAt;
+
+            lengthAt = writer.beginColumn();
+            for(final Book book : books)
+            {
+                writer.writeByte(ColumnarCatalog.genreCode(book.getGenreType()));
+            }
+            writer.endColumn(lengthAt);
+
+            lengthAt = writer.beginColumn();
+            for(final Book book : books)
+            {
+                writer.writeVarLong(zigzag(book.getYearPublished()));
+            }
+            writer.endColumn(lengthAt);
+
+            lengthAt = writer.beginColumn();
+            for(final Book book : books)
+            {
+                writer.writeVarLong(zigzag(book.getPageCount()));
+            }
+            writer.endColumn(lengthAt);
+
+            lengthAt = writer.beginColumn();
+            for(final Book book : books)
+            {
+                writer.writeString(book.getTitle());
+            }
+            writer.endColumn(lengthAt);
+
+            writer.force();
+        }
+    }
+
+    /**
+     * Forces a directory entry to disk, where the platform allows a
+     * directory to be opened.
+     */
+    private static void forceDirectory(final Path directory)
+    {
+        if(directory == null)
+        {
+            return;
+        }
+
+        try(final FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ))
+        {
+            channel.force(true);
+        }
+        catch(final IOException e)
+        {
+            // Not supported on this platform; the rename is still atomic
+        }
+    }
+
+    /**
+     * Reads a snapshot back into a fully materialized {@link Library}.
+     *
+     * @param path the snapshot file
+     * @return a library with the saved name and catalog
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static Library load(final Path path) throws IOException
+    {
+        try(final MappedSnapshot snapshot = map(path))
+        {
+            return snapshot.toLibrary();
+        }
+    }
+
+    /**
+     * Memory-maps a snapshot, reading only its header.
+     * The returned snapshot must be closed to release the file.
+     *
+     * @param path the snapshot file
+     * @return a mapped view of the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static MappedSnapshot map(final Path path) throws IOException
+    {
+        validatePath(path);
+        return new MappedSnapshot(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * A memory-mapped snapshot that answers catalog statistics from its
+     * columns without building {@link Book} objects.
+     */
+    public static final class MappedSnapshot implements AutoCloseable
+    {
+        private final FileChannel channel;
+        private final String      name;
+        private final int         size;
+        private final byte[]      genreCodes;
+        private final long        genreColumnStart;
+        private final long        yearColumnStart;
+        private final long        pageColumnStart;
+        private final long        titleColumnStart;
+
+        private MappedSnapshot(final FileChannel channel) throws IOException
+        {
+            this.channel = channel;
+
+            try
+            {
+                final Reader reader;
+                final long   bookCount;
+                final long   genreCount;
+
+                reader = new Reader(channel, 0L);
+
+                if(reader.readInt() != MAGIC)
+                {
+                    throw new IOException("Not a library snapshot.");
+                }
+
+                if(reader.readByte() != VERSION)
+                {
+                    throw new IOException("Unsupported library snapshot version.");
+                }
+
+                name = reader.readString();
+                bookCount = reader.readVarLong();
+
+                if(bookCount > Integer.MAX_VALUE)
+                {
+                    throw new IOException("Snapshot holds more books than a catalog can.");
+                }
+
+                size = (int) bookCount;
+                genreCount = reader.readVarLong();
+                genreCodes = new byte[(int) genreCount];
+
+                for(int i = 0; i < genreCount; i++)
+                {
+                    final String genre;
+                    genre = reader.readString();
+                    genreCodes[i] = ColumnarCatalog.genreCode(genre);
+
+                    if(genreCodes[i] == ColumnarCatalog.UNKNOWN_GENRE)
+                    {
+                        throw new IOException("Snapshot contains unknown genre \"" + genre + "\".");
+                    }
+                }
+
+                genreColumnStart = reader.skipColumn();
+                yearColumnStart = reader.skipColumn();
+                pageColumnStart = reader.skipColumn();
+                titleColumnStart = reader.skipColumn();
+            }
+            catch(final IOException | RuntimeException e)
+            {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Returns the saved library's name.
+         *
+         * @return the name
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Returns the number of books in the snapshot.
+         *
+         * @return the book count
+         */
+        public int size()
+        {
+            return size;
+        }
+
+        /**
+         * Returns the number of books of the given genre by scanning the
+         * one-byte-per-book genre column.
+         *
+         * @param genre the genre to match
+         * @return count of matching books
+         * @throws IOException if the file cannot be read
+         */
+        public int countByGenre(final String genre) throws IOException
+        {
+            final byte   target;
+            final Reader reader;
+            int          count;
+
+            target = ColumnarCatalog.genreCode(genre);
+            reader = new Reader(channel, genreColumnStart);
+            count = 0;
+
+            for(int i = 0; i < size; i++)
+            {
+                if(genreCodes[reader.readByte()] == target)
+                {
+                    count++;
+                }
+            }
+
+            return count;
+        }
+
+        /**
+         * Returns the average page count by decoding only the page column.
+         *
+         * @return mean page count as a double
+         * @throws IOException if the file cannot be read
+         */
+        public double averagePageCount() throws IOException
+        {
+            final Reader reader;
+            long         total;
+
+            reader = new Reader(channel, pageColumnStart);
+            total = 0;
+
+            for(int i = 0; i < size; i++)
+            {
+                total += unzigzag(reader.readVarLong());
+            }
+
+            return (double) total / size;
+        }
+
+        /**
+         * Decodes every column into a {@link ColumnarCatalog}, which
+         * {@link Library.LibraryStats} can scan without Book objects.
+         *
+         * @return the catalog in columnar form
+         * @throws IOException if the file cannot be read
+         */
+        public ColumnarCatalog toColumnar() throws IOException
+        {
+            final ColumnarCatalog columns;
+            final Reader          genres;
+            final Reader          years;
+            final Reader          pages;
+            final Reader          titles;
+
+            columns = new ColumnarCatalog(size);
+            genres = new Reader(channel, genreColumnStart);
+            years = new Reader(channel, yearColumnStart);
+            pages = new Reader(channel, pageColumnStart);
+            titles = new Reader(channel, titleColumnStart);
+
+            for(int i = 0; i < size; i++)
+            {
+                columns.append(titles.readString(),
+                               genreCodes[genres.readByte()],
+                               (int) unzigzag(years.readVarLong()),
+                               (int) unzigzag(pages.readVarLong()));
+            }
+
+            return columns;
+        }
+
+        /**
+         * Materializes the full library, creating one {@link Book} per entry.
+         *
+         * @return a library with the saved name and catalog
+         * @throws IOException if the file cannot be read
+         */
+        public Library toLibrary() throws IOException
+        {
+            return Library.fromColumnar(name, toColumnar());
+        }
+
+        /**
+         * Releases the underlying file.
+         *
+         * @throws IOException if the file cannot be closed
+         */
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Sequential decoder over a file, mapping one window at a time so files
+     * larger than a single mapping can be read.
+     */
+    private static final class Reader
+    {
+        private final FileChannel channel;
+        private final long        fileSize;
+        private MappedByteBuffer  window;
+        private long              windowStart;
+
+        Reader(final FileChannel channel,
+               final long        position) throws IOException
+        {
+            this.channel = channel;
+            this.fileSize = channel.size();
+            map(position);
+        }
+
+        byte readByte() throws IOException
+        {
+            ensure(Byte.BYTES);
+            return window.get();
+        }
+
+        int readInt() throws IOException
+        {
+            ensure(Integer.BYTES);
+            return window.getInt();
+        }
+
+        long readLong() throws IOException
+        {
+            ensure(Long.BYTES);
+            return window.getLong();
+        }
+
+        long readVarLong() throws IOException
+        {
+            if(remaining() == 0)
+            {
+                throw new IOException("Truncated library snapshot.");
+            }
+
+            ensure((int) Math.min(MAX_VARINT_BYTES, remaining()));
+
+            long value;
+            int  shift;
+
+            value = 0;
+            shift = 0;
+
+            while(true)
+            {
+                final byte next;
+                next = window.get();
+
+                value |= (long) (next & VARINT_PAYLOAD_MASK) << shift;
+
+                if((next & VARINT_CONTINUATION) == 0)
+                {
+                    return value;
+                }
+
+                shift += VARINT_PAYLOAD_BITS;
+
+                if(shift >= Long.SIZE)
+                {
+                    throw new IOException("Malformed varint in snapshot.");
+                }
+            }
+        }
+
+        String readString() throws IOException
+        {
+            final long length;
+            length = readVarLong();
+
+            if(length > Integer.MAX_VALUE)
+            {
+                throw new IOException("String too long in snapshot.");
+            }
+
+            ensure((int) length);
+
+            final byte[] bytes;
+            bytes = new byte[(int) length];
+            window.get(bytes);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads a column length and moves past the column.
+         *
+         * @return the file position where the column's data starts
+         */
+        long skipColumn() throws IOException
+        {
+            final long length;
+            final long start;
+
+            length = readLong();
+            start = position();
+
+            if(length < 0 || length > fileSize - start)
+            {
+                throw new IOException("Truncated library snapshot.");
+            }
+
+            map(start + length);
+            return start;
+        }
+
+        private long position()
+        {
+            return windowStart + window.position();
+        }
+
+        private long remaining()
+        {
+            return fileSize - position();
+        }
+
+        /**
+         * Remaps so the window holds at least the given number of bytes from
+         * the current position.
+         */
+        private void ensure(final int bytes) throws IOException
+        {
+            if(window.remaining() >= bytes)
+            {
+                return;
+            }
+
+            if(remaining() < bytes)
+            {
+                throw new IOException("Truncated library snapshot.");
+            }
+
+            map(position());
+
+            if(window.remaining() < bytes)
+            {
+                throw new IOException("Snapshot record larger than a mapping window.");
+            }
+        }
+
+        private void map(final long position) throws IOException
+        {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY,
+                                 position,
+                                 Math.min(MAP_WINDOW_SIZE, fileSize - position));
+        }
+    }
+
+    /**
+     * Buffered encoder that can go back and fill in a column's length once
+     * the column has been written.
+     */
+    private static final class Writer implements AutoCloseable
+    {
+        private final FileChannel channel;
+        private final ByteBuffer  buffer;
+
+        Writer(final Path path) throws IOException
+        {
+            channel = FileChannel.open(path,
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE,
+                                       StandardOpenOption.TRUNCATE_EXISTING);
+            buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        }
+
+        void writeByte(final byte value) throws IOException
+        {
+            reserve(Byte.BYTES);
+            buffer.put(value);
+        }
+
+        void writeInt(final int value) throws IOException
+        {
+            reserve(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void writeVarLong(final long value) throws IOException
+        {
+            reserve(MAX_VARINT_BYTES);
+
+            long remaining;
+            remaining = value;
+
+            while((remaining & ~VARINT_PAYLOAD_MASK) != 0)
+            {
+                buffer.put((byte) ((remaining & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION));
+                remaining >>>= VARINT_PAYLOAD_BITS;
+            }
+
+            buffer.put((byte) remaining);
+        }
+
+        void writeString(final String value) throws IOException
+        {
+            final byte[] bytes;
+            bytes = value.getBytes(StandardCharsets.UTF_8);
+
+            writeVarLong(bytes.length);
+
+            if(bytes.length > buffer.capacity())
+            {
+                flush();
+                channel.write(ByteBuffer.wrap(bytes));
+                return;
+            }
+
+            reserve(bytes.length);
+            buffer.put(bytes);
+        }
+
+        /**
+         * Writes a placeholder column length.
+         *
+         * @return the file position of the placeholder
+         */
+        long beginColumn() throws IOException
+        {
+            final long lengthAt;
+            lengthAt = position();
+
+            reserve(COLUMN_LENGTH_BYTES);
+            buffer.putLong(0L);
+
+            return lengthAt;
+        }
+
+        /**
+         * Fills in the placeholder written by {@link #beginColumn()}.
+         */
+        void endColumn(final long lengthAt) throws IOException
+        {
+            final ByteBuffer length;
+
+            flush();
+            length = ByteBuffer.allocate(COLUMN_LENGTH_BYTES);
+            length.putLong(channel.position() - lengthAt - COLUMN_LENGTH_BYTES);
+            length.flip();
+
+            channel.write(length, lengthAt);
+        }
+
+        /**
+         * Writes out the buffer and forces the file's content to disk.
+         */
+        void force() throws IOException
+        {
+            flush();
+            channel.force(true);
+        }
+
+        private long position() throws IOException
+        {
+            return channel.position() + buffer.position();
+        }
+
+        private void reserve(final int bytes) throws IOException
+        {
+            if(buffer.remaining() < bytes)
+            {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException
+        {
+            buffer.flip();
+
+            while(buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                flush();
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Maps a signed int to an unsigned value so small negatives stay short.
+     */
+    private static long zigzag(final int value)
+    {
+        return ((value << 1) ^ (value >> (Integer.SIZE - 1))) & UNSIGNED_INT_MASK;
+    }
+
+    /**
+     * Reverses {@link #zigzag(int)}.
+     */
+    private static long unzigzag(final long encoded)
+    {
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    /**
+     * @throws IllegalArgumentException if library is null
+     */
+    private static void validateLibrary(final Library library)
+    {
+        if(library == null)
+        {
+            throw new IllegalArgumentException("Library must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if path is null
+     */
+    private static void validatePath(final Path path)
+    {
+        if(path == null)
+        {
+            throw new IllegalArgumentException("Path must not be null.");
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package ca.bcit.comp2522.code;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Catalog statistics that are kept up to date as books are added and
+ * removed, instead of being recomputed by a scan like
+ * {@link Library.LibraryStats}.
+ * Register an instance with {@link Library#addListener(CatalogListener)}:
+ * it first absorbs the existing catalog, then updates per-genre counts and
+ * page sums in O(1) on every change. Page count minima and maxima and the
+ * year histogram are held as counted tree maps, so adding or removing a book
+ * costs O(log d) in the number of distinct values and removing the current
+ * smallest or largest book needs no rescan. Every read is independent of the
+ * catalog size.
+ * Reads and updates are synchronized, so a monitoring thread can read the
+ * stats while the library is being changed on another thread.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class LiveLibraryStats implements CatalogListener
+{
+    private final int[]                                      genreCounts;
+    private final long[]                                     genrePageSums;
+    private final Map<Genre, NavigableMap<Integer, Integer>> genrePageCounts;
+    private final NavigableMap<Integer, Integer>             pageCounts;
+    private final NavigableMap<Integer, Integer>             yearCounts;
+
+    private int  count;
+    private long pageSum;
+
+    /**
+     * Constructs empty stats, ready to be registered with a library.
+     */
+    public LiveLibraryStats()
+    {
+        genreCounts = new int[Genre.count()];
+        genrePageSums = new long[Genre.count()];
+        genrePageCounts = new EnumMap<>(Genre.class);
+        pageCounts = new TreeMap<>();
+        yearCounts = new TreeMap<>();
+
+        for(final Genre genre : Genre.values())
+        {
+            genrePageCounts.put(genre, new TreeMap<>());
+        }
+    }
+
+    /**
+     * Records an added book.
+     *
+     * @param book the book that was added
+     */
+    @Override
+    public synchronized void bookAdded(final Book book)
+    {
+        record(book);
+    }
+
+    /**
+     * Records a batch of added books under a single lock acquisition.
+     *
+     * @param books the books that were added
+     */
+    @Override
+    public synchronized void booksAdded(final List<Book> books)
+    {
+        for(final Book book : books)
+        {
+            record(book);
+        }
+    }
+
+    /**
+     * Records an added book; the caller holds this object's lock.
+     */
+    private void record(final Book book)
+    {
+        final int genre;
+        genre = book.getGenreType().ordinal();
+
+        genreCounts[genre]++;
+        genrePageSums[genre] += book.getPageCount();
+        increment(genrePageCounts.get(book.getGenreType()), book.getPageCount());
+        increment(pageCounts, book.getPageCount());
+        increment(yearCounts, book.getYearPublished());
+
+        count++;
+        pageSum += book.getPageCount();
+    }
+
+    /**
+     * Records a removed book.
+     *
+     * @param book the book that was removed
+     */
+    @Override
+    public synchronized void bookRemoved(final Book book)
+    {
+        final int genre;
+        genre = book.getGenreType().ordinal();
+
+        genreCounts[genre]--;
+        genrePageSums[genre] -= book.getPageCount();
+        decrement(genrePageCounts.get(book.getGenreType()), book.getPageCount());
+        decrement(pageCounts, book.getPageCount());
+        decrement(yearCounts, book.getYearPublished());
+
+        count--;
+        pageSum -= book.getPageCount();
+    }
+
+    /**
+     * Returns the number of books in the catalog.
+     *
+     * @return the book count
+     */
+    public synchronized int size()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the number of books whose genre matches the given value.
+     *
+     * @param genre the genre to match
+     * @return count of matching books
+     */
+    public int countByGenre(final String genre)
+    {
+        final Genre resolved;
+        resolved = Genre.lookup(genre);
+
+        return resolved == null ? 0 : countByGenre(resolved);
+    }
+
+    /**
+     * Returns the number of books of the given genre.
+     *
+     * @param genre the genre to match
+     * @return count of matching books
+     */
+    public synchronized int countByGenre(final Genre genre)
+    {
+        validateGenre(genre);
+        return genreCounts[genre.ordinal()];
+    }
+
+    /**
+     * Returns the average page count across all books.
+     *
+     * @return mean page count as a double, NaN if there are no books
+     */
+    public synchronized double averagePageCount()
+    {
+        return (double) pageSum / count;
+    }
+
+    /**
+     * Returns the average page count of the books of one genre.
+     *
+     * @param genre the genre to average
+     * @return mean page count as a double, NaN if there are no such books
+     */
+    public synchronized double averagePageCount(final Genre genre)
+    {
+        validateGenre(genre);
+        return (double) genrePageSums[genre.ordinal()] / genreCounts[genre.ordinal()];
+    }
+
+    /**
+     * Returns the total page count of all books.
+     *
+     * @return the sum of page counts
+     */
+    public synchronized long totalPageCount()
+    {
+        return pageSum;
+    }
+
+    /**
+     * Returns the total page count of the books of one genre.
+     *
+     * @param genre the genre to sum
+     * @return the sum of page counts
+     */
+    public synchronized long totalPageCount(final Genre genre)
+    {
+        validateGenre(genre);
+        return genrePageSums[genre.ordinal()];
+    }
+
+    /**
+     * Returns the smallest page count of any book.
+     *
+     * @return the minimum page count
+     */
+    public synchronized int getSmallestPageCount()
+    {
+        validateNotEmpty(pageCounts);
+        return pageCounts.firstKey();
+    }
+
+    /**
+     * Returns the largest page count of any book.
+     *
+     * @return the maximum page count
+     */
+    public synchronized int getLargestPageCount()
+    {
+        validateNotEmpty(pageCounts);
+        return pageCounts.lastKey();
+    }
+
+    /**
+     * Returns the smallest page count of any book of one genre.
+     *
+     * @param genre the genre to examine
+     * @return the minimum page count
+     */
+    public synchronized int getSmallestPageCount(final Genre genre)
+    {
+        validateGenre(genre);
+        validateNotEmpty(genrePageCounts.get(genre));
+        return genrePageCounts.get(genre).firstKey();
+    }
+
+    /**
+     * Returns the largest page count of any book of one genre.
+     *
+     * @param genre the genre to examine
+     * @return the maximum page count
+     */
+    public synchronized int getLargestPageCount(final Genre genre)
+    {
+        validateGenre(genre);
+        validateNotEmpty(genrePageCounts.get(genre));
+        return genrePageCounts.get(genre).lastKey();
+    }
+
+    /**
+     * Returns the number of books published in the given year.
+     *
+     * @param year the year to look up
+     * @return count of books from that year
+     */
+    public synchronized int countPublishedIn(final int year)
+    {
+        return yearCounts.getOrDefault(year, 0);
+    }
+
+    /**
+     * Returns a copy of the year histogram: the number of books per year
+     * published, for every year with at least one book.
+     *
+     * @return book counts keyed by year, in year order
+     */
+    public synchronized SortedMap<Integer, Integer> yearHistogram()
+    {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(yearCounts));
+    }
+
+    /**
+     * Adds one occurrence of a value to a counted map.
+     */
+    private static void increment(final NavigableMap<Integer, Integer> counts,
+                                  final int                            value)
+    {
+        counts.merge(value, 1, Integer::sum);
+    }
+
+    /**
+     * Removes one occurrence of a value from a counted map, dropping the
+     * value once none are left.
+     */
+    private static void decrement(final NavigableMap<Integer, Integer> counts,
+                                  final int                            value)
+    {
+        counts.computeIfPresent(value, (key, occurrences) -> occurrences == 1 ? null : occurrences - 1);
+    }
+
+    /**
+     * @throws IllegalArgumentException if genre is null
+     */
+    private static void validateGenre(final Genre genre)
+    {
+        if(genre == null)
+        {
+            throw new IllegalArgumentException("Genre must not be null.");
+        }
+    }
+
+    /**
+     * Validates that there is a book to take a minimum or maximum of.
+     *
+     * @throws IllegalStateException if there are no matching books
+     */
+    private static void validateNotEmpty(final NavigableMap<Integer, Integer> counts)
+    {
+        if(counts.isEmpty())
+        {
+            throw new IllegalStateException("No books to examine.");
+        }
+    }
+}
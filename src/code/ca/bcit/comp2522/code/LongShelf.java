@@ -0,0 +1,222 @@
+package ca.bcit.comp2522.code;
+
+import java.util.Arrays;
+
+/**
+ * A shelf of primitive {@code long} values, such as running totals or ids.
+ * The {@code long} counterpart of {@link IntShelf}: values live in a growable
+ * {@code long[]} without boxing, and the extremes and sum are updated as
+ * values are added.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class LongShelf
+{
+    /** Capacity used by the no-argument constructor. */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Factor by which the backing array grows when full. */
+    private static final int GROWTH_FACTOR = 2;
+
+    /** Lowest accepted percentile. */
+    private static final double MIN_PERCENTILE = 0.0;
+
+    /** Highest accepted percentile. */
+    private static final double MAX_PERCENTILE = 100.0;
+
+    private long[]  values;
+    private int     size;
+    private long    smallest;
+    private long    largest;
+    private long    sum;
+    private double  approximateSum;
+    private boolean sumOverflowed;
+    private boolean sorted;
+
+    /**
+     * Constructs an empty LongShelf.
+     */
+    public LongShelf()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty LongShelf sized for the expected number of values.
+     *
+     * @param initialCapacity the number of values to reserve room for
+     */
+    public LongShelf(final int initialCapacity)
+    {
+        validateCapacity(initialCapacity);
+
+        values = new long[initialCapacity];
+        sorted = true;
+    }
+
+    /**
+     * Adds a value to this shelf.
+     *
+     * @param value the value to add
+     */
+    public void add(final long value)
+    {
+        if(size == values.length)
+        {
+            values = Arrays.copyOf(values, Math.max(DEFAULT_CAPACITY, size * GROWTH_FACTOR));
+        }
+
+        if(size == 0)
+        {
+            smallest = value;
+            largest  = value;
+        }
+        else
+        {
+            sorted   = sorted && value >= values[size - 1];
+            smallest = Math.min(smallest, value);
+            largest  = Math.max(largest, value);
+        }
+
+        final long newSum;
+        newSum = sum + value;
+
+        // Overflow happened iff both operands share a sign the result lacks
+        sumOverflowed  = sumOverflowed || ((sum ^ newSum) & (value ^ newSum)) < 0;
+        sum            = newSum;
+        approximateSum += value;
+
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Returns the smallest value.
+     *
+     * @return the smallest value
+     */
+    public long getSmallest()
+    {
+        validateNotEmpty();
+        return smallest;
+    }
+
+    /**
+     * Returns the largest value.
+     *
+     * @return the largest value
+     */
+    public long getLargest()
+    {
+        validateNotEmpty();
+        return largest;
+    }
+
+    /**
+     * Returns the exact sum of all values.
+     *
+     * @return the sum
+     * @throws ArithmeticException if the sum does not fit in a {@code long}
+     */
+    public long sum()
+    {
+        if(sumOverflowed)
+        {
+            throw new ArithmeticException("Sum overflows a long.");
+        }
+
+        return sum;
+    }
+
+    /**
+     * Returns the arithmetic mean of all values.
+     *
+     * @return the mean as a double
+     */
+    public double mean()
+    {
+        validateNotEmpty();
+        return sumOverflowed ? approximateSum / size : (double) sum / size;
+    }
+
+    /**
+     * Returns the value at the given percentile using the nearest-rank method.
+     * The first call after unsorted adds sorts the backing array in place;
+     * later calls are O(1) until another out-of-order value is added.
+     *
+     * @param percentile the percentile, from 0 to 100 inclusive
+     * @return the smallest value with at least that share of values at or below it
+     */
+    public long percentile(final double percentile)
+    {
+        validateNotEmpty();
+        validatePercentile(percentile);
+
+        if(!sorted)
+        {
+            Arrays.sort(values, 0, size);
+            sorted = true;
+        }
+
+        final int rank;
+        rank = (int) Math.ceil(percentile / MAX_PERCENTILE * size);
+
+        return values[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Returns the number of values on this shelf.
+     *
+     * @return the value count
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns whether this shelf holds no values.
+     *
+     * @return true if the shelf is empty
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if initialCapacity is negative
+     */
+    private static void validateCapacity(final int initialCapacity)
+    {
+        if(initialCapacity < 0)
+        {
+            throw new IllegalArgumentException("Initial capacity must not be negative.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if percentile is outside 0 to 100
+     */
+    private static void validatePercentile(final double percentile)
+    {
+        if(!(percentile >= MIN_PERCENTILE && percentile <= MAX_PERCENTILE))
+        {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+    }
+
+    /**
+     * Validates that the shelf is not empty before a query.
+     *
+     * @throws IllegalStateException if the shelf is empty
+     */
+    private void validateNotEmpty()
+    {
+        if(size == 0)
+        {
+            throw new IllegalStateException("Shelf is empty.");
+        }
+    }
+}
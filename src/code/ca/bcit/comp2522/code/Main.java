@@ -1,7 +1,6 @@
 package ca.bcit.comp2522.code;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.function.Consumer;
@@ -21,6 +20,9 @@ public final class Main
     /** Index of the first book used in single-book demonstrations. */
     private static final int FIRST_BOOK_INDEX = 0;
 
+    /** Patron who borrows the book in Task 7. */
+    private static final String DEMO_PATRON = "Demo Patron";
+
     private Main() { }
 
     // Task 1
@@ -62,7 +64,8 @@ public final class Main
     // Task 7
 
     /**
-     * Demonstrates a local inner class by printing a checkout receipt.
+     * Checks a book out through the library's {@link CheckoutDesk} and
+     * demonstrates a local inner class by printing the returned receipt.
      *
      * @param lib  the library the book is checked out from
      * @param book the book being checked out
@@ -70,20 +73,25 @@ public final class Main
     private static void processCheckout(final ca.bcit.comp2522.code.Library lib,
                                         final ca.bcit.comp2522.code.Book book)
     {
-        // CheckoutReceipt captures lib and book, both are final
-        class CheckoutReceipt
+        final CheckoutReceipt receipt;
+        receipt = lib.getCheckoutDesk()
+                     .checkout(book, DEMO_PATRON)
+                     .orElseThrow(() -> new IllegalStateException(book.getTitle() + " is already checked out."));
+
+        // ReceiptPrinter captures receipt, which is final
+        class ReceiptPrinter
         {
             void print()
             {
-                System.out.println("Library : " + lib.getName());
-                System.out.println("Book    : " + book.getTitle());
-                System.out.println("Year    : " + book.getYearPublished());
+                System.out.println("Library : " + receipt.getLibraryName());
+                System.out.println("Book    : " + receipt.getBook().getTitle());
+                System.out.println("Year    : " + receipt.getBook().getYearPublished());
             }
         }
 
-        final CheckoutReceipt receipt;
-        receipt = new CheckoutReceipt();
-        receipt.print();
+        final ReceiptPrinter printer;
+        printer = new ReceiptPrinter();
+        printer.print();
     }
 
     // Sample data
@@ -244,10 +252,12 @@ public final class Main
         // Non-static - must be created via an existing Library instance
         final ca.bcit.comp2522.code.Library.Librarian librarian;
         librarian = library.new Librarian("Alex");
-        librarian.recommend();
+        librarian.recommend().ifPresent(book ->
+                System.out.println(librarian.getName() + " at " + library.getName() +
+                        " recommends: " + book));
 
-        // Task 7 - CheckoutReceipt Local Inner Class
-        System.out.println("\nTask 7: CheckoutReceipt Local Inner Class");
+        // Task 7 - ReceiptPrinter Local Inner Class
+        System.out.println("\nTask 7: ReceiptPrinter Local Inner Class");
         System.out.println(SEPARATOR);
 
         processCheckout(library, catalog.get(FIRST_BOOK_INDEX));
@@ -256,7 +266,9 @@ public final class Main
         System.out.println("\nTask 8: Anonymous Inner Class Comparator");
         System.out.println(SEPARATOR);
 
-        Collections.sort(catalog, new Comparator<ca.bcit.comp2522.code.Book>()
+        // Sorts a snapshot, so the library's own catalog keeps its order
+        final List<ca.bcit.comp2522.code.Book> sorted;
+        sorted = library.snapshot().sorted(new Comparator<ca.bcit.comp2522.code.Book>()
         {
             @Override
             public int compare(final ca.bcit.comp2522.code.Book b1, final ca.bcit.comp2522.code.Book b2)
@@ -266,6 +278,6 @@ public final class Main
         });
 
         System.out.println("Catalog sorted by page count (descending):");
-        catalog.forEach(Main::printBook);
+        sorted.forEach(Main::printBook);
     }
 }
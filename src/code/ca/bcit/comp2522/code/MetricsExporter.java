@@ -0,0 +1,29 @@
+package ca.bcit.comp2522.code;
+
+/**
+ * Receives the current metrics from {@link LibraryMetrics#exportTo(MetricsExporter)},
+ * for example to print them or push them to a monitoring system.
+ * Implementations are called on the exporting thread, once per timer and
+ * once per gauge.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public interface MetricsExporter
+{
+    /**
+     * Exports one timer.
+     *
+     * @param timer the timer, whose count and latencies can be read
+     */
+    void exportTimer(LibraryMetrics.Timer timer);
+
+    /**
+     * Exports one gauge reading.
+     *
+     * @param name  the gauge name
+     * @param value the current value
+     */
+    void exportGauge(String name,
+                     long   value);
+}
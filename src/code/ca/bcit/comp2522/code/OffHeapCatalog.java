@@ -0,0 +1,1040 @@
+package ca.bcit.comp2522.code;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A catalog stored outside the Java heap, for catalogs of a
+ * hundred million books, up to {@code 2^27}.
+ * <p>
+ * Books are stored in direct {@link ByteBuffer} chunks of 65,536 records,
+ * laid out as columns within each chunk:
+ * <pre>
+ *   page counts   int per book
+ *   years         int per book
+ *   title hashes  int per book
+ *   title refs    long per book: title chunk in the high half, offset in the low
+ *   genres        ordinal byte per book
+ * </pre>
+ * Titles are written once, as a length-prefixed UTF-8 string, into 16 MB
+ * title chunks and addressed by offset. Lookups by title go through an
+ * off-heap open-addressing table of positions keyed by title hash, and
+ * titles are compared as bytes without decoding. Genre counts and page
+ * totals are kept as books are added. The heap holds only the chunk
+ * handles and a few counters, so the garbage collector has almost nothing
+ * to trace; each book takes 21 bytes of direct memory in the columns, 8 to
+ * 16 in the title table, and its title bytes plus a 4 byte length. Direct
+ * memory is limited by {@code -XX:MaxDirectMemorySize} and released when
+ * the catalog becomes unreachable.
+ * <p>
+ * As a {@link List}, {@link #get(int)} returns a new {@link Book} decoded
+ * from the columns on each access; these are short-lived values, so two
+ * calls for the same position return distinct books with the same fields. A
+ * {@link Cursor} reads fields in place without creating books at all.
+ * Because the catalog holds no Book objects, {@link #indexOf(Object)},
+ * {@link #contains(Object)} and {@link #remove(Object)} match a book by
+ * value: its title, genre, year and page count. Removing a book moves
+ * every later record down and rebuilds the title table, so like
+ * {@link ArrayList#remove(int)} it takes time proportional to the size;
+ * its title bytes are not reclaimed until the catalog is sorted.
+ * {@link #sort(Comparator)} decodes every book onto the heap, sorts them
+ * and writes them back into new chunks. Books cannot be replaced in place.
+ * Passing an OffHeapCatalog to {@link Library#Library(String, List)} makes
+ * it the library's storage instead of copying it onto the heap; from then
+ * on, books must be added and removed through the library, or its
+ * listeners miss them.
+ * Safe for concurrent reads while the catalog is not being changed.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class OffHeapCatalog extends AbstractList<Book> implements RandomAccess
+{
+    /** Bits of a position that select the record within its chunk. */
+    private static final int CHUNK_BITS = 16;
+
+    /** Records per chunk. */
+    private static final int CHUNK_RECORDS = 1 << CHUNK_BITS;
+
+    /** Mask selecting the record within its chunk. */
+    private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+
+    /** Byte offsets of each column within a record chunk. */
+    private static final int PAGES_COLUMN       = 0;
+    private static final int YEARS_COLUMN       = PAGES_COLUMN + Integer.BYTES * CHUNK_RECORDS;
+    private static final int TITLE_HASH_COLUMN  = YEARS_COLUMN + Integer.BYTES * CHUNK_RECORDS;
+    private static final int TITLE_REF_COLUMN   = TITLE_HASH_COLUMN + Integer.BYTES * CHUNK_RECORDS;
+    private static final int GENRE_COLUMN       = TITLE_REF_COLUMN + Long.BYTES * CHUNK_RECORDS;
+    private static final int RECORD_CHUNK_BYTES = GENRE_COLUMN + Byte.BYTES * CHUNK_RECORDS;
+
+    /** Size of each title chunk; a longer title gets a chunk of its own. */
+    private static final int TITLE_CHUNK_BYTES = 1 << 24;
+
+    /** Bits the title chunk index is shifted by in a title ref. */
+    private static final int TITLE_CHUNK_SHIFT = Integer.SIZE;
+
+    /** Mask selecting the offset from a title ref. */
+    private static final long TITLE_OFFSET_MASK = 0xFFFF_FFFFL;
+
+    /** Slots in the title table before its first growth. */
+    private static final int INITIAL_TABLE_SLOTS = 1 << 10;
+
+    /** The title table grows once it is more than half full. */
+    private static final int TABLE_LOAD_DIVISOR = 2;
+
+    /** Largest title table; its 1 GB buffer stays within a direct buffer's int limit. */
+    private static final int MAX_TABLE_SLOTS = 1 << 28;
+
+    /** Most books the catalog holds while the title table is at most half full. */
+    private static final int MAX_SIZE = MAX_TABLE_SLOTS / TABLE_LOAD_DIVISOR;
+
+    /** Odd multiplier, from the golden ratio, that mixes title hashes into slots. */
+    private static final int HASH_MIX = 0x9E3779B9;
+
+    /** Marks an empty title table slot; slots hold position + 1. */
+    private static final int EMPTY_SLOT = 0;
+
+    private final List<ByteBuffer> recordChunks;
+    private final List<ByteBuffer> titleChunks;
+    private final int[]            genreCounts;
+    private final long[]           genrePageTotals;
+
+    private ByteBuffer titleTable;
+    private int        tableSlots;
+    private int        size;
+    private long       titleBytes;
+
+    /**
+     * Constructs an empty OffHeapCatalog.
+     */
+    public OffHeapCatalog()
+    {
+        this.recordChunks = new ArrayList<>();
+        this.titleChunks = new ArrayList<>();
+        this.genreCounts = new int[Genre.count()];
+        this.genrePageTotals = new long[Genre.count()];
+        this.tableSlots = INITIAL_TABLE_SLOTS;
+        this.titleTable = allocate((long) INITIAL_TABLE_SLOTS * Integer.BYTES);
+    }
+
+    /**
+     * Builds an OffHeapCatalog holding the given books, in order.
+     *
+     * @param books the books to store
+     * @return a new catalog
+     */
+    public static OffHeapCatalog of(final Collection<? extends Book> books)
+    {
+        if(books == null)
+        {
+            throw new IllegalArgumentException("Books must not be null.");
+        }
+
+        final OffHeapCatalog catalog;
+        catalog = new OffHeapCatalog();
+
+        catalog.addAll(books);
+        return catalog;
+    }
+
+    /**
+     * Appends a book, copying its fields off the heap.
+     *
+     * @param book the book to add
+     * @return true
+     * @throws IllegalStateException if the catalog already holds
+     *                               {@code 2^27} books; it is left unchanged
+     */
+    @Override
+    public boolean add(final Book book)
+    {
+        validateBook(book);
+
+        final int        position;
+        final ByteBuffer chunk;
+        final int        record;
+        final byte[]     title;
+        final int        hash;
+
+        if(size == MAX_SIZE)
+        {
+            throw new IllegalStateException("Off-heap catalog is full.");
+        }
+
+        // Make room first, so a failed allocation leaves the catalog as it was
+        if((long) (size + 1) * TABLE_LOAD_DIVISOR > tableSlots)
+        {
+            rebuildTable(tableSlots * 2);
+        }
+
+        position = size;
+        record = position & CHUNK_MASK;
+
+        if(record == 0)
+        {
+            recordChunks.add(allocate(RECORD_CHUNK_BYTES));
+        }
+
+        chunk = recordChunks.get(position >>> CHUNK_BITS);
+        title = book.getTitle().getBytes(StandardCharsets.UTF_8);
+        hash = book.getTitle().hashCode();
+
+        chunk.putInt(PAGES_COLUMN + record * Integer.BYTES, book.getPageCount());
+        chunk.putInt(YEARS_COLUMN + record * Integer.BYTES, book.getYearPublished());
+        chunk.putInt(TITLE_HASH_COLUMN + record * Integer.BYTES, hash);
+        chunk.putLong(TITLE_REF_COLUMN + record * Long.BYTES, writeTitle(title));
+        chunk.put(GENRE_COLUMN + record, (byte) book.getGenreType().ordinal());
+
+        genreCounts[book.getGenreType().ordinal()]++;
+        genrePageTotals[book.getGenreType().ordinal()] += book.getPageCount();
+        size++;
+
+        insert(titleTable, tableSlots, hash, position);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Returns the book at the given position, decoded into a new
+     * {@link Book}.
+     *
+     * @param index the position, from 0
+     * @return the book
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    @Override
+    public Book get(final int index)
+    {
+        checkIndex(index);
+
+        return new Book(titleAt(index),
+                        genreAt(index),
+                        yearAt(index),
+                        pagesAt(index));
+    }
+
+    /**
+     * Returns the number of books.
+     *
+     * @return the size
+     */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the position of the first book with the same title, genre,
+     * year and page count as the given one, found through the title table.
+     *
+     * @param o the book to look for
+     * @return its position, or -1 if no book has those fields
+     */
+    @Override
+    public int indexOf(final Object o)
+    {
+        final Book   book;
+        final byte[] wanted;
+        final int    hash;
+        int          slot;
+        int          entry;
+
+        if(!(o instanceof Book))
+        {
+            return -1;
+        }
+
+        book = (Book) o;
+        wanted = book.getTitle().getBytes(StandardCharsets.UTF_8);
+        hash = book.getTitle().hashCode();
+        slot = slotOf(hash, tableSlots);
+
+        // Positions along a probe run are ascending, so the first match is the earliest
+        while((entry = titleTable.getInt(slot * Integer.BYTES)) != EMPTY_SLOT)
+        {
+            final int position;
+            position = entry - 1;
+
+            if(titleMatches(position, hash, wanted)        &&
+               genreAt(position) == book.getGenreType()    &&
+               yearAt(position) == book.getYearPublished() &&
+               pagesAt(position) == book.getPageCount())
+            {
+                return position;
+            }
+
+            slot = (slot + 1) & (tableSlots - 1);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns whether a book with the same fields as the given one is stored.
+     *
+     * @param o the book to look for
+     * @return true if {@link #indexOf(Object)} finds it
+     */
+    @Override
+    public boolean contains(final Object o)
+    {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Removes the first book with the same fields as the given one.
+     *
+     * @param o the book to remove
+     * @return true if a book was removed
+     */
+    @Override
+    public boolean remove(final Object o)
+    {
+        final int index;
+        index = indexOf(o);
+
+        if(index < 0)
+        {
+            return false;
+        }
+
+        remove(index);
+        return true;
+    }
+
+    /**
+     * Removes the book at the given position, moving every later record
+     * down by one and rebuilding the title table.
+     *
+     * @param index the position, from 0
+     * @return the removed book, decoded
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    @Override
+    public Book remove(final int index)
+    {
+        final Book removed;
+        removed = get(index);
+
+        titleBytes -= titleBytesAt(index).remaining();
+
+        for(int i = index + 1; i < size; i++)
+        {
+            moveRecord(i, i - 1);
+        }
+
+        genreCounts[removed.getGenreType().ordinal()]--;
+        genrePageTotals[removed.getGenreType().ordinal()] -= removed.getPageCount();
+        size--;
+
+        // Keep a chunk only while it holds records, as add expects
+        if((size & CHUNK_MASK) == 0)
+        {
+            recordChunks.remove(recordChunks.size() - 1);
+        }
+
+        rebuildTable(tableSlots);
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Sorts the catalog by decoding every book, sorting them on the heap
+     * and writing them into new chunks in the new order; the sort is stable.
+     * The old chunks are kept until the new ones are written, so a failed
+     * allocation leaves the catalog as it was.
+     *
+     * @param comparator the order to sort by
+     */
+    @Override
+    public void sort(final Comparator<? super Book> comparator)
+    {
+        final Book[]         books;
+        final OffHeapCatalog sorted;
+
+        books = toArray(new Book[0]);
+        Arrays.sort(books, comparator);
+        sorted = of(Arrays.asList(books));
+
+        recordChunks.clear();
+        recordChunks.addAll(sorted.recordChunks);
+        titleChunks.clear();
+        titleChunks.addAll(sorted.titleChunks);
+        titleTable = sorted.titleTable;
+        tableSlots = sorted.tableSlots;
+        titleBytes = sorted.titleBytes;
+        modCount++;
+    }
+
+    /**
+     * Returns the first book added with exactly the given title.
+     *
+     * @param title the title to look up
+     * @return the matching book, or empty if none has that title
+     */
+    public Optional<Book> findByTitle(final String title)
+    {
+        final int position;
+        position = title == null ? -1 : firstTitled(title);
+
+        return position < 0 ? Optional.empty() : Optional.of(get(position));
+    }
+
+    /**
+     * Returns every book with exactly the given title, in the order added.
+     *
+     * @param title the title to look up
+     * @return the matching books
+     */
+    public List<Book> booksTitled(final String title)
+    {
+        final List<Book> matches;
+        final byte[]     wanted;
+        final int        hash;
+        int              slot;
+        int              entry;
+
+        matches = new ArrayList<>();
+
+        if(title == null)
+        {
+            return matches;
+        }
+
+        wanted = title.getBytes(StandardCharsets.UTF_8);
+        hash = title.hashCode();
+        slot = slotOf(hash, tableSlots);
+
+        // Positions along a probe run are ascending, so matches come out in order
+        while((entry = titleTable.getInt(slot * Integer.BYTES)) != EMPTY_SLOT)
+        {
+            if(titleMatches(entry - 1, hash, wanted))
+            {
+                matches.add(get(entry - 1));
+            }
+
+            slot = (slot + 1) & (tableSlots - 1);
+        }
+
+        return matches;
+    }
+
+    /**
+     * Returns the books of the given genre, in the order added, scanning
+     * only the genre column.
+     *
+     * @param genre the genre to match
+     * @return the matching books
+     */
+    public List<Book> booksOfGenre(final Genre genre)
+    {
+        final List<Book> matches;
+        final byte       code;
+
+        matches = new ArrayList<>(countByGenre(genre));
+        code = (byte) genre.ordinal();
+
+        for(int i = 0; i < size; i++)
+        {
+            if(recordChunk(i).get(GENRE_COLUMN + (i & CHUNK_MASK)) == code)
+            {
+                matches.add(get(i));
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Returns the books published in the given range of years, ordered by
+     * year and then by the order added, scanning only the year column.
+     *
+     * @param from the earliest year, inclusive
+     * @param to   the latest year, inclusive
+     * @return the matching books
+     */
+    public List<Book> booksPublishedBetween(final int from,
+                                           final int to)
+    {
+        final List<Book> matches;
+        matches = new ArrayList<>();
+
+        for(int i = 0; i < size; i++)
+        {
+            final int year;
+            year = yearAt(i);
+
+            if(year >= from && year <= to)
+            {
+                matches.add(get(i));
+            }
+        }
+
+        // Stable, so books of the same year keep the order they were added in
+        matches.sort(Book.BY_YEAR_PUBLISHED);
+        return matches;
+    }
+
+    /**
+     * Returns the number of books of the given genre in constant time.
+     *
+     * @param genre the genre to count
+     * @return count of matching books
+     */
+    public int countByGenre(final Genre genre)
+    {
+        return genre == null ? 0 : genreCounts[genre.ordinal()];
+    }
+
+    /**
+     * Returns the average page count across all books in constant time.
+     *
+     * @return mean page count as a double
+     */
+    public double averagePageCount()
+    {
+        long total;
+        total = 0;
+
+        for(final long genreTotal : genrePageTotals)
+        {
+            total += genreTotal;
+        }
+
+        return (double) total / size;
+    }
+
+    /**
+     * Returns the direct memory held by the catalog, including unused room
+     * in its last chunks and the title table.
+     *
+     * @return the allocated bytes
+     */
+    public long offHeapBytes()
+    {
+        return (long) recordChunks.size() * RECORD_CHUNK_BYTES +
+               (long) titleChunks.size() * TITLE_CHUNK_BYTES   +
+               (long) tableSlots * Integer.BYTES;
+    }
+
+    /**
+     * Returns the UTF-8 bytes of the titles of the books held.
+     *
+     * @return the title bytes, excluding length prefixes
+     */
+    public long titleBytes()
+    {
+        return titleBytes;
+    }
+
+    /**
+     * Returns a cursor for reading books in place.
+     *
+     * @return a new cursor at position 0
+     */
+    public Cursor cursor()
+    {
+        return new Cursor();
+    }
+
+    /**
+     * Returns every position, ordered by the score of the book there, highest
+     * first, with equal scores in position order. Each book is decoded once
+     * to be scored; only the scores and positions are kept on the heap.
+     *
+     * @param scorer scores a book
+     * @return the positions, best first
+     */
+    int[] positionsByScore(final ToDoubleFunction<? super Book> scorer)
+    {
+        final double[] scores;
+        final int[]    positions;
+
+        scores = new double[size];
+        positions = new int[size];
+
+        for(int i = 0; i < size; i++)
+        {
+            scores[i] = scorer.applyAsDouble(get(i));
+            positions[i] = i;
+        }
+
+        sortPositions(positions, (first, second) -> Double.compare(scores[second], scores[first]));
+        return positions;
+    }
+
+    /**
+     * Returns a copy of the positions ordered by page count, reading only
+     * the page count column; positions with equal page counts keep their
+     * order.
+     *
+     * @param positions the positions to order
+     * @return the reordered copy
+     */
+    int[] positionsByPageCount(final int[] positions)
+    {
+        final int[] ordered;
+        ordered = positions.clone();
+
+        sortPositions(ordered, (first, second) -> Integer.compare(pagesAt(first), pagesAt(second)));
+        return ordered;
+    }
+
+    /**
+     * Splits positions into groups by a key computed from each position,
+     * keeping their order within each group.
+     *
+     * @param positions the positions to group
+     * @param key       computes a position's group key
+     * @return the positions in each group, by key
+     */
+    Map<Integer, int[]> groupPositions(final int[]            positions,
+                                       final IntUnaryOperator key)
+    {
+        final Map<Integer, int[]> filled;
+        final Map<Integer, int[]> groups;
+
+        filled = new HashMap<>();
+        groups = new HashMap<>();
+
+        // Count first, so each group is allocated once at its final size
+        for(final int position : positions)
+        {
+            filled.computeIfAbsent(key.applyAsInt(position), group -> new int[1])[0]++;
+        }
+
+        for(final Map.Entry<Integer, int[]> group : filled.entrySet())
+        {
+            groups.put(group.getKey(), new int[group.getValue()[0]]);
+            group.getValue()[0] = 0;
+        }
+
+        for(final int position : positions)
+        {
+            final int   group;
+            final int[] count;
+
+            group = key.applyAsInt(position);
+            count = filled.get(group);
+            groups.get(group)[count[0]++] = position;
+        }
+
+        return groups;
+    }
+
+    /**
+     * Returns a read-only list of the books at the given positions, each
+     * decoded when it is read. The list is only meaningful until the
+     * catalog next changes.
+     *
+     * @param positions the positions to view
+     * @return the books at those positions, in the order given
+     */
+    List<Book> booksAt(final int[] positions)
+    {
+        return new PositionList(positions);
+    }
+
+    /**
+     * Returns a key that is equal for books with the same title, genre, year
+     * and page count, which is how this catalog tells books apart.
+     *
+     * @param book the book to key
+     * @return the book's value key
+     */
+    static Object keyOf(final Book book)
+    {
+        return List.of(book.getTitle(), book.getGenreType(), book.getYearPublished(), book.getPageCount());
+    }
+
+    /**
+     * A view of the books at a list of positions.
+     */
+    private final class PositionList extends AbstractList<Book> implements RandomAccess
+    {
+        private final int[] positions;
+
+        private PositionList(final int[] positions)
+        {
+            this.positions = positions;
+        }
+
+        @Override
+        public Book get(final int index)
+        {
+            return OffHeapCatalog.this.get(positions[index]);
+        }
+
+        @Override
+        public int size()
+        {
+            return positions.length;
+        }
+    }
+
+    /**
+     * Reads one book at a time straight from the columns. A cursor is moved
+     * with {@link #moveTo(int)} and reused, so scanning a catalog through it
+     * creates no objects except for the titles it is asked to decode.
+     */
+    public final class Cursor
+    {
+        private int position;
+
+        private Cursor() { }
+
+        /**
+         * Moves to the book at the given position.
+         *
+         * @param index the position, from 0
+         * @return this cursor
+         * @throws IndexOutOfBoundsException if index is out of range
+         */
+        public Cursor moveTo(final int index)
+        {
+            checkIndex(index);
+
+            position = index;
+            return this;
+        }
+
+        /**
+         * Returns the current book's title, decoded from UTF-8.
+         *
+         * @return the title
+         */
+        public String getTitle()
+        {
+            return titleAt(position);
+        }
+
+        /**
+         * Returns the current book's genre.
+         *
+         * @return the genre
+         */
+        public Genre getGenreType()
+        {
+            return genreAt(position);
+        }
+
+        /**
+         * Returns the current book's year published.
+         *
+         * @return the year
+         */
+        public int getYearPublished()
+        {
+            return yearAt(position);
+        }
+
+        /**
+         * Returns the current book's page count.
+         *
+         * @return the page count
+         */
+        public int getPageCount()
+        {
+            return pagesAt(position);
+        }
+    }
+
+    private ByteBuffer recordChunk(final int index)
+    {
+        return recordChunks.get(index >>> CHUNK_BITS);
+    }
+
+    int pagesAt(final int index)
+    {
+        return recordChunk(index).getInt(PAGES_COLUMN + (index & CHUNK_MASK) * Integer.BYTES);
+    }
+
+    int yearAt(final int index)
+    {
+        return recordChunk(index).getInt(YEARS_COLUMN + (index & CHUNK_MASK) * Integer.BYTES);
+    }
+
+    Genre genreAt(final int index)
+    {
+        return Genre.ofOrdinal(recordChunk(index).get(GENRE_COLUMN + (index & CHUNK_MASK)));
+    }
+
+    private long titleRefAt(final int index)
+    {
+        return recordChunk(index).getLong(TITLE_REF_COLUMN + (index & CHUNK_MASK) * Long.BYTES);
+    }
+
+    private int titleHashAt(final int index)
+    {
+        return recordChunk(index).getInt(TITLE_HASH_COLUMN + (index & CHUNK_MASK) * Integer.BYTES);
+    }
+
+    /**
+     * Returns a read-only view of the UTF-8 bytes of a book's title.
+     */
+    private ByteBuffer titleBytesAt(final int index)
+    {
+        final long       ref;
+        final ByteBuffer chunk;
+        final int        offset;
+
+        ref = titleRefAt(index);
+        chunk = titleChunks.get((int) (ref >>> TITLE_CHUNK_SHIFT));
+        offset = (int) (ref & TITLE_OFFSET_MASK);
+
+        return chunk.slice(offset + Integer.BYTES, chunk.getInt(offset));
+    }
+
+    private String titleAt(final int index)
+    {
+        final ByteBuffer encoded;
+        final byte[]     bytes;
+
+        encoded = titleBytesAt(index);
+        bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns whether a book's title is the given one, comparing hashes
+     * first and then bytes, without decoding.
+     */
+    private boolean titleMatches(final int    index,
+                                 final int    hash,
+                                 final byte[] wanted)
+    {
+        return titleHashAt(index) == hash && titleBytesAt(index).equals(ByteBuffer.wrap(wanted));
+    }
+
+    /**
+     * Returns the position of the first book with the given title, or -1.
+     */
+    private int firstTitled(final String title)
+    {
+        final byte[] wanted;
+        final int    hash;
+        int          slot;
+        int          entry;
+
+        wanted = title.getBytes(StandardCharsets.UTF_8);
+        hash = title.hashCode();
+        slot = slotOf(hash, tableSlots);
+
+        while((entry = titleTable.getInt(slot * Integer.BYTES)) != EMPTY_SLOT)
+        {
+            if(titleMatches(entry - 1, hash, wanted))
+            {
+                return entry - 1;
+            }
+
+            slot = (slot + 1) & (tableSlots - 1);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Copies a title into the current title chunk, starting a new chunk when
+     * it does not fit, and returns its ref.
+     */
+    private long writeTitle(final byte[] title)
+    {
+        final int  needed;
+        ByteBuffer chunk;
+
+        needed = Integer.BYTES + title.length;
+        chunk = titleChunks.isEmpty() ? null : titleChunks.get(titleChunks.size() - 1);
+
+        if(chunk == null || chunk.remaining() < needed)
+        {
+            chunk = allocate(Math.max(TITLE_CHUNK_BYTES, needed));
+            titleChunks.add(chunk);
+        }
+
+        final long ref;
+        ref = ((long) (titleChunks.size() - 1) << TITLE_CHUNK_SHIFT) | chunk.position();
+
+        chunk.putInt(title.length);
+        chunk.put(title);
+        titleBytes += title.length;
+        return ref;
+    }
+
+    /**
+     * Rebuilds the title table with the given number of slots, reusing the
+     * current table if it is that size, and reinserts every position in
+     * order, so probe runs stay in ascending position order.
+     */
+    private void rebuildTable(final int slots)
+    {
+        final ByteBuffer table;
+
+        if(slots == tableSlots)
+        {
+            table = titleTable;
+
+            for(int slot = 0; slot < slots; slot++)
+            {
+                table.putInt(slot * Integer.BYTES, EMPTY_SLOT);
+            }
+        }
+        else
+        {
+            table = allocate((long) slots * Integer.BYTES);
+        }
+
+        for(int i = 0; i < size; i++)
+        {
+            insert(table, slots, titleHashAt(i), i);
+        }
+
+        titleTable = table;
+        tableSlots = slots;
+    }
+
+    /**
+     * Copies every column of one record over another.
+     */
+    private void moveRecord(final int from,
+                            final int to)
+    {
+        final ByteBuffer source;
+        final ByteBuffer target;
+        final int        read;
+        final int        write;
+
+        source = recordChunk(from);
+        target = recordChunk(to);
+        read = from & CHUNK_MASK;
+        write = to & CHUNK_MASK;
+
+        target.putInt(PAGES_COLUMN + write * Integer.BYTES, source.getInt(PAGES_COLUMN + read * Integer.BYTES));
+        target.putInt(YEARS_COLUMN + write * Integer.BYTES, source.getInt(YEARS_COLUMN + read * Integer.BYTES));
+        target.putInt(TITLE_HASH_COLUMN + write * Integer.BYTES, source.getInt(TITLE_HASH_COLUMN + read * Integer.BYTES));
+        target.putLong(TITLE_REF_COLUMN + write * Long.BYTES, source.getLong(TITLE_REF_COLUMN + read * Long.BYTES));
+        target.put(GENRE_COLUMN + write, source.get(GENRE_COLUMN + read));
+    }
+
+    private static void insert(final ByteBuffer table,
+                               final int        slots,
+                               final int        hash,
+                               final int        position)
+    {
+        int slot;
+        slot = slotOf(hash, slots);
+
+        while(table.getInt(slot * Integer.BYTES) != EMPTY_SLOT)
+        {
+            slot = (slot + 1) & (slots - 1);
+        }
+
+        table.putInt(slot * Integer.BYTES, position + 1);
+    }
+
+    /**
+     * Returns the home slot of a hash, mixing its bits so titles that share
+     * a prefix spread across the table.
+     */
+    private static int slotOf(final int hash,
+                              final int slots)
+    {
+        final int mixed;
+        mixed = hash * HASH_MIX;
+
+        return (mixed ^ (mixed >>> Short.SIZE)) & (slots - 1);
+    }
+
+    /**
+     * Sorts positions with a stable merge sort, so positions the order
+     * treats as equal keep their order.
+     */
+    private static void sortPositions(final int[]             positions,
+                                      final IntBinaryOperator order)
+    {
+        int[] from;
+        int[] to;
+
+        from = positions;
+        to = new int[positions.length];
+
+        for(int width = 1; width < positions.length; width *= 2)
+        {
+            for(int low = 0; low < positions.length; low += 2 * width)
+            {
+                final int middle;
+                final int high;
+                int       left;
+                int       right;
+                int       next;
+
+                middle = Math.min(low + width, positions.length);
+                high = Math.min(low + 2 * width, positions.length);
+                left = low;
+                right = middle;
+                next = low;
+
+                while(left < middle && right < high)
+                {
+                    to[next++] = order.applyAsInt(from[right], from[left]) < 0 ? from[right++] : from[left++];
+                }
+
+                System.arraycopy(from, left, to, next, middle - left);
+                System.arraycopy(from, right, to, next + middle - left, high - right);
+            }
+
+            final int[] merged;
+            merged = to;
+            to = from;
+            from = merged;
+        }
+
+        if(from != positions)
+        {
+            System.arraycopy(from, 0, positions, 0, positions.length);
+        }
+    }
+
+    /**
+     * @throws ArithmeticException if bytes does not fit in one direct buffer
+     */
+    private static ByteBuffer allocate(final long bytes)
+    {
+        return ByteBuffer.allocateDirect(Math.toIntExact(bytes)).order(ByteOrder.nativeOrder());
+    }
+
+    private void checkIndex(final int index)
+    {
+        if(index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size + ".");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if book is null
+     */
+    private static void validateBook(final Book book)
+    {
+        if(book == null)
+        {
+            throw new IllegalArgumentException("Book must not be null.");
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package ca.bcit.comp2522.code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes per-genre catalog statistics in a single parallel pass.
+ * The catalog is split into index ranges that are summarized on a
+ * {@link ForkJoinPool}; each range produces a count, {@code long} page sum,
+ * min, max and page count histogram per genre, and partial results are
+ * merged pairwise on the way back up.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class ParallelLibraryStats
+{
+    /** Page count covered by each histogram bucket by default. */
+    public static final int DEFAULT_BUCKET_WIDTH = 100;
+
+    /** Number of histogram buckets by default; the last holds everything above. */
+    public static final int DEFAULT_BUCKET_COUNT = 16;
+
+    /** Ranges at or below this many books are summarized sequentially. */
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+    private final ForkJoinPool pool;
+    private final int          bucketWidth;
+    private final int          bucketCount;
+
+    /**
+     * Constructs a ParallelLibraryStats on the common pool with default buckets.
+     */
+    public ParallelLibraryStats()
+    {
+        this(ForkJoinPool.commonPool(), DEFAULT_BUCKET_WIDTH, DEFAULT_BUCKET_COUNT);
+    }
+
+    /**
+     * Constructs a ParallelLibraryStats with the given pool and histogram shape.
+     *
+     * @param pool        the pool that runs the split tasks
+     * @param bucketWidth the page count covered by each histogram bucket
+     * @param bucketCount the number of histogram buckets
+     */
+    public ParallelLibraryStats(final ForkJoinPool pool,
+                                final int          bucketWidth,
+                                final int          bucketCount)
+    {
+        validatePool(pool);
+        validatePositive(bucketWidth, "Bucket width");
+        validatePositive(bucketCount, "Bucket count");
+
+        this.pool = pool;
+        this.bucketWidth = bucketWidth;
+        this.bucketCount = bucketCount;
+    }
+
+    /**
+     * Summarizes every genre of the given books.
+     *
+     * @param books the books to examine
+     * @return one summary per genre, in genre order
+     */
+    public Map<String, GenreSummary> summarize(final List<Book> books)
+    {
+        validateBooks(books);
+
+        final List<Book> indexable;
+
+        if(books instanceof RandomAccess)
+        {
+            indexable = books;
+        }
+        else
+        {
+            indexable = new ArrayList<>(books);
+        }
+
+        return toSummaries(pool.invoke(new BookTask(indexable, 0, indexable.size())));
+    }
+
+    /**
+     * Summarizes every genre of the given columnar catalog.
+     *
+     * @param columns the catalog to examine
+     * @return one summary per genre, in genre order
+     */
+    public Map<String, GenreSummary> summarize(final ColumnarCatalog columns)
+    {
+        validateColumns(columns);
+        return toSummaries(pool.invoke(new ColumnTask(columns, 0, columns.size())));
+    }
+
+    private Map<String, GenreSummary> toSummaries(final Accumulator[] accumulators)
+    {
+        final Map<String, GenreSummary> summaries;
+        summaries = new LinkedHashMap<>();
+
+        for(int code = 0; code < accumulators.length; code++)
+        {
+            final String genre;
+            genre = ColumnarCatalog.genreOf(code);
+
+            summaries.put(genre, accumulators[code].toSummary(genre, bucketWidth));
+        }
+
+        return Collections.unmodifiableMap(summaries);
+    }
+
+    private Accumulator[] newAccumulators()
+    {
+        final Accumulator[] accumulators;
+        accumulators = new Accumulator[ColumnarCatalog.genreCount()];
+
+        for(int code = 0; code < accumulators.length; code++)
+        {
+            accumulators[code] = new Accumulator(bucketCount);
+        }
+
+        return accumulators;
+    }
+
+    private int bucketOf(final int pageCount)
+    {
+        return Math.min(Math.max(pageCount, 0) / bucketWidth, bucketCount - 1);
+    }
+
+    private static Accumulator[] merge(final Accumulator[] left,
+                                       final Accumulator[] right)
+    {
+        for(int code = 0; code < left.length; code++)
+        {
+            left[code].merge(right[code]);
+        }
+
+        return left;
+    }
+
+    /**
+     * Summarizes a range of a random-access list of books.
+     */
+    private final class BookTask extends RecursiveTask<Accumulator[]>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Book> books;
+        private final int        from;
+        private final int        to;
+
+        BookTask(final List<Book> books,
+                 final int        from,
+                 final int        to)
+        {
+            this.books = books;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Accumulator[] compute()
+        {
+            if(to - from <= SEQUENTIAL_THRESHOLD)
+            {
+                final Accumulator[] accumulators;
+                accumulators = newAccumulators();
+
+                for(int i = from; i < to; i++)
+                {
+                    final Book book;
+                    book = books.get(i);
+
+                    accumulators[ColumnarCatalog.genreCode(book.getGenreType())]
+                            .add(book.getPageCount(), bucketOf(book.getPageCount()));
+                }
+
+                return accumulators;
+            }
+
+            final int      middle;
+            final BookTask left;
+
+            middle = (from + to) >>> 1;
+            left = new BookTask(books, from, middle);
+            left.fork();
+
+            return merge(new BookTask(books, middle, to).compute(), left.join());
+        }
+    }
+
+    /**
+     * Summarizes a range of a columnar catalog, reading only the genre and
+     * page count columns.
+     */
+    private final class ColumnTask extends RecursiveTask<Accumulator[]>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final ColumnarCatalog columns;
+        private final int             from;
+        private final int             to;
+
+        ColumnTask(final ColumnarCatalog columns,
+                   final int             from,
+                   final int             to)
+        {
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Accumulator[] compute()
+        {
+            if(to - from <= SEQUENTIAL_THRESHOLD)
+            {
+                final Accumulator[] accumulators;
+                final byte[]        genreCodes;
+                final int[]         pageCounts;
+
+                accumulators = newAccumulators();
+                genreCodes = columns.genreCodeColumn();
+                pageCounts = columns.pageCountColumn();
+
+                for(int i = from; i < to; i++)
+                {
+                    accumulators[genreCodes[i]].add(pageCounts[i], bucketOf(pageCounts[i]));
+                }
+
+                return accumulators;
+            }
+
+            final int        middle;
+            final ColumnTask left;
+
+            middle = (from + to) >>> 1;
+            left = new ColumnTask(columns, from, middle);
+            left.fork();
+
+            return merge(new ColumnTask(columns, middle, to).compute(), left.join());
+        }
+    }
+
+    /**
+     * Mutable running totals for one genre within one range.
+     */
+    private static final class Accumulator
+    {
+        private final long[] histogram;
+        private long         count;
+        private long         sum;
+        private int          min;
+        private int          max;
+
+        Accumulator(final int bucketCount)
+        {
+            histogram = new long[bucketCount];
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+        }
+
+        void add(final int pageCount,
+                 final int bucket)
+        {
+            count++;
+            sum += pageCount;
+            min = Math.min(min, pageCount);
+            max = Math.max(max, pageCount);
+            histogram[bucket]++;
+        }
+
+        void merge(final Accumulator other)
+        {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+
+            for(int i = 0; i < histogram.length; i++)
+            {
+                histogram[i] += other.histogram[i];
+            }
+        }
+
+        GenreSummary toSummary(final String genre,
+                               final int    bucketWidth)
+        {
+            return new GenreSummary(genre, count, sum, min, max, bucketWidth, histogram.clone());
+        }
+    }
+
+    /**
+     * Immutable statistics for one genre.
+     */
+    public static final class GenreSummary
+    {
+        private final String genre;
+        private final long   count;
+        private final long   sum;
+        private final int    min;
+        private final int    max;
+        private final int    bucketWidth;
+        private final long[] histogram;
+
+        private GenreSummary(final String genre,
+                             final long   count,
+                             final long   sum,
+                             final int    min,
+                             final int    max,
+                             final int    bucketWidth,
+                             final long[] histogram)
+        {
+            this.genre = genre;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+            this.bucketWidth = bucketWidth;
+            this.histogram = histogram;
+        }
+
+        /**
+         * Returns the genre these statistics describe.
+         *
+         * @return the genre
+         */
+        public String getGenre()
+        {
+            return genre;
+        }
+
+        /**
+         * Returns the number of books of this genre.
+         *
+         * @return the book count
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Returns the total page count of this genre.
+         *
+         * @return the page sum
+         */
+        public long getSum()
+        {
+            return sum;
+        }
+
+        /**
+         * Returns the smallest page count of this genre.
+         *
+         * @return the minimum page count
+         * @throws IllegalStateException if the genre has no books
+         */
+        public int getMin()
+        {
+            validateNotEmpty();
+            return min;
+        }
+
+        /**
+         * Returns the largest page count of this genre.
+         *
+         * @return the maximum page count
+         * @throws IllegalStateException if the genre has no books
+         */
+        public int getMax()
+        {
+            validateNotEmpty();
+            return max;
+        }
+
+        /**
+         * Returns the average page count of this genre.
+         *
+         * @return mean page count as a double, or NaN if the genre has no books
+         */
+        public double getMean()
+        {
+            return (double) sum / count;
+        }
+
+        /**
+         * Returns the page count covered by each histogram bucket.
+         *
+         * @return the bucket width
+         */
+        public int getBucketWidth()
+        {
+            return bucketWidth;
+        }
+
+        /**
+         * Returns the number of books per page count bucket; bucket {@code i}
+         * covers {@code [i * width, (i + 1) * width)} and the last bucket also
+         * holds every larger page count.
+         *
+         * @return a copy of the histogram
+         */
+        public long[] getHistogram()
+        {
+            return histogram.clone();
+        }
+
+        /**
+         * Returns a string containing the count, mean, range and histogram.
+         *
+         * @return formatted summary string
+         */
+        @Override
+        public String toString()
+        {
+            return genre +
+                    " [count=" + count +
+                    ", mean="  + getMean() +
+                    ", min="   + (count == 0 ? "-" : String.valueOf(min)) +
+                    ", max="   + (count == 0 ? "-" : String.valueOf(max)) +
+                    ", histogram=" + Arrays.toString(histogram) + "]";
+        }
+
+        /**
+         * @throws IllegalStateException if the genre has no books
+         */
+        private void validateNotEmpty()
+        {
+            if(count == 0)
+            {
+                throw new IllegalStateException("Genre " + genre + " has no books.");
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if pool is null
+     */
+    private static void validatePool(final ForkJoinPool pool)
+    {
+        if(pool == null)
+        {
+            throw new IllegalArgumentException("Pool must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if value is not positive
+     */
+    private static void validatePositive(final int    value,
+                                         final String label)
+    {
+        if(value <= 0)
+        {
+            throw new IllegalArgumentException(label + " must be positive.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if books is null
+     */
+    private static void validateBooks(final List<Book> books)
+    {
+        if(books == null)
+        {
+            throw new IllegalArgumentException("Books list must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if columns is null
+     */
+    private static void validateColumns(final ColumnarCatalog columns)
+    {
+        if(columns == null)
+        {
+            throw new IllegalArgumentException("Columnar catalog must not be null.");
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package ca.bcit.comp2522.code;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of books that shares structure with the versions it was
+ * derived from, used for point-in-time views of a {@link Library} catalog.
+ * <p>
+ * The books are held in a 32-way trie, as in Clojure's persistent vector:
+ * leaves hold 32 books, inner nodes hold 32 children, and the last, partly
+ * filled leaf is kept aside as a tail. {@link #get(int)} walks at most
+ * {@code log32(n)} levels, which is 4 for a million books. {@link #append(Book)}
+ * and {@link #with(int, Book)} return a new version that copies only the path
+ * to the changed leaf and shares everything else, so taking a snapshot
+ * after every change costs a few hundred bytes rather than a copy of the
+ * catalog. Every version is unmodifiable and safe to read from any thread.
+ * <p>
+ * The tail always has room for 32 books. Slots past a version's size are
+ * invisible to it, so the first append to a version claims the next slot
+ * of the shared tail with a compare-and-set instead of copying it; a second
+ * append to the same version finds the slot taken and copies the tail.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class PersistentCatalog extends AbstractList<Book> implements RandomAccess
+{
+    /** Bits of an index consumed by each level of the trie. */
+    private static final int BITS = 5;
+
+    /** Slots in each node and leaf. */
+    private static final int WIDTH = 1 << BITS;
+
+    /** Mask selecting one level's slot from an index. */
+    private static final int MASK = WIDTH - 1;
+
+    /** The version holding no books; its tail is empty so no append can claim it. */
+    private static final PersistentCatalog EMPTY = new PersistentCatalog(0, BITS, new Object[0], new Object[0]);
+
+    /** Claims an unused tail slot for an append. */
+    private static final VarHandle TAIL_SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private final int      size;
+    private final int      shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentCatalog(final int      size,
+                              final int      shift,
+                              final Object[] root,
+                              final Object[] tail)
+    {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * Returns the version holding no books.
+     *
+     * @return the empty catalog
+     */
+    public static PersistentCatalog empty()
+    {
+        return EMPTY;
+    }
+
+    /**
+     * Builds a catalog holding the given books, in order, in linear time.
+     *
+     * @param books the books to hold
+     * @return a new catalog
+     */
+    public static PersistentCatalog of(final Collection<? extends Book> books)
+    {
+        validateBooks(books);
+        return EMPTY.appendAll(books);
+    }
+
+    /**
+     * Returns the book at the given position.
+     *
+     * @param index the position, from 0
+     * @return the book
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    @Override
+    public Book get(final int index)
+    {
+        return (Book) leafFor(index)[index & MASK];
+    }
+
+    /**
+     * Returns the number of books.
+     *
+     * @return the size
+     */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns a new version with the given book added at the end.
+     *
+     * @param book the book to add
+     * @return the new version; this one is unchanged
+     */
+    public PersistentCatalog append(final Book book)
+    {
+        validateBook(book);
+
+        final int      count;
+        final Object[] newTail;
+
+        count = size - tailOffset();
+
+        if(size == 0 || count == WIDTH)
+        {
+            return appendAll(List.of(book));
+        }
+
+        if(TAIL_SLOT.compareAndSet(tail, count, null, book))
+        {
+            return new PersistentCatalog(size + 1, shift, root, tail);
+        }
+
+        newTail = tailCopy();
+        newTail[count] = book;
+
+        return new PersistentCatalog(size + 1, shift, root, newTail);
+    }
+
+    /**
+     * Returns a new version with the given books added at the end, in order.
+     * Each full leaf is pushed into the trie once, so the cost is linear in
+     * the batch plus one path copy per 32 books.
+     *
+     * @param books the books to add
+     * @return the new version; this one is unchanged
+     */
+    public PersistentCatalog appendAll(final Collection<? extends Book> books)
+    {
+        validateBooks(books);
+
+        if(books.isEmpty())
+        {
+            return this;
+        }
+
+        Object[] newRoot;
+        int      newShift;
+        int      newSize;
+        Object[] pending;
+        int      filled;
+
+        newRoot = root;
+        newShift = shift;
+        newSize = size;
+        pending = tailCopy();
+        filled = size - tailOffset();
+
+        for(final Book book : books)
+        {
+            validateBook(book);
+
+            if(filled == WIDTH)
+            {
+                final int leafIndex;
+                leafIndex = newSize - WIDTH;
+
+                // The trie is full when its leaf count would overflow the root level
+                if((leafIndex >>> BITS) >= (1 << newShift))
+                {
+                    newRoot = new Object[] {newRoot, pathTo(newShift, pending)};
+                    newShift += BITS;
+                }
+                else
+                {
+                    newRoot = pushed(newShift, newRoot, leafIndex, pending);
+                }
+
+                pending = new Object[WIDTH];
+                filled = 0;
+            }
+
+            pending[filled++] = book;
+            newSize++;
+        }
+
+        return new PersistentCatalog(newSize, newShift, newRoot, pending);
+    }
+
+    /**
+     * Returns a new version with the book at the given position replaced.
+     *
+     * @param index the position, from 0
+     * @param book  the new book
+     * @return the new version; this one is unchanged
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public PersistentCatalog with(final int  index,
+                                  final Book book)
+    {
+        validateBook(book);
+        checkIndex(index);
+
+        final Object[] newTail;
+
+        if(index >= tailOffset())
+        {
+            newTail = tailCopy();
+            newTail[index & MASK] = book;
+
+            return new PersistentCatalog(size, shift, root, newTail);
+        }
+
+        return new PersistentCatalog(size, shift, replaced(shift, root, index, book), tail);
+    }
+
+    /**
+     * Returns a new version holding the same books in the given order.
+     * This version is unchanged, so the library it came from is not
+     * reordered.
+     *
+     * @param comparator the order of the new version
+     * @return the sorted version
+     */
+    public PersistentCatalog sorted(final Comparator<? super Book> comparator)
+    {
+        if(comparator == null)
+        {
+            throw new IllegalArgumentException("Comparator must not be null.");
+        }
+
+        final Book[] books;
+        books = toArray(new Book[0]);
+
+        Arrays.sort(books, comparator);
+        return EMPTY.appendAll(Arrays.asList(books));
+    }
+
+    /**
+     * Always throws; a snapshot cannot be sorted in place.
+     * Use {@link #sorted(Comparator)} instead.
+     *
+     * @param comparator ignored
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void sort(final Comparator<? super Book> comparator)
+    {
+        throw new UnsupportedOperationException("Catalog snapshots are immutable; use sorted(Comparator).");
+    }
+
+    /**
+     * Returns the leaf, or the tail, holding the given index.
+     */
+    private Object[] leafFor(final int index)
+    {
+        Object[] node;
+
+        checkIndex(index);
+
+        if(index >= tailOffset())
+        {
+            return tail;
+        }
+
+        node = root;
+
+        for(int level = shift; level > 0; level -= BITS)
+        {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+
+        return node;
+    }
+
+    /**
+     * Returns the index of the first book in the tail, which holds from 1
+     * to 32 books unless the catalog is empty.
+     */
+    private int tailOffset()
+    {
+        return size == 0 ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    /**
+     * Returns a full-width copy of this version's tail, without any slots
+     * claimed by appends to other versions.
+     */
+    private Object[] tailCopy()
+    {
+        final Object[] copy;
+        copy = new Object[WIDTH];
+
+        System.arraycopy(tail, 0, copy, 0, size - tailOffset());
+        return copy;
+    }
+
+    /**
+     * Returns a copy of node with the leaf placed at the given index,
+     * copying only the nodes on its path.
+     */
+    private static Object[] pushed(final int      level,
+                                   final Object[] node,
+                                   final int      leafIndex,
+                                   final Object[] leaf)
+    {
+        final int      slot;
+        final Object[] copy;
+
+        slot = (leafIndex >>> level) & MASK;
+        copy = Arrays.copyOf(node, slot + 1);
+
+        if(level == BITS)
+        {
+            copy[slot] = leaf;
+        }
+        else if(slot < node.length)
+        {
+            copy[slot] = pushed(level - BITS, (Object[]) node[slot], leafIndex, leaf);
+        }
+        else
+        {
+            copy[slot] = pathTo(level - BITS, leaf);
+        }
+
+        return copy;
+    }
+
+    /**
+     * Returns a chain of single-child nodes leading down to the leaf.
+     */
+    private static Object[] pathTo(final int      level,
+                                   final Object[] leaf)
+    {
+        if(level == 0)
+        {
+            return leaf;
+        }
+
+        return new Object[] {pathTo(level - BITS, leaf)};
+    }
+
+    /**
+     * Returns a copy of node with one book replaced, copying only the nodes
+     * on its path.
+     */
+    private static Object[] replaced(final int      level,
+                                     final Object[] node,
+                                     final int      index,
+                                     final Book     book)
+    {
+        final Object[] copy;
+        final int      slot;
+
+        copy = node.clone();
+
+        if(level == 0)
+        {
+            copy[index & MASK] = book;
+        }
+        else
+        {
+            slot = (index >>> level) & MASK;
+            copy[slot] = replaced(level - BITS, (Object[]) node[slot], index, book);
+        }
+
+        return copy;
+    }
+
+    private void checkIndex(final int index)
+    {
+        if(index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size + ".");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if book is null
+     */
+    private static void validateBook(final Book book)
+    {
+        if(book == null)
+        {
+            throw new IllegalArgumentException("Book must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if books is null
+     */
+    private static void validateBooks(final Collection<? extends Book> books)
+    {
+        if(books == null)
+        {
+            throw new IllegalArgumentException("Books must not be null.");
+        }
+    }
+}
@@ -0,0 +1,1013 @@
+package ca.bcit.comp2522.code;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Partitions one federated catalog across several {@link Library} shards and
+ * answers questions about the whole catalog by scatter-gather.
+ * <p>
+ * Books are first grouped by {@link Partitioning}: everything in one group
+ * under {@link Partitioning#TITLE_HASH}, or one group per {@link Genre} under
+ * {@link Partitioning#GENRE}. Within a group, the low bits of the title's
+ * hash pick a shard through a directory, as in extendible hashing. When a
+ * shard grows past the size limit only that shard is split in two on the
+ * next hash bit, doubling its group's directory if needed; the other shards
+ * are untouched. A shard whose books all share one title hash cannot be
+ * split and is left to grow until it has doubled before another attempt.
+ * <p>
+ * Lookups by title go to one shard per group, genre questions go only to that
+ * genre's shards under genre partitioning, and everything else runs on all
+ * shards in parallel on a {@link ForkJoinPool}. Each shard returns a partial
+ * result, such as a page total and book count, and the partials are merged so
+ * averages are weighted by shard size and sorted results are re-ranked across
+ * shards. Queries share a read lock and changes take the write lock, so the
+ * catalog is safe for concurrent use. The shards are owned by this catalog;
+ * they are replaced when split and must not be changed directly.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class ShardedCatalog
+{
+    /** Shards per group when none is given. */
+    public static final int DEFAULT_SHARDS_PER_GROUP = 4;
+
+    /** Books a shard may hold before it is split, when no limit is given. */
+    public static final int DEFAULT_MAX_SHARD_SIZE = 1 << 18;
+
+    /** Largest directory a group may grow to. */
+    private static final int MAX_SHARDS_PER_GROUP = 1 << 16;
+
+    /** Bits the title hash is shifted by to mix its high bits into the low. */
+    private static final int HASH_SPREAD_SHIFT = 16;
+
+    /** Growth factor of a shard that could not be split before it is retried. */
+    private static final int SPLIT_RETRY_FACTOR = 2;
+
+    /**
+     * How books are grouped before their title hash picks a shard.
+     */
+    public enum Partitioning
+    {
+        /** One group for the whole catalog; shards are picked by title hash only. */
+        TITLE_HASH,
+
+        /** One group per genre, so genre questions visit only that genre's shards. */
+        GENRE
+    }
+
+    private final String        name;
+    private final Partitioning  partitioning;
+    private final int           maxShardSize;
+    private final ForkJoinPool  pool;
+    private final ReadWriteLock lock;
+    private final Shard[][]     directories;
+    private final List<Shard>   shards;
+
+    /** Number of shards created so far, used to name new ones. */
+    private int shardsCreated;
+
+    /**
+     * Constructs an empty ShardedCatalog on the common pool with default sizes.
+     *
+     * @param name         the federation's name, used to name its shards
+     * @param partitioning how books are grouped
+     */
+    public ShardedCatalog(final String       name,
+                          final Partitioning partitioning)
+    {
+        this(name,
+             partitioning,
+             DEFAULT_SHARDS_PER_GROUP,
+             DEFAULT_MAX_SHARD_SIZE,
+             ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs an empty ShardedCatalog.
+     *
+     * @param name           the federation's name, used to name its shards
+     * @param partitioning   how books are grouped
+     * @param shardsPerGroup the initial number of shards in each group, a power of two
+     * @param maxShardSize   the number of books a shard may hold before it is split
+     * @param pool           the pool that runs scatter-gather queries
+     */
+    public ShardedCatalog(final String       name,
+                          final Partitioning partitioning,
+                          final int          shardsPerGroup,
+                          final int          maxShardSize,
+                          final ForkJoinPool pool)
+    {
+        validateName(name);
+        validatePartitioning(partitioning);
+        validateShardsPerGroup(shardsPerGroup);
+        validateMaxShardSize(maxShardSize);
+        validatePool(pool);
+
+        final int groupCount;
+        final int depth;
+
+        this.name = name;
+        this.partitioning = partitioning;
+        this.maxShardSize = maxShardSize;
+        this.pool = pool;
+        this.lock = new ReentrantReadWriteLock();
+        this.shards = new ArrayList<>();
+
+        groupCount = partitioning == Partitioning.GENRE ? Genre.count() : 1;
+        depth = Integer.numberOfTrailingZeros(shardsPerGroup);
+        this.directories = new Shard[groupCount][];
+
+        for(int group = 0; group < groupCount; group++)
+        {
+            directories[group] = new Shard[shardsPerGroup];
+
+            for(int slot = 0; slot < shardsPerGroup; slot++)
+            {
+                final Shard shard;
+                shard = newShard(group, depth, new ArrayList<>());
+
+                directories[group][slot] = shard;
+                shards.add(shard);
+            }
+        }
+    }
+
+    /**
+     * Builds a ShardedCatalog holding every book of the given branch libraries,
+     * in branch order. The branches themselves are not changed.
+     *
+     * @param name         the federation's name, used to name its shards
+     * @param partitioning how books are grouped
+     * @param branches     the libraries whose books are federated
+     * @return a new ShardedCatalog on the common pool with default sizes
+     */
+    public static ShardedCatalog federate(final String              name,
+                                          final Partitioning        partitioning,
+                                          final Collection<Library> branches)
+    {
+        validateBranches(branches);
+
+        final ShardedCatalog federation;
+        final List<Book>     books;
+
+        federation = new ShardedCatalog(name, partitioning);
+        books = new ArrayList<>();
+
+        for(final Library branch : branches)
+        {
+            books.addAll(branch.getCatalog());
+        }
+
+        federation.addAll(books);
+        return federation;
+    }
+
+    /**
+     * Adds a book to the shard its genre and title select, splitting that
+     * shard if it has grown too large.
+     *
+     * @param book the book to add
+     */
+    public void addBook(final Book book)
+    {
+        validateBook(book);
+
+        lock.writeLock().lock();
+
+        try
+        {
+            final Shard shard;
+            shard = shardOf(book);
+
+            shard.library.addBook(book);
+            splitIfFull(shard);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a batch of books. The batch is routed in one pass, each shard
+     * receives its part through {@link Library#addAll(Collection)} in
+     * parallel, and any shard that has grown too large is then split. Null
+     * rows are reported in the result rather than thrown.
+     *
+     * @param books the books to add
+     * @return how many books were added and which rows were rejected
+     */
+    public BatchResult addAll(final Collection<? extends Book> books)
+    {
+        validateBatch(books);
+
+        final List<Book>                  accepted;
+        final List<BatchResult.Rejection> rejections;
+
+        accepted = new ArrayList<>(books.size());
+        rejections = BatchResult.screen(books, accepted, "Book");
+
+        lock.writeLock().lock();
+
+        try
+        {
+            final Map<Shard, List<Book>> routed;
+            final List<Shard>            touched;
+
+            routed = new IdentityHashMap<>();
+
+            for(final Book book : accepted)
+            {
+                routed.computeIfAbsent(shardOf(book), shard -> new ArrayList<>()).add(book);
+            }
+
+            touched = new ArrayList<>(routed.keySet());
+            scatter(touched, shard -> shard.library.addAll(routed.get(shard)));
+
+            for(final Shard shard : touched)
+            {
+                splitIfFull(shard);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        return new BatchResult(accepted.size(), rejections);
+    }
+
+    /**
+     * Removes the given book from its shard. As in
+     * {@link Library#removeBook(Book)}, only that exact instance is removed.
+     *
+     * @param book the book to remove
+     * @return true if the book was in the catalog
+     */
+    public boolean removeBook(final Book book)
+    {
+        validateBook(book);
+
+        lock.writeLock().lock();
+
+        try
+        {
+            return shardOf(book).library.removeBook(book);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Splits every shard that holds more books than the size limit. Shards
+     * are normally split as they fill up, so this only has work to do for a
+     * shard that could not be split before and has since doubled.
+     *
+     * @return the number of splits made
+     */
+    public int rebalance()
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            int splits;
+            splits = 0;
+
+            for(final Shard shard : new ArrayList<>(shards))
+            {
+                if(splitIfFull(shard))
+                {
+                    splits++;
+                }
+            }
+
+            return splits;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a book with exactly the given title, asking only the one shard
+     * per group that can hold it.
+     *
+     * @param title the title to look up
+     * @return a matching book, or empty if none has that title
+     */
+    public Optional<Book> findByTitle(final String title)
+    {
+        if(title == null)
+        {
+            return Optional.empty();
+        }
+
+        lock.readLock().lock();
+
+        try
+        {
+            final int hash;
+            hash = hashOf(title);
+
+            for(final Shard[] directory : directories)
+            {
+                final Optional<Book> match;
+                match = directory[hash & (directory.length - 1)].library.findByTitle(title);
+
+                if(match.isPresent())
+                {
+                    return match;
+                }
+            }
+
+            return Optional.empty();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the books published in the given range of years, ordered by
+     * year. Each shard answers from its year index in parallel and the
+     * year-ordered partial lists are merged.
+     *
+     * @param from the earliest year, inclusive
+     * @param to   the latest year, inclusive
+     * @return the matching books
+     */
+    public List<Book> booksPublishedBetween(final int from,
+                                           final int to)
+    {
+        validateYearRange(from, to);
+
+        lock.readLock().lock();
+
+        try
+        {
+            final List<Book> matches;
+            matches = new ArrayList<>();
+
+            for(final List<Book> partial : scatter(shards, shard -> shard.library.booksPublishedBetween(from, to)))
+            {
+                matches.addAll(partial);
+            }
+
+            // Each partial is already in year order, so this is a run merge
+            matches.sort(Book.BY_YEAR_PUBLISHED);
+            return matches;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a query on every shard and merges the results. The same query is
+     * built on each shard's {@link Library#query()}, ordered and cut to the
+     * limit there, and the partial results are re-ordered and cut again, so
+     * the answer is the global top results rather than a per-shard one.
+     *
+     * @param spec  adds filters to a shard's query, such as
+     *              {@code query -> query.genre(Genre.FICTION)}
+     * @param order the order of the results
+     * @param limit the largest number of books to return
+     * @return the matching books, in the given order
+     */
+    public List<Book> query(final UnaryOperator<CatalogQuery> spec,
+                            final Comparator<? super Book>    order,
+                            final int                         limit)
+    {
+        validateNotNull(spec, "Query");
+        validateNotNull(order, "Comparator");
+        validateLimit(limit);
+
+        lock.readLock().lock();
+
+        try
+        {
+            final List<Book> matches;
+            matches = new ArrayList<>();
+
+            for(final List<Book> partial : scatter(shards, shard -> spec.apply(shard.library.query())
+                                                                        .sortedBy(order)
+                                                                        .limit(limit)
+                                                                        .toList()))
+            {
+                matches.addAll(partial);
+            }
+
+            matches.sort(order);
+            return new ArrayList<>(matches.subList(0, Math.min(limit, matches.size())));
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of books of the given genre, summing each shard's
+     * genre index.
+     *
+     * @param genre the genre to count
+     * @return count of matching books
+     */
+    public int countByGenre(final Genre genre)
+    {
+        validateNotNull(genre, "Genre");
+
+        lock.readLock().lock();
+
+        try
+        {
+            int count;
+            count = 0;
+
+            for(final Shard shard : shardsFor(genre))
+            {
+                count += shard.library.countByGenre(genre);
+            }
+
+            return count;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of books whose genre matches the given label.
+     *
+     * @param genre the genre label to count
+     * @return count of matching books
+     */
+    public int countByGenre(final String genre)
+    {
+        final Genre resolved;
+        resolved = Genre.lookup(genre);
+
+        return resolved == null ? 0 : countByGenre(resolved);
+    }
+
+    /**
+     * Returns the average page count across the whole catalog. Each shard
+     * totals its pages in parallel and the average is taken over the summed
+     * totals, so every book carries the same weight whatever its shard.
+     *
+     * @return mean page count as a double
+     */
+    public double averagePageCount()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return PageTotal.mergeAll(scatter(shards, shard -> PageTotal.of(shard.library.getCatalog())))
+                            .average();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the average page count of the given genre, weighted as in
+     * {@link #averagePageCount()}.
+     *
+     * @param genre the genre to average
+     * @return mean page count as a double
+     */
+    public double averagePageCount(final Genre genre)
+    {
+        validateNotNull(genre, "Genre");
+
+        lock.readLock().lock();
+
+        try
+        {
+            return PageTotal.mergeAll(scatter(shardsFor(genre), shard -> PageTotal.of(shard.library.booksOfGenre(genre))))
+                            .average();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of books in the whole catalog.
+     *
+     * @return the total size
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            int size;
+            size = 0;
+
+            for(final Shard shard : shards)
+            {
+                size += shard.library.getCatalog().size();
+            }
+
+            return size;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the current number of shards.
+     *
+     * @return the shard count
+     */
+    public int getShardCount()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return shards.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of books in each shard, in shard order.
+     *
+     * @return the shard sizes
+     */
+    public int[] shardSizes()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            final int[] sizes;
+            sizes = new int[shards.size()];
+
+            for(int i = 0; i < sizes.length; i++)
+            {
+                sizes[i] = shards.get(i).library.getCatalog().size();
+            }
+
+            return sizes;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the federation's name.
+     *
+     * @return the name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns how books are grouped.
+     *
+     * @return the partitioning
+     */
+    public Partitioning getPartitioning()
+    {
+        return partitioning;
+    }
+
+    /**
+     * Runs a task on each target, in parallel when there is more than one,
+     * and returns the results in target order. The caller runs the first task
+     * itself rather than waiting idle.
+     */
+    private <T, R> List<R> scatter(final List<T>                         targets,
+                                   final Function<? super T, ? extends R> task)
+    {
+        final List<ForkJoinTask<? extends R>> forked;
+        final List<R>                         results;
+
+        forked = new ArrayList<>(targets.size());
+        results = new ArrayList<>(targets.size());
+
+        for(int i = 1; i < targets.size(); i++)
+        {
+            final T target;
+            target = targets.get(i);
+
+            forked.add(pool.submit(() -> task.apply(target)));
+        }
+
+        if(!targets.isEmpty())
+        {
+            results.add(task.apply(targets.get(0)));
+        }
+
+        for(final ForkJoinTask<? extends R> pending : forked)
+        {
+            results.add(pending.join());
+        }
+
+        return results;
+    }
+
+    /**
+     * Returns the shards that can hold books of the given genre.
+     */
+    private List<Shard> shardsFor(final Genre genre)
+    {
+        final List<Shard> matches;
+
+        if(partitioning != Partitioning.GENRE)
+        {
+            return shards;
+        }
+
+        matches = new ArrayList<>();
+
+        for(final Shard shard : shards)
+        {
+            if(shard.group == genre.ordinal())
+            {
+                matches.add(shard);
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Returns the shard that holds, or would hold, the given book.
+     */
+    private Shard shardOf(final Book book)
+    {
+        final Shard[] directory;
+        directory = directories[groupOf(book)];
+
+        return directory[hashOf(book.getTitle()) & (directory.length - 1)];
+    }
+
+    private int groupOf(final Book book)
+    {
+        return partitioning == Partitioning.GENRE ? book.getGenreType().ordinal() : 0;
+    }
+
+    /**
+     * Splits a shard in two on its next hash bit if it holds more books than
+     * the limit, then splits the halves again while they are still over it.
+     * The caller holds the write lock.
+     *
+     * @return true if the shard was split
+     */
+    private boolean splitIfFull(final Shard shard)
+    {
+        final List<Book> catalog;
+        final List<Book> low;
+        final List<Book> high;
+        final int        bit;
+
+        catalog = shard.library.getCatalog();
+
+        if(catalog.size() <= shard.splitThreshold)
+        {
+            return false;
+        }
+
+        low = new ArrayList<>();
+        high = new ArrayList<>();
+        bit = 1 << shard.depth;
+
+        for(final Book book : catalog)
+        {
+            if((hashOf(book.getTitle()) & bit) == 0)
+            {
+                low.add(book);
+            }
+            else
+            {
+                high.add(book);
+            }
+        }
+
+        if(low.isEmpty() || high.isEmpty() || !canDeepen(shard))
+        {
+            // Every book shares the next bit, so splitting would not help yet
+            shard.splitThreshold = (int) Math.min(Integer.MAX_VALUE, (long) catalog.size() * SPLIT_RETRY_FACTOR);
+            return false;
+        }
+
+        final Shard lowShard;
+        final Shard highShard;
+
+        lowShard = newShard(shard.group, shard.depth + 1, low);
+        highShard = newShard(shard.group, shard.depth + 1, high);
+
+        replace(shard, lowShard, highShard);
+
+        // A large batch can leave either half still over the limit
+        splitIfFull(lowShard);
+        splitIfFull(highShard);
+        return true;
+    }
+
+    /**
+     * Returns whether a shard may take one more hash bit, doubling its
+     * group's directory first if the shard already uses all of its bits.
+     */
+    private boolean canDeepen(final Shard shard)
+    {
+        final Shard[] directory;
+        final Shard[] doubled;
+
+        directory = directories[shard.group];
+
+        if(shard.depth < Integer.numberOfTrailingZeros(directory.length))
+        {
+            return true;
+        }
+
+        if(directory.length >= MAX_SHARDS_PER_GROUP)
+        {
+            return false;
+        }
+
+        doubled = new Shard[directory.length * 2];
+        System.arraycopy(directory, 0, doubled, 0, directory.length);
+        System.arraycopy(directory, 0, doubled, directory.length, directory.length);
+
+        directories[shard.group] = doubled;
+        return true;
+    }
+
+    /**
+     * Points every directory slot of a split shard at the half its next
+     * hash bit selects, and swaps the halves into the shard list.
+     */
+    private void replace(final Shard shard,
+                         final Shard low,
+                         final Shard high)
+    {
+        final Shard[] directory;
+        final int     bit;
+
+        directory = directories[shard.group];
+        bit = 1 << shard.depth;
+
+        for(int slot = 0; slot < directory.length; slot++)
+        {
+            if(directory[slot] == shard)
+            {
+                directory[slot] = (slot & bit) == 0 ? low : high;
+            }
+        }
+
+        shards.set(shards.indexOf(shard), low);
+        shards.add(high);
+    }
+
+    private Shard newShard(final int        group,
+                           final int        depth,
+                           final List<Book> books)
+    {
+        final Library library;
+        library = new Library(name + "-" + shardsCreated++, books);
+
+        return new Shard(library, group, depth, maxShardSize);
+    }
+
+    /**
+     * Spreads the high bits of a title's hash into the low bits the
+     * directories index by.
+     */
+    private static int hashOf(final String title)
+    {
+        final int hash;
+        hash = title.hashCode();
+
+        return hash ^ (hash >>> HASH_SPREAD_SHIFT);
+    }
+
+    /**
+     * @throws IllegalArgumentException if name is null or blank
+     */
+    private static void validateName(final String name)
+    {
+        if(name == null || name.isBlank())
+        {
+            throw new IllegalArgumentException("Name must not be null or blank.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if partitioning is null
+     */
+    private static void validatePartitioning(final Partitioning partitioning)
+    {
+        validateNotNull(partitioning, "Partitioning");
+    }
+
+    /**
+     * @throws IllegalArgumentException if shardsPerGroup is not a power of two within range
+     */
+    private static void validateShardsPerGroup(final int shardsPerGroup)
+    {
+        if(shardsPerGroup <= 0 || shardsPerGroup > MAX_SHARDS_PER_GROUP || Integer.bitCount(shardsPerGroup) != 1)
+        {
+            throw new IllegalArgumentException("Shards per group must be a power of two from 1 to " +
+                                                       MAX_SHARDS_PER_GROUP + ".");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if maxShardSize is not positive
+     */
+    private static void validateMaxShardSize(final int maxShardSize)
+    {
+        if(maxShardSize <= 0)
+        {
+            throw new IllegalArgumentException("Max shard size must be positive.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if pool is null
+     */
+    private static void validatePool(final ForkJoinPool pool)
+    {
+        validateNotNull(pool, "Pool");
+    }
+
+    /**
+     * @throws IllegalArgumentException if branches or any branch is null
+     */
+    private static void validateBranches(final Collection<Library> branches)
+    {
+        validateNotNull(branches, "Branches");
+
+        for(final Library branch : branches)
+        {
+            validateNotNull(branch, "Branch");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if book is null
+     */
+    private static void validateBook(final Book book)
+    {
+        validateNotNull(book, "Book");
+    }
+
+    /**
+     * @throws IllegalArgumentException if books is null
+     */
+    private static void validateBatch(final Collection<? extends Book> books)
+    {
+        validateNotNull(books, "Books");
+    }
+
+    /**
+     * @throws IllegalArgumentException if limit is negative
+     */
+    private static void validateLimit(final int limit)
+    {
+        if(limit < 0)
+        {
+            throw new IllegalArgumentException("Limit must not be negative.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if from is after to
+     */
+    private static void validateYearRange(final int from,
+                                          final int to)
+    {
+        if(from > to)
+        {
+            throw new IllegalArgumentException("From year must not be after to year.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if value is null
+     */
+    private static void validateNotNull(final Object value,
+                                        final String label)
+    {
+        if(value == null)
+        {
+            throw new IllegalArgumentException(label + " must not be null.");
+        }
+    }
+
+    /**
+     * One shard: a library, the group it belongs to and the number of low
+     * title hash bits its books share.
+     */
+    private static final class Shard
+    {
+        private final Library library;
+        private final int     group;
+        private final int     depth;
+
+        /** Size above which a split is attempted. */
+        private int splitThreshold;
+
+        private Shard(final Library library,
+                      final int     group,
+                      final int     depth,
+                      final int     splitThreshold)
+        {
+            this.library = library;
+            this.group = group;
+            this.depth = depth;
+            this.splitThreshold = splitThreshold;
+        }
+    }
+
+    /**
+     * A partial page count aggregate: the number of books and their total
+     * pages. Totals merge by addition, unlike averages.
+     */
+    private static final class PageTotal
+    {
+        private final long count;
+        private final long pages;
+
+        private PageTotal(final long count,
+                          final long pages)
+        {
+            this.count = count;
+            this.pages = pages;
+        }
+
+        private static PageTotal of(final List<Book> books)
+        {
+            long pages;
+            pages = 0;
+
+            for(final Book book : books)
+            {
+                pages += book.getPageCount();
+            }
+
+            return new PageTotal(books.size(), pages);
+        }
+
+        private static PageTotal mergeAll(final List<PageTotal> partials)
+        {
+            long count;
+            long pages;
+
+            count = 0;
+            pages = 0;
+
+            for(final PageTotal partial : partials)
+            {
+                count += partial.count;
+                pages += partial.pages;
+            }
+
+            return new PageTotal(count, pages);
+        }
+
+        private double average()
+        {
+            return (double) pages / count;
+        }
+    }
+}
@@ -1,10 +1,22 @@
 package ca.bcit.comp2522.code;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A generic shelf that stores items of any {@link Comparable} type.
+ * Items are kept in a min-max heap: even depths are ordered as a min-heap
+ * and odd depths as a max-heap, so the smallest item is always at the root
+ * and the largest is one of its two children. {@link #getSmallest()} and
+ * {@link #getLargest()} are O(1); {@link #add(Comparable)},
+ * {@link #removeSmallest()} and {@link #removeLargest()} are O(log n).
+ * Top-K queries use a bounded heap (O(n log k)) and order statistics use
+ * quickselect (expected O(n)), so neither sorts the whole shelf.
  *
  * @param <T> the item type; must implement {@link Comparable} so that
  *            {@code compareTo} can be called inside {@link #getSmallest()}
@@ -15,9 +27,27 @@ import java.util.List;
  */
 public final class Shelf<T extends Comparable<T>>
 {
-    /** Index used as the starting reference when scanning for min/max. */
+    /** Index of the root of the heap, which always holds the smallest item. */
     private static final int FIRST_INDEX = 0;
 
+    /** Index of the root's left child. */
+    private static final int SECOND_INDEX = 1;
+
+    /** Index of the root's right child. */
+    private static final int THIRD_INDEX = 2;
+
+    /** Shelf size at which the largest item is the root itself. */
+    private static final int SIZE_WITH_ROOT_ONLY = 1;
+
+    /** Shelf size at which the largest item is the root's only child. */
+    private static final int SIZE_WITH_ONE_CHILD = 2;
+
+    /** Number of grandchildren of any heap node. */
+    private static final int GRANDCHILD_COUNT = 4;
+
+    /** Return value of {@link #indexOf(Comparable)} when the item is absent. */
+    private static final int NOT_FOUND = -1;
+
     private final List<T> items;
 
     /**
@@ -37,28 +67,110 @@ public final class Shelf<T extends Comparable<T>>
     {
         validateItem(item);
         items.add(item);
+        pushUp(items.size() - 1);
     }
 
     /**
-     * Returns the smallest item by natural ordering.
+     * Adds a batch of items in one step. Null rows are reported in the result
+     * rather than thrown, and every other item is added. The backing list
+     * grows at most once; when the batch is at least as large as the shelf,
+     * the heap is rebuilt bottom-up in O(n) instead of sifting each item up.
      *
-     * @return the item that compares as smallest
+     * @param batch the items to add
+     * @return how many items were added and which rows were rejected
      */
-    public T getSmallest()
+    public BatchResult addAll(final Collection<? extends T> batch)
     {
-        validateNotEmpty();
+        validateBatch(batch);
 
-        T smallest;
-        smallest = items.get(FIRST_INDEX);
+        final List<T>                     accepted;
+        final List<BatchResult.Rejection> rejections;
+        final int                         previousSize;
 
-        for(final T item : items)
+        accepted = new ArrayList<>(batch.size());
+        rejections = BatchResult.screen(batch, accepted, "Item");
+        previousSize = items.size();
+
+        items.addAll(accepted);
+
+        if(accepted.size() >= previousSize)
+        {
+            for(int i = parentOf(items.size() - 1); i >= FIRST_INDEX; i--)
+            {
+                pushDown(i);
+            }
+        }
+        else
         {
-            if(item.compareTo(smallest) < 0)
+            for(int i = previousSize; i < items.size(); i++)
             {
-                smallest = item;
+                pushUp(i);
             }
         }
 
+        return new BatchResult(accepted.size(), rejections);
+    }
+
+    /**
+     * Removes one occurrence of the given item from this shelf.
+     * Finding the item is a linear scan; restoring the heap is O(log n).
+     *
+     * @param item the item to remove
+     * @return true if the item was found and removed
+     */
+    public boolean remove(final T item)
+    {
+        validateItem(item);
+
+        final int index;
+        index = indexOf(item);
+
+        if(index == NOT_FOUND)
+        {
+            return false;
+        }
+
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Removes and returns the smallest item by natural ordering.
+     *
+     * @return the item that compared as smallest
+     */
+    public T removeSmallest()
+    {
+        validateNotEmpty();
+        return removeAt(FIRST_INDEX);
+    }
+
+    /**
+     * Removes and returns the largest item by natural ordering.
+     *
+     * @return the item that compared as largest
+     */
+    public T removeLargest()
+    {
+        validateNotEmpty();
+        return removeAt(largestIndex());
+    }
+
+    /**
+     * Returns the smallest item by natural ordering.
+     *
+     * @return the item that compares as smallest
+     */
+    public T getSmallest()
+    {
+        final long start;
+        final T    smallest;
+
+        start = LibraryMetrics.start();
+        validateNotEmpty();
+        smallest = items.get(FIRST_INDEX);
+        LibraryMetrics.SHELF_GET_SMALLEST.stop(start);
+
         return smallest;
     }
 
@@ -69,20 +181,497 @@ public final class Shelf<T extends Comparable<T>>
      */
     public T getLargest()
     {
+        final long start;
+        final T    largest;
+
+        start = LibraryMetrics.start();
         validateNotEmpty();
+        largest = items.get(largestIndex());
+        LibraryMetrics.SHELF_GET_LARGEST.stop(start);
+
+        return largest;
+    }
+
+    /**
+     * Returns the number of items on this shelf.
+     *
+     * @return the item count
+     */
+    public int size()
+    {
+        return items.size();
+    }
+
+    /**
+     * Returns whether this shelf holds no items.
+     *
+     * @return true if the shelf is empty
+     */
+    public boolean isEmpty()
+    {
+        return items.isEmpty();
+    }
+
+    /**
+     * Returns the k largest items by natural ordering, largest first.
+     *
+     * @param k the number of items to return
+     * @return up to k items in descending order
+     */
+    public List<T> topK(final int k)
+    {
+        return topK(k, Comparator.naturalOrder());
+    }
 
-        T largest;
-        largest = items.get(FIRST_INDEX);
+    /**
+     * Returns the k largest items by the given ordering, largest first.
+     * Keeps a min-heap of the best k seen so far, so runs in O(n log k).
+     *
+     * @param k          the number of items to return
+     * @param comparator the ordering to rank items by
+     * @return up to k items in descending order
+     */
+    public List<T> topK(final int                   k,
+                        final Comparator<? super T> comparator)
+    {
+        validateCount(k);
+        validateComparator(comparator);
+
+        final PriorityQueue<T> best;
+        final List<T>          result;
+
+        best = new PriorityQueue<>(Math.max(1, Math.min(k, items.size())), comparator);
 
         for(final T item : items)
         {
-            if(item.compareTo(largest) > 0)
+            if(best.size() < k)
+            {
+                best.add(item);
+            }
+            else if(k > 0 && comparator.compare(item, best.peek()) > 0)
             {
-                largest = item;
+                best.poll();
+                best.add(item);
             }
         }
 
-        return largest;
+        result = new ArrayList<>(best.size());
+
+        while(!best.isEmpty())
+        {
+            result.add(best.poll());
+        }
+
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Returns the k smallest items by natural ordering, smallest first.
+     *
+     * @param k the number of items to return
+     * @return up to k items in ascending order
+     */
+    public List<T> bottomK(final int k)
+    {
+        return bottomK(k, Comparator.naturalOrder());
+    }
+
+    /**
+     * Returns the k smallest items by the given ordering, smallest first.
+     *
+     * @param k          the number of items to return
+     * @param comparator the ordering to rank items by
+     * @return up to k items in ascending order
+     */
+    public List<T> bottomK(final int                   k,
+                           final Comparator<? super T> comparator)
+    {
+        validateComparator(comparator);
+        return topK(k, comparator.reversed());
+    }
+
+    /**
+     * Returns the k-th smallest item by natural ordering.
+     *
+     * @param k the rank, where 1 is the smallest
+     * @return the item at that rank
+     */
+    public T kthSmallest(final int k)
+    {
+        return kthSmallest(k, Comparator.naturalOrder());
+    }
+
+    /**
+     * Returns the k-th smallest item by the given ordering.
+     * Uses quickselect on a copy of the items, expected O(n).
+     *
+     * @param k          the rank, where 1 is the smallest
+     * @param comparator the ordering to rank items by
+     * @return the item at that rank
+     */
+    public T kthSmallest(final int                   k,
+                         final Comparator<? super T> comparator)
+    {
+        validateNotEmpty();
+        validateRank(k);
+        validateComparator(comparator);
+
+        return select(new ArrayList<>(items), k - 1, comparator);
+    }
+
+    /**
+     * Returns the median item by natural ordering; for an even number of
+     * items this is the lower of the two middle items.
+     *
+     * @return the median item
+     */
+    public T median()
+    {
+        return median(Comparator.naturalOrder());
+    }
+
+    /**
+     * Returns the median item by the given ordering; for an even number of
+     * items this is the lower of the two middle items.
+     *
+     * @param comparator the ordering to rank items by
+     * @return the median item
+     */
+    public T median(final Comparator<? super T> comparator)
+    {
+        validateNotEmpty();
+        return kthSmallest((items.size() + 1) / 2, comparator);
+    }
+
+    /**
+     * Partially orders the list until the item at index is in its sorted
+     * position, using random pivots and a three-way partition so runs of
+     * equal items do not degrade it.
+     */
+    private static <E> E select(final List<E>               list,
+                                final int                   index,
+                                final Comparator<? super E> comparator)
+    {
+        int low;
+        int high;
+
+        low = 0;
+        high = list.size() - 1;
+
+        while(low < high)
+        {
+            final E pivot;
+            int     lessEnd;
+            int     current;
+            int     greaterStart;
+
+            pivot = list.get(ThreadLocalRandom.current().nextInt(low, high + 1));
+            lessEnd = low;
+            current = low;
+            greaterStart = high;
+
+            while(current <= greaterStart)
+            {
+                final int comparison;
+                comparison = comparator.compare(list.get(current), pivot);
+
+                if(comparison < 0)
+                {
+                    Collections.swap(list, lessEnd++, current++);
+                }
+                else if(comparison > 0)
+                {
+                    Collections.swap(list, current, greaterStart--);
+                }
+                else
+                {
+                    current++;
+                }
+            }
+
+            if(index < lessEnd)
+            {
+                high = lessEnd - 1;
+            }
+            else if(index > greaterStart)
+            {
+                low = greaterStart + 1;
+            }
+            else
+            {
+                return list.get(index);
+            }
+        }
+
+        return list.get(low);
+    }
+
+    /**
+     * Returns the index of the largest item; the shelf must not be empty.
+     */
+    private int largestIndex()
+    {
+        if(items.size() == SIZE_WITH_ROOT_ONLY)
+        {
+            return FIRST_INDEX;
+        }
+
+        if(items.size() == SIZE_WITH_ONE_CHILD)
+        {
+            return SECOND_INDEX;
+        }
+
+        return greater(SECOND_INDEX, THIRD_INDEX);
+    }
+
+    /**
+     * Returns the heap index of the first item equal to the given one.
+     */
+    private int indexOf(final T item)
+    {
+        for(int i = 0; i < items.size(); i++)
+        {
+            if(items.get(i).compareTo(item) == 0)
+            {
+                return i;
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * Removes the item at the given heap index by moving the last item into
+     * its slot and sifting that item to its correct level.
+     */
+    private T removeAt(final int index)
+    {
+        final int lastIndex;
+        final T   removed;
+        final T   last;
+
+        lastIndex = items.size() - 1;
+        removed   = items.get(index);
+        last      = items.remove(lastIndex);
+
+        if(index == lastIndex)
+        {
+            return removed;
+        }
+
+        items.set(index, last);
+
+        if(index > FIRST_INDEX)
+        {
+            final int parent;
+            final int comparison;
+
+            parent     = parentOf(index);
+            comparison = last.compareTo(items.get(parent));
+
+            if(isMinLevel(index) ? comparison > 0 : comparison < 0)
+            {
+                // The moved item belongs above its parent; the parent's old
+                // value now sits at index and may be out of order below it.
+                swap(index, parent);
+                pushUpSameLevel(parent);
+                pushDown(index);
+                return removed;
+            }
+        }
+
+        if(!pushUpSameLevel(index))
+        {
+            pushDown(index);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Restores heap order after the item at index was appended.
+     */
+    private void pushUp(final int index)
+    {
+        if(index == FIRST_INDEX)
+        {
+            return;
+        }
+
+        final int parent;
+        final int comparison;
+
+        parent     = parentOf(index);
+        comparison = items.get(index).compareTo(items.get(parent));
+
+        if(isMinLevel(index) ? comparison > 0 : comparison < 0)
+        {
+            swap(index, parent);
+            pushUpSameLevel(parent);
+        }
+        else
+        {
+            pushUpSameLevel(index);
+        }
+    }
+
+    /**
+     * Moves the item at index up through ancestors on levels of the same kind.
+     *
+     * @return true if the item moved
+     */
+    private boolean pushUpSameLevel(final int index)
+    {
+        final boolean minLevel;
+        int           current;
+
+        minLevel = isMinLevel(index);
+        current  = index;
+
+        while(current > THIRD_INDEX)
+        {
+            final int grandparent;
+            final int comparison;
+
+            grandparent = parentOf(parentOf(current));
+            comparison  = items.get(current).compareTo(items.get(grandparent));
+
+            if(minLevel ? comparison >= 0 : comparison <= 0)
+            {
+                break;
+            }
+
+            swap(current, grandparent);
+            current = grandparent;
+        }
+
+        return current != index;
+    }
+
+    /**
+     * Moves the item at index down until no child or grandchild out-orders it.
+     */
+    private void pushDown(final int index)
+    {
+        final boolean minLevel;
+        int           current;
+
+        minLevel = isMinLevel(index);
+        current  = index;
+
+        while(firstChildOf(current) < items.size())
+        {
+            final int best;
+            best = extremeDescendant(current, minLevel);
+
+            if(!outOrders(best, current, minLevel))
+            {
+                return;
+            }
+
+            swap(best, current);
+
+            if(parentOf(best) == current)
+            {
+                return;
+            }
+
+            final int parent;
+            parent = parentOf(best);
+
+            if(outOrders(parent, best, minLevel))
+            {
+                swap(parent, best);
+            }
+
+            current = best;
+        }
+    }
+
+    /**
+     * Returns the smallest (min level) or largest (max level) item among the
+     * children and grandchildren of index.
+     */
+    private int extremeDescendant(final int index,
+                                  final boolean minLevel)
+    {
+        final int firstChild;
+        final int firstGrandchild;
+        int       best;
+
+        firstChild      = firstChildOf(index);
+        firstGrandchild = firstChildOf(firstChild);
+        best            = firstChild;
+
+        if(firstChild + 1 < items.size() && outOrders(firstChild + 1, best, minLevel))
+        {
+            best = firstChild + 1;
+        }
+
+        for(int i = firstGrandchild; i < firstGrandchild + GRANDCHILD_COUNT && i < items.size(); i++)
+        {
+            if(outOrders(i, best, minLevel))
+            {
+                best = i;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Returns whether the item at first belongs above the item at second on
+     * a min (smaller wins) or max (larger wins) level.
+     */
+    private boolean outOrders(final int first,
+                              final int second,
+                              final boolean minLevel)
+    {
+        final int comparison;
+        comparison = items.get(first).compareTo(items.get(second));
+
+        return minLevel ? comparison < 0 : comparison > 0;
+    }
+
+    /**
+     * Returns the index of whichever of the two items is larger.
+     */
+    private int greater(final int first,
+                        final int second)
+    {
+        return items.get(first).compareTo(items.get(second)) >= 0 ? first : second;
+    }
+
+    private void swap(final int first,
+                      final int second)
+    {
+        final T temp;
+        temp = items.get(first);
+
+        items.set(first, items.get(second));
+        items.set(second, temp);
+    }
+
+    /**
+     * Returns whether index sits on an even depth, which is ordered as a min-heap.
+     */
+    private static boolean isMinLevel(final int index)
+    {
+        final int depth;
+        depth = 31 - Integer.numberOfLeadingZeros(index + 1);
+
+        return depth % 2 == 0;
+    }
+
+    private static int parentOf(final int index)
+    {
+        return (index - 1) / 2;
+    }
+
+    private static int firstChildOf(final int index)
+    {
+        return 2 * index + 1;
     }
 
     /**
@@ -99,6 +688,50 @@ public final class Shelf<T extends Comparable<T>>
         }
     }
 
+    /**
+     * @throws IllegalArgumentException if batch is null
+     */
+    private static void validateBatch(final Collection<?> batch)
+    {
+        if(batch == null)
+        {
+            throw new IllegalArgumentException("Batch must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if k is negative
+     */
+    private static void validateCount(final int k)
+    {
+        if(k < 0)
+        {
+            throw new IllegalArgumentException("Count must not be negative.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if k is not between 1 and the shelf size
+     */
+    private void validateRank(final int k)
+    {
+        if(k < 1 || k > items.size())
+        {
+            throw new IllegalArgumentException("Rank must be between 1 and " + items.size() + ".");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if comparator is null
+     */
+    private static void validateComparator(final Comparator<?> comparator)
+    {
+        if(comparator == null)
+        {
+            throw new IllegalArgumentException("Comparator must not be null.");
+        }
+    }
+
     /**
      * Validates that the shelf is not empty before a min/max query.
      *
@@ -0,0 +1,474 @@
+package ca.bcit.comp2522.code;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A shelf that keeps its items sorted by a {@link Comparator}, so it can hold
+ * types that are not {@link Comparable}, such as {@link Book} ordered by
+ * {@link Book#BY_PAGE_COUNT}.
+ * Items are stored in a list of sorted chunks of bounded size, like the
+ * leaves of a B-tree. A chunk is found by binary search over chunk maxima
+ * and a position inside it by binary search, and a Fenwick tree over chunk
+ * sizes turns positions into ranks. Smallest and largest are O(1);
+ * {@link #add(Object)}, {@link #rank(Object)}, {@link #get(int)} and the
+ * start of {@link #between(Object, Object)} are O(log n) plus a shift of at
+ * most one chunk. Items that compare as equal are kept in insertion order.
+ *
+ * @param <T> the item type
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class SortedShelf<T>
+{
+    /** A chunk is split in half once it holds more than this many items. */
+    private static final int MAX_CHUNK_SIZE = 512;
+
+    private final Comparator<? super T> comparator;
+    private final List<List<T>>         chunks;
+
+    private int[] chunkSizeTree;
+    private int   size;
+
+    /**
+     * Constructs an empty SortedShelf ordered by the given comparator.
+     *
+     * @param comparator the ordering to keep items in
+     */
+    public SortedShelf(final Comparator<? super T> comparator)
+    {
+        validateComparator(comparator);
+
+        this.comparator = comparator;
+        this.chunks = new ArrayList<>();
+        this.chunkSizeTree = new int[1];
+    }
+
+    /**
+     * Adds an item after any items that compare as equal to it.
+     *
+     * @param item the item to add
+     */
+    public void add(final T item)
+    {
+        validateItem(item);
+
+        if(chunks.isEmpty())
+        {
+            final List<T> chunk;
+            chunk = new ArrayList<>();
+            chunk.add(item);
+
+            chunks.add(chunk);
+            size = 1;
+            rebuildTree();
+            return;
+        }
+
+        final int     chunkIndex;
+        final List<T> chunk;
+
+        chunkIndex = Math.min(firstChunkAbove(item, true), chunks.size() - 1);
+        chunk = chunks.get(chunkIndex);
+        chunk.add(searchChunk(chunk, item, true), item);
+        size++;
+
+        if(chunk.size() > MAX_CHUNK_SIZE)
+        {
+            final List<T> upperHalf;
+            upperHalf = new ArrayList<>(chunk.subList(chunk.size() / 2, chunk.size()));
+
+            chunk.subList(chunk.size() / 2, chunk.size()).clear();
+            chunks.add(chunkIndex + 1, upperHalf);
+            rebuildTree();
+        }
+        else
+        {
+            updateTree(chunkIndex, 1);
+        }
+    }
+
+    /**
+     * Removes one item that compares as equal to and {@link Object#equals equals}
+     * the given item.
+     *
+     * @param item the item to remove
+     * @return true if the item was found and removed
+     */
+    public boolean remove(final T item)
+    {
+        validateItem(item);
+
+        int chunkIndex;
+        int offset;
+
+        chunkIndex = firstChunkAbove(item, false);
+        offset = chunkIndex < chunks.size() ? searchChunk(chunks.get(chunkIndex), item, false) : 0;
+
+        while(chunkIndex < chunks.size())
+        {
+            final List<T> chunk;
+            chunk = chunks.get(chunkIndex);
+
+            while(offset < chunk.size())
+            {
+                final T candidate;
+                candidate = chunk.get(offset);
+
+                if(comparator.compare(candidate, item) != 0)
+                {
+                    return false;
+                }
+
+                if(Objects.equals(candidate, item))
+                {
+                    chunk.remove(offset);
+                    size--;
+
+                    if(chunk.isEmpty())
+                    {
+                        chunks.remove(chunkIndex);
+                        rebuildTree();
+                    }
+                    else
+                    {
+                        updateTree(chunkIndex, -1);
+                    }
+
+                    return true;
+                }
+
+                offset++;
+            }
+
+            chunkIndex++;
+            offset = 0;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the smallest item.
+     *
+     * @return the first item in sorted order
+     */
+    public T getSmallest()
+    {
+        validateNotEmpty();
+        return chunks.get(0).get(0);
+    }
+
+    /**
+     * Returns the largest item.
+     *
+     * @return the last item in sorted order
+     */
+    public T getLargest()
+    {
+        validateNotEmpty();
+
+        final List<T> last;
+        last = chunks.get(chunks.size() - 1);
+
+        return last.get(last.size() - 1);
+    }
+
+    /**
+     * Returns the item at the given position in sorted order.
+     *
+     * @param index the position, where 0 is the smallest
+     * @return the item at that position
+     */
+    public T get(final int index)
+    {
+        validateIndex(index);
+
+        int chunkIndex;
+        int remaining;
+
+        chunkIndex = 0;
+        remaining = index;
+
+        // Fenwick descent: find the last chunk whose prefix size is <= index
+        for(int step = Integer.highestOneBit(chunks.size()); step > 0; step >>= 1)
+        {
+            final int next;
+            next = chunkIndex + step;
+
+            if(next <= chunks.size() && chunkSizeTree[next] <= remaining)
+            {
+                chunkIndex = next;
+                remaining -= chunkSizeTree[next];
+            }
+        }
+
+        return chunks.get(chunkIndex).get(remaining);
+    }
+
+    /**
+     * Returns the number of items that compare as less than the given item.
+     *
+     * @param item the item to rank
+     * @return the position the first equal item has or would have
+     */
+    public int rank(final T item)
+    {
+        validateItem(item);
+
+        final int chunkIndex;
+        chunkIndex = firstChunkAbove(item, false);
+
+        if(chunkIndex == chunks.size())
+        {
+            return size;
+        }
+
+        return prefixSize(chunkIndex) + searchChunk(chunks.get(chunkIndex), item, false);
+    }
+
+    /**
+     * Returns every item from low to high, both inclusive, in sorted order.
+     *
+     * @param low  the smallest item to include
+     * @param high the largest item to include
+     * @return the matching items
+     */
+    public List<T> between(final T low,
+                           final T high)
+    {
+        validateItem(low);
+        validateItem(high);
+        validateRange(low, high);
+
+        final List<T> matches;
+        int           chunkIndex;
+        int           offset;
+
+        matches = new ArrayList<>();
+        chunkIndex = firstChunkAbove(low, false);
+        offset = chunkIndex < chunks.size() ? searchChunk(chunks.get(chunkIndex), low, false) : 0;
+
+        for(; chunkIndex < chunks.size(); chunkIndex++)
+        {
+            final List<T> chunk;
+            chunk = chunks.get(chunkIndex);
+
+            for(; offset < chunk.size(); offset++)
+            {
+                final T item;
+                item = chunk.get(offset);
+
+                if(comparator.compare(item, high) > 0)
+                {
+                    return matches;
+                }
+
+                matches.add(item);
+            }
+
+            offset = 0;
+        }
+
+        return matches;
+    }
+
+    /**
+     * Returns the number of items on this shelf.
+     *
+     * @return the item count
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns whether this shelf holds no items.
+     *
+     * @return true if the shelf is empty
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Returns the index of the first chunk whose largest item is above the
+     * given item (strictly, when upper is true) or at least equal to it
+     * (when upper is false); the chunk count if there is none.
+     */
+    private int firstChunkAbove(final T       item,
+                                final boolean upper)
+    {
+        int low;
+        int high;
+
+        low = 0;
+        high = chunks.size();
+
+        while(low < high)
+        {
+            final int     middle;
+            final List<T> chunk;
+            final int     comparison;
+
+            middle = (low + high) >>> 1;
+            chunk = chunks.get(middle);
+            comparison = comparator.compare(chunk.get(chunk.size() - 1), item);
+
+            if(upper ? comparison > 0 : comparison >= 0)
+            {
+                high = middle;
+            }
+            else
+            {
+                low = middle + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the upper (after equal items) or lower (before equal items)
+     * insertion point of item within a chunk.
+     */
+    private int searchChunk(final List<T> chunk,
+                            final T       item,
+                            final boolean upper)
+    {
+        int low;
+        int high;
+
+        low = 0;
+        high = chunk.size();
+
+        while(low < high)
+        {
+            final int middle;
+            final int comparison;
+
+            middle = (low + high) >>> 1;
+            comparison = comparator.compare(chunk.get(middle), item);
+
+            if(upper ? comparison > 0 : comparison >= 0)
+            {
+                high = middle;
+            }
+            else
+            {
+                low = middle + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the total size of the chunks before the given one.
+     */
+    private int prefixSize(final int chunkIndex)
+    {
+        int total;
+        total = 0;
+
+        for(int i = chunkIndex; i > 0; i -= i & -i)
+        {
+            total += chunkSizeTree[i];
+        }
+
+        return total;
+    }
+
+    private void updateTree(final int chunkIndex,
+                            final int delta)
+    {
+        for(int i = chunkIndex + 1; i < chunkSizeTree.length; i += i & -i)
+        {
+            chunkSizeTree[i] += delta;
+        }
+    }
+
+    /**
+     * Rebuilds the Fenwick tree after chunks were split or dropped.
+     */
+    private void rebuildTree()
+    {
+        chunkSizeTree = new int[chunks.size() + 1];
+
+        for(int i = 1; i < chunkSizeTree.length; i++)
+        {
+            final int parent;
+
+            chunkSizeTree[i] += chunks.get(i - 1).size();
+            parent = i + (i & -i);
+
+            if(parent < chunkSizeTree.length)
+            {
+                chunkSizeTree[parent] += chunkSizeTree[i];
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if comparator is null
+     */
+    private static void validateComparator(final Comparator<?> comparator)
+    {
+        if(comparator == null)
+        {
+            throw new IllegalArgumentException("Comparator must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if item is null
+     */
+    private void validateItem(final T item)
+    {
+        if(item == null)
+        {
+            throw new IllegalArgumentException("Item must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if low orders after high
+     */
+    private void validateRange(final T low,
+                               final T high)
+    {
+        if(comparator.compare(low, high) > 0)
+        {
+            throw new IllegalArgumentException("Range start must not be after range end.");
+        }
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if index is not a valid position
+     */
+    private void validateIndex(final int index)
+    {
+        if(index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size + ".");
+        }
+    }
+
+    /**
+     * Validates that the shelf is not empty before a min/max query.
+     *
+     * @throws IllegalStateException if the shelf is empty
+     */
+    private void validateNotEmpty()
+    {
+        if(size == 0)
+        {
+            throw new IllegalStateException("Shelf is empty.");
+        }
+    }
+}
@@ -0,0 +1,584 @@
+package ca.bcit.comp2522.code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A full-text index over book titles, supporting word, prefix
+ * (autocomplete) and fuzzy (edit-distance) search.
+ * Titles are split into words at any character that is not a letter or
+ * digit, apostrophes are dropped and words are case-folded, so
+ * "Thinking, Fast &amp; Slow" is indexed as {@code thinking}, {@code fast}
+ * and {@code slow}. Each distinct word maps to the books whose titles
+ * contain it, and every word is also stored in a trie, so a prefix or fuzzy
+ * lookup only walks the words it can match instead of scanning the catalog.
+ * Register an instance with {@link Library#addListener(CatalogListener)} to
+ * index the existing catalog and keep up with later changes. Not
+ * thread-safe, like {@link Library}.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class TitleIndex implements CatalogListener
+{
+    /** Largest edit distance accepted by fuzzy search. */
+    public static final int MAX_EDITS = 2;
+
+    /** Curly apostrophe, dropped like the straight one. */
+    private static final char RIGHT_SINGLE_QUOTE = '\u2019';
+
+    private final Map<String, List<Book>> postings;
+    private final Node                    root;
+
+    /**
+     * Constructs an empty TitleIndex.
+     */
+    public TitleIndex()
+    {
+        postings = new HashMap<>();
+        root = new Node();
+    }
+
+    /**
+     * Indexes every word in the added book's title.
+     *
+     * @param book the book that was added
+     */
+    @Override
+    public void bookAdded(final Book book)
+    {
+        for(final String word : tokenize(book.getTitle()))
+        {
+            final List<Book> books;
+            books = postings.computeIfAbsent(word, key -> new ArrayList<>());
+
+            if(books.isEmpty())
+            {
+                root.insert(word);
+            }
+
+            books.add(book);
+        }
+    }
+
+    /**
+     * Removes the book from the lists of every word in its title.
+     * Words no longer in any title stop matching; their trie nodes are kept.
+     *
+     * @param book the book that was removed
+     */
+    @Override
+    public void bookRemoved(final Book book)
+    {
+        for(final String word : tokenize(book.getTitle()))
+        {
+            final List<Book> books;
+            books = postings.get(word);
+
+            if(books != null && books.remove(book) && books.isEmpty())
+            {
+                postings.remove(word);
+                root.find(word).word = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the books whose titles contain every word of the query.
+     *
+     * @param query the words to match, in any order
+     * @return the matching books, in the order they were indexed
+     */
+    public List<Book> search(final String query)
+    {
+        validateQuery(query);
+        return matchAll(tokenize(query), null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns books for a query being typed: every word but the last must
+     * appear in the title, and the last may be the start of a title word.
+     *
+     * @param query the partial query, such as "thinking fa"
+     * @param limit the most books to return
+     * @return up to limit matching books
+     */
+    public List<Book> searchPrefix(final String query,
+                                   final int    limit)
+    {
+        validateQuery(query);
+        validateLimit(limit);
+
+        final List<String> words;
+        final String       prefix;
+        final List<String> completions;
+
+        words = tokenize(query);
+
+        if(words.isEmpty() || limit == 0)
+        {
+            return new ArrayList<>();
+        }
+
+        prefix = words.remove(words.size() - 1);
+        completions = complete(prefix, Integer.MAX_VALUE);
+
+        return matchAll(words, completions, limit);
+    }
+
+    /**
+     * Returns the indexed words that start with the given prefix, for
+     * autocomplete, in alphabetical order.
+     *
+     * @param prefix the start of a word, case-insensitive
+     * @param limit  the most words to return
+     * @return up to limit words
+     */
+    public List<String> complete(final String prefix,
+                                 final int    limit)
+    {
+        validateQuery(prefix);
+        validateLimit(limit);
+
+        final List<String> words;
+        final Node         start;
+
+        words = new ArrayList<>();
+        start = root.find(fold(prefix));
+
+        if(start != null)
+        {
+            start.collect(words, limit);
+        }
+
+        return words;
+    }
+
+    /**
+     * Returns the books whose titles contain a word within the given number
+     * of single-character insertions, deletions or substitutions of the
+     * given word. Books matching closer words come first.
+     *
+     * @param word     the possibly misspelled word
+     * @param maxEdits the largest edit distance to accept, from 0 to {@link #MAX_EDITS}
+     * @param limit    the most books to return
+     * @return up to limit matching books
+     */
+    public List<Book> searchFuzzy(final String word,
+                                  final int    maxEdits,
+                                  final int    limit)
+    {
+        validateQuery(word);
+        validateEdits(maxEdits);
+        validateLimit(limit);
+
+        final String             target;
+        final int[]              firstRow;
+        final List<List<String>> byDistance;
+        final List<String>       candidates;
+
+        target = fold(word);
+        firstRow = new int[target.length() + 1];
+        byDistance = new ArrayList<>();
+        candidates = new ArrayList<>();
+
+        for(int i = 0; i <= target.length(); i++)
+        {
+            firstRow[i] = i;
+        }
+
+        for(int i = 0; i <= maxEdits; i++)
+        {
+            byDistance.add(new ArrayList<>());
+        }
+
+        root.collectWithin(target, firstRow, maxEdits, byDistance);
+
+        for(final List<String> words : byDistance)
+        {
+            candidates.addAll(words);
+        }
+
+        return matchAll(Collections.emptyList(), candidates, limit);
+    }
+
+    /**
+     * Returns the number of distinct words in the index.
+     *
+     * @return the word count
+     */
+    public int wordCount()
+    {
+        return postings.size();
+    }
+
+    /**
+     * Collects books that contain every required word and, if alternatives
+     * is not null, at least one of the alternative words. Alternatives must
+     * be in alphabetical order when there are required words.
+     * Candidates come from whichever is smaller: the shortest required
+     * posting list or the combined lists of the alternatives. Each candidate
+     * is then checked against its own title instead of intersecting lists.
+     */
+    private List<Book> matchAll(final List<String> required,
+                                final List<String> alternatives,
+                                final int          limit)
+    {
+        final List<Book> matches;
+        List<Book>       smallest;
+
+        matches = new ArrayList<>();
+        smallest = null;
+
+        if(required.isEmpty() && alternatives == null)
+        {
+            return matches;
+        }
+
+        for(final String word : required)
+        {
+            final List<Book> books;
+            books = postings.get(word);
+
+            if(books == null)
+            {
+                return matches;
+            }
+
+            if(smallest == null || books.size() < smallest.size())
+            {
+                smallest = books;
+            }
+        }
+
+        if(alternatives != null && (smallest == null || postingsSize(alternatives, smallest.size()) < smallest.size()))
+        {
+            final Set<Book> seen;
+            seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            for(final String word : alternatives)
+            {
+                for(final Book book : postings.get(word))
+                {
+                    if(matches.size() >= limit)
+                    {
+                        return matches;
+                    }
+
+                    if(seen.add(book) && (required.isEmpty() || tokenize(book.getTitle()).containsAll(required)))
+                    {
+                        matches.add(book);
+                    }
+                }
+            }
+
+            return matches;
+        }
+
+        for(final Book book : smallest)
+        {
+            if(matches.size() >= limit)
+            {
+                break;
+            }
+
+            final List<String> words;
+            words = tokenize(book.getTitle());
+
+            if(words.containsAll(required) &&
+               (alternatives == null || containsAny(words, alternatives)))
+            {
+                matches.add(book);
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Returns the combined posting list size of the given words, stopping
+     * early once it reaches cap.
+     */
+    private int postingsSize(final List<String> words,
+                             final int          cap)
+    {
+        int total;
+        total = 0;
+
+        for(final String word : words)
+        {
+            total += postings.get(word).size();
+
+            if(total >= cap)
+            {
+                break;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Returns whether a title's words include any of the candidates.
+     */
+    private static boolean containsAny(final List<String> words,
+                                       final List<String> candidates)
+    {
+        for(final String word : words)
+        {
+            if(Collections.binarySearch(candidates, word) >= 0)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Splits a title into distinct case-folded words, in order of first
+     * appearance.
+     *
+     * @param text the text to split
+     * @return the words
+     */
+    static List<String> tokenize(final String text)
+    {
+        final List<String>  words;
+        final StringBuilder word;
+
+        words = new ArrayList<>();
+        word = new StringBuilder();
+
+        for(int i = 0; i <= text.length(); i++)
+        {
+            final char c;
+            c = i < text.length() ? text.charAt(i) : ' ';
+
+            if(Character.isLetterOrDigit(c))
+            {
+                word.append(Character.toLowerCase(c));
+            }
+            else if(c != '\'' && c != RIGHT_SINGLE_QUOTE && word.length() > 0)
+            {
+                final String token;
+                token = word.toString();
+
+                if(!words.contains(token))
+                {
+                    words.add(token);
+                }
+
+                word.setLength(0);
+            }
+        }
+
+        return words;
+    }
+
+    /**
+     * Case-folds a single word or prefix the same way as {@link #tokenize(String)}.
+     */
+    private static String fold(final String text)
+    {
+        final List<String> words;
+        words = tokenize(text);
+
+        return words.isEmpty() ? "" : words.get(0);
+    }
+
+    /**
+     * @throws IllegalArgumentException if query is null
+     */
+    private static void validateQuery(final String query)
+    {
+        if(query == null)
+        {
+            throw new IllegalArgumentException("Query must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if limit is negative
+     */
+    private static void validateLimit(final int limit)
+    {
+        if(limit < 0)
+        {
+            throw new IllegalArgumentException("Limit must not be negative.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if maxEdits is outside 0 to MAX_EDITS
+     */
+    private static void validateEdits(final int maxEdits)
+    {
+        if(maxEdits < 0 || maxEdits > MAX_EDITS)
+        {
+            throw new IllegalArgumentException("Edit distance must be between 0 and " + MAX_EDITS + ".");
+        }
+    }
+
+    /**
+     * A trie node. Children are kept in parallel arrays sorted by character,
+     * which is far smaller than a map per node.
+     */
+    private static final class Node
+    {
+        private static final char[] NO_KEYS     = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private char[] keys;
+        private Node[] children;
+        private String word;
+
+        private Node()
+        {
+            keys = NO_KEYS;
+            children = NO_CHILDREN;
+        }
+
+        /**
+         * Adds a word below this node, creating nodes as needed.
+         */
+        private void insert(final String text)
+        {
+            Node node;
+            node = this;
+
+            for(int i = 0; i < text.length(); i++)
+            {
+                final char c;
+                final int  slot;
+
+                c = text.charAt(i);
+                slot = Arrays.binarySearch(node.keys, c);
+
+                if(slot >= 0)
+                {
+                    node = node.children[slot];
+                }
+                else
+                {
+                    node = node.addChild(-slot - 1, c);
+                }
+            }
+
+            node.word = text;
+        }
+
+        /**
+         * Returns the node reached by following the given characters, or null.
+         */
+        private Node find(final String text)
+        {
+            Node node;
+            node = this;
+
+            for(int i = 0; i < text.length() && node != null; i++)
+            {
+                final int slot;
+                slot = Arrays.binarySearch(node.keys, text.charAt(i));
+
+                node = slot >= 0 ? node.children[slot] : null;
+            }
+
+            return node;
+        }
+
+        private Node addChild(final int  slot,
+                              final char c)
+        {
+            final Node   child;
+            final char[] newKeys;
+            final Node[] newChildren;
+
+            child = new Node();
+            newKeys = new char[keys.length + 1];
+            newChildren = new Node[children.length + 1];
+
+            System.arraycopy(keys, 0, newKeys, 0, slot);
+            System.arraycopy(keys, slot, newKeys, slot + 1, keys.length - slot);
+            System.arraycopy(children, 0, newChildren, 0, slot);
+            System.arraycopy(children, slot, newChildren, slot + 1, children.length - slot);
+
+            newKeys[slot] = c;
+            newChildren[slot] = child;
+            keys = newKeys;
+            children = newChildren;
+
+            return child;
+        }
+
+        /**
+         * Adds the words at and below this node in alphabetical order,
+         * stopping once limit words are collected.
+         */
+        private void collect(final List<String> words,
+                             final int          limit)
+        {
+            if(words.size() >= limit)
+            {
+                return;
+            }
+
+            if(word != null)
+            {
+                words.add(word);
+            }
+
+            for(final Node child : children)
+            {
+                child.collect(words, limit);
+            }
+        }
+
+        /**
+         * Adds each word below this node within maxEdits of the target to the
+         * list for its distance. Each level computes one row of the
+         * Levenshtein table from its parent's row, and a branch is abandoned
+         * once every entry in its row exceeds maxEdits.
+         */
+        private void collectWithin(final String             target,
+                                   final int[]              row,
+                                   final int                maxEdits,
+                                   final List<List<String>> byDistance)
+        {
+            if(word != null && row[target.length()] <= maxEdits)
+            {
+                byDistance.get(row[target.length()]).add(word);
+            }
+
+            for(int k = 0; k < keys.length; k++)
+            {
+                final int[] next;
+                int         best;
+
+                next = new int[row.length];
+                next[0] = row[0] + 1;
+                best = next[0];
+
+                for(int i = 1; i < row.length; i++)
+                {
+                    final int substitution;
+                    substitution = row[i - 1] + (target.charAt(i - 1) == keys[k] ? 0 : 1);
+
+                    next[i] = Math.min(substitution, Math.min(row[i] + 1, next[i - 1] + 1));
+                    best = Math.min(best, next[i]);
+                }
+
+                if(best <= maxEdits)
+                {
+                    children[k].collectWithin(target, next, maxEdits, byDistance);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ca.bcit.comp2522.code;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deduplicates book titles so that every edition of the same work shares a
+ * single {@link String}.
+ * Catalogs often hold many books with equal titles that were parsed or
+ * read separately, each with its own character array; passing titles through
+ * a pool keeps one canonical copy per distinct title. Unlike
+ * {@link String#intern()}, the pool is an ordinary object that can be
+ * dropped once ingestion is finished. Safe for concurrent use.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+public final class TitlePool
+{
+    private final Map<String, String> titles;
+
+    /**
+     * Constructs an empty TitlePool.
+     */
+    public TitlePool()
+    {
+        titles = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the canonical copy of the given title, adding it if unseen.
+     *
+     * @param title the title to deduplicate
+     * @return a String equal to title, shared by every equal title seen
+     */
+    public String intern(final String title)
+    {
+        validateTitle(title);
+
+        final String existing;
+        existing = titles.putIfAbsent(title, title);
+
+        return existing == null ? title : existing;
+    }
+
+    /**
+     * Returns a book whose title is the canonical copy.
+     * The same book is returned if its title is already canonical.
+     *
+     * @param book the book to deduplicate
+     * @return a book equal in every field, sharing the pooled title
+     */
+    public Book intern(final Book book)
+    {
+        validateBook(book);
+
+        final String title;
+        title = intern(book.getTitle());
+
+        if(title == book.getTitle())
+        {
+            return book;
+        }
+
+        return new Book(title, book.getGenreType(), book.getYearPublished(), book.getPageCount());
+    }
+
+    /**
+     * Returns the number of distinct titles in the pool.
+     *
+     * @return the distinct title count
+     */
+    public int size()
+    {
+        return titles.size();
+    }
+
+    /**
+     * @throws IllegalArgumentException if title is null
+     */
+    private static void validateTitle(final String title)
+    {
+        if(title == null)
+        {
+            throw new IllegalArgumentException("Title must not be null.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if book is null
+     */
+    private static void validateBook(final Book book)
+    {
+        if(book == null)
+        {
+            throw new IllegalArgumentException("Book must not be null.");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ca.bcit.comp2522.code;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the catalog hot paths: {@link Shelf} min/max,
+ * {@link Library.LibraryStats}, {@link Library#addBook(Book)} and the page
+ * count sort from Task 8 of {@link Main}, at 1K, 1M and 10M books with
+ * sorted, reversed and random page counts. The catalogs are the ones
+ * {@link CatalogBenchmark} generates, so the two report on the same data.
+ * <p>
+ * Usage: {@code mvn -pl benchmarks -am package}, then
+ * {@code java -jar benchmarks/target/benchmarks.jar -prof gc} for
+ * throughput, sampled latency and allocation rate. Add {@code -p size=1000}
+ * to run one size only. The class is not final because JMH subclasses it.
+ *
+ * @author Ziad Malik, Sebastion Roby, Evan Tang, Jack Moscovitch
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CatalogJmhBenchmark
+{
+    /** Number of books in the catalog. */
+    @Param({"1000", "1000000", "10000000"})
+    public int size;
+
+    /** Order of the page counts, one of {@link CatalogBenchmark.Distribution}. */
+    @Param({"SORTED", "REVERSED", "RANDOM"})
+    public String distribution;
+
+    private List<Book>           books;
+    private Shelf<Integer>       shelf;
+    private Library.LibraryStats stats;
+
+    /**
+     * Generates the catalog and fills the shelf once per trial.
+     */
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        books = CatalogBenchmark.generate(size, CatalogBenchmark.Distribution.valueOf(distribution));
+        shelf = new Shelf<>();
+        stats = new Library.LibraryStats();
+
+        for(final Book book : books)
+        {
+            shelf.add(book.getPageCount());
+        }
+    }
+
+    /**
+     * Reads the smallest and largest page counts from a full shelf.
+     *
+     * @return the sum of both
+     */
+    @Benchmark
+    public int shelfMinMax()
+    {
+        return shelf.getSmallest() + shelf.getLargest();
+    }
+
+    /**
+     * Counts the fiction books by scanning the catalog.
+     *
+     * @return the count
+     */
+    @Benchmark
+    public int countByGenre()
+    {
+        return stats.countByGenre(books, Genre.FICTION);
+    }
+
+    /**
+     * Averages the page counts by scanning the catalog.
+     *
+     * @return the average
+     */
+    @Benchmark
+    public double averagePageCount()
+    {
+        return stats.averagePageCount(books);
+    }
+
+    /**
+     * Adds every book, one at a time, to an empty library.
+     *
+     * @return the filled library
+     */
+    @Benchmark
+    public Library addBook()
+    {
+        final Library library;
+        library = new Library("Benchmark Library", Collections.emptyList());
+
+        for(final Book book : books)
+        {
+            library.addBook(book);
+        }
+
+        return library;
+    }
+
+    /**
+     * Copies the catalog and sorts it by page count, descending, as Task 8
+     * of {@link Main} does.
+     *
+     * @return the sorted copy
+     */
+    @Benchmark
+    public List<Book> sortByPages()
+    {
+        final List<Book> copy;
+        copy = new ArrayList<>(books);
+
+        Collections.sort(copy, new Comparator<Book>()
+        {
+            @Override
+            public int compare(final Book b1, final Book b2)
+            {
+                return Integer.compare(b2.getPageCount(), b1.getPageCount());
+            }
+        });
+
+        return copy;
+    }
+}